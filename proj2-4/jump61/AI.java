@@ -1,21 +1,59 @@
 package jump61;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static jump61.Side.*;
 
 /** An automated Player.
  *  @author Thomas Wu
  */
 class AI extends Player {
 
-    /** Time allotted to all but final search d (milliseconds). */
-    private static final long TIME_LIMIT = 15000;
+    /** Largest number of squares on a board searched by minmax.  On larger
+     *  boards, I choose the best of a random sample of moves. */
+    static final int MAX_SEARCH_SQUARES = 144;
+
+    /** Number of moves sampled on large boards. */
+    private static final int SAMPLES = 64;
+
+    /** Maximum number of random squares tried in search of SAMPLES
+     *  legal moves. */
+    private static final int MAX_SAMPLE_TRIES = 4 * SAMPLES;
 
-    /** Number of calls to minmax between checks of elapsed time. */
+    /** Number of positions visited between checks of elapsed time. */
     private static final long TIME_CHECK_INTERVAL = 10000;
 
+    /** Number of nanoseconds in one millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Value of a won position, exceeding any static evaluation.  Wins
+     *  found sooner in search are worth slightly more. */
+    private static final int WIN_VALUE = Integer.MAX_VALUE / 2;
+
+    /** A value exceeding that of any position. */
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    /** Least depth of search below a position at which I look for
+     *  symmetries of the position that make some of its moves
+     *  equivalent.  Finding them costs time proportional to the size of
+     *  the board, which only pays at positions with deeper searches
+     *  below them. */
+    private static final int MIN_SYMMETRY_DEPTH = 2;
+
+    /** Largest number of plies below the root searched, including
+     *  quiescence search. */
+    private static final int MAX_PLIES =
+        Defaults.MAX_SEARCH_DEPTH + Defaults.MAX_QUIESCENCE_DEPTH;
+
     /** Number of milliseconds in one second. */
     private static final double MILLIS = 1000.0;
 
+    /** Contribution of RED's having the move to the keys of positions in
+     *  a PositionCache. */
+    private static final long RED_TO_MOVE_KEY = 0x5851f42d4c957f2dL;
+
     /** A new player of GAME initially playing COLOR that chooses
      *  moves automatically.
      */
@@ -23,91 +61,666 @@ class AI extends Player {
         super(game, color);
     }
 
+    /** A new automated player that belongs to no game, searching
+     *  according to SETTINGS.  It chooses moves only through findMove,
+     *  as for Simulator. */
+    AI(Settings settings) {
+        super(null, RED);
+        _settings = settings;
+    }
+
     @Override
     void makeMove() {
+        long start = System.nanoTime();
         Game gme = getGame();
-        MutableBoard board = new MutableBoard(getBoard());
-
-        ArrayList<Integer> moves = new ArrayList<Integer>();
         Side whoMoves = getSide();
-        for (int i = 0; i < board.size() * board.size(); i++) {
-            if (board.isLegal(whoMoves, i)) {
-                moves.add(i);
-            }
+        MutableBoard board;
+        if (getBoard().size() * getBoard().size() > MAX_SEARCH_SQUARES) {
+            board = workBoard();
+        } else {
+            board = new MutableBoard(getBoard());
+        }
+        int ply = getBoard().numPieces();
+        int move = findMove(whoMoves, board, gme.random(whoMoves));
+        long time = System.nanoTime() - start;
+        Metrics.SEARCH_NODES.add(_nodes);
+        Metrics.QUIESCENCE_NODES.add(_quiescenceNodes);
+        Metrics.SEARCH_NODES_PER_MOVE.record(_nodes);
+        Metrics.AI_MOVES.increment();
+        Metrics.AI_MOVE_TIME.record(time);
+        SearchTrace trace = gme.searchTrace();
+        if (trace != null) {
+            trace.record(whoMoves, ply, _depth, _nodes, _cutoffs,
+                         _firstCutoffs, _bestLine, _cacheUse, time);
         }
-        int move;
-        move = minmax(whoMoves, board, 3, Integer.MIN_VALUE, moves);
-        System.out.println("move is " + move);
+        int r = board.row(move), c = board.col(move);
         gme.makeMove(move);
         gme.message("%s moves %d %d.%n", whoMoves.toCapitalizedString(),
-                board.row(move), board.col(move));
-    }
-
-
-    /** Return the minimum of CUTOFF and the minmax value of board B
-      *  (which must be mutable) for player P to a search depth of D
-      *  (where D == 0 denotes statically evaluating just the next move).
-      *  If MOVES is not null and CUTOFF is not exceeded, set MOVES to
-      *  a list of all highest-scoring moves for P; clear it if
-      *  non-null and CUTOFF is exceeded. the contents of B are
-      *  invariant over this call. */
-    private int minmax(Side p, Board b, int d, int cutoff,
-                       ArrayList<Integer> moves) {
-
-        int bestSoFar = cutoff;
-        int indexOfBest = 0;
-        ArrayList<Integer> validMoves = new ArrayList<Integer>();
-
-        if (d == 0) {
-            for (int i = 0; i < moves.size(); i++) {
-                if (moves.get(i) != null) {
-                    b.addSpot(p, moves.get(i));
-                    int evalValue = staticEval(p, b);
-                    b.undo();
-                    if (evalValue > bestSoFar) {
-                        bestSoFar = evalValue;
-                        indexOfBest = moves.get(i);
-                        if (evalValue >= cutoff) {
+                r, c);
+    }
+
+    /** Return my choice of move for P on board B, which must be mutable
+     *  and not yet won, searching to the depth and within the time my
+     *  settings allow, and making any random choices with RANDOM.
+     *  Boards larger than MAX_SEARCH_SQUARES are not searched; instead I
+     *  choose the best of a sample of moves.  The contents of B are
+     *  invariant over this call, and it uses at most one level of B's
+     *  undo history per level of search.  B must have no
+     *  SquareListener. */
+    int findMove(Side p, MutableBoard b, SplittableRandom random) {
+        Settings settings = settings();
+        attachEval(b, settings);
+        try {
+            return search(p, b, random, settings);
+        } finally {
+            b.setSquareListener(null);
+        }
+    }
+
+    /** Analyze the position on board B, which must be mutable, not yet
+     *  won, and no larger than MAX_SEARCH_SQUARES, with P to move.
+     *  Search it with iterative deepening to depths 0, 1, ..., MAXDEPTH
+     *  (at most Defaults.MAX_SEARCH_DEPTH), where depths are as for
+     *  Settings.searchDepth: at depth D, each move is searched to a
+     *  further D plies, as findMove does with a search depth of D.
+     *  Search for at most about MILLIS milliseconds, finding the COUNT
+     *  best moves at each depth with their values and principal
+     *  variations, and reporting them to LISTENER after each depth
+     *  completes.  A depth not completed in time is not reported, unless
+     *  it is the first.  The contents of B
+     *  are invariant over this call, and B must have no
+     *  SquareListener. */
+    void analyze(Side p, MutableBoard b, int count, int maxDepth,
+                 long millis, AnalysisListener listener) {
+        long start = System.nanoTime();
+        attachEval(b, settings());
+        try {
+            startSearch(settings(), millis, 0);
+            int all = b.size() * b.size();
+            int[] moves = new int[all];
+            int numMoves;
+            numMoves = 0;
+            int symmetries = symmetries(b);
+            PositionCache cache = cache();
+            int orientation = cache == null ? 0 : b.canonicalSymmetry();
+            long key =
+                cache == null ? 0 : cacheKey(p, b, orientation, settings());
+            PositionCache.Entry cached =
+                cache == null ? null : cache.find(key);
+            int hint =
+                cached == null ? -1 : cachedMove(p, b, orientation, cached);
+            if (hint >= 0) {
+                moves[numMoves] = hint;
+                numMoves += 1;
+            }
+            for (int n = 0; n < all; n += 1) {
+                if (n != hint && b.isLegal(p, n)
+                    && !isRedundant(b, n, symmetries)) {
+                    moves[numMoves] = n;
+                    numMoves += 1;
+                }
+            }
+            maxDepth = Math.min(maxDepth, Defaults.MAX_SEARCH_DEPTH);
+            for (_depth = 0; _depth <= maxDepth; _depth += 1) {
+                List<Line> lines = analyzeMoves(p, b, moves, numMoves,
+                                                count);
+                if (_outOfTime && _depth > 0) {
+                    break;
+                }
+                listener.depthDone(_depth, _nodes, System.nanoTime() - start,
+                                   lines);
+                if (_outOfTime) {
+                    break;
+                }
+                if (cache != null && !lines.isEmpty()) {
+                    int[] map = b.topology().symmetry(orientation);
+                    cache.store(key, new PositionCache.Entry(
+                                    map[lines.get(0).pv()[0]],
+                                    lines.get(0).value(), _depth));
+                }
+                for (int i = 0; i < lines.size(); i += 1) {
+                    int n = lines.get(i).pv()[0];
+                    for (int j = i; j < numMoves; j += 1) {
+                        if (moves[j] == n) {
+                            moves[j] = moves[i];
+                            moves[i] = n;
                             break;
                         }
                     }
                 }
             }
+        } finally {
+            b.setSquareListener(null);
+        }
+    }
 
-        } else {
-            for (int j = 0; j < moves.size(); j++) {
-                if (moves.get(j) == null) {
+    /** Return the COUNT best of MOVES[0 .. NUMMOVES-1] for P on board B,
+     *  each searched to a further depth of _depth, in order of
+     *  decreasing value.  Each move is searched with a window that admits
+     *  only values exceeding those of the COUNT best moves found before
+     *  it, so that only those moves get exact values. */
+    private List<Line> analyzeMoves(Side p, MutableBoard b, int[] moves,
+                                    int numMoves, int count) {
+        ArrayList<Line> lines = new ArrayList<>();
+        for (int i = 0; i < numMoves; i += 1) {
+            int alpha =
+                lines.size() < count ? -INFINITY
+                : lines.get(count - 1).value();
+            int value = tryMove(p, b, moves[i], _depth, alpha, INFINITY);
+            if (value > alpha) {
+                int[] pv = new int[_pvLength[1] + 1];
+                pv[0] = moves[i];
+                System.arraycopy(_pv[1], 0, pv, 1, _pvLength[1]);
+                int k;
+                for (k = lines.size(); k > 0
+                         && lines.get(k - 1).value() < value; k -= 1) {
                     continue;
-                } else  {
-                    b.addSpot(p, moves.get(j));
-                    for (int k = 0; k < moves.size(); k++) {
-                        if (b.isLegal(p, moves.get(k))) {
-                            validMoves.add(moves.get(k));
-                        }
+                }
+                lines.add(k, new Line(value, pv));
+                if (lines.size() > count) {
+                    lines.remove(count);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /** Use the evaluator called for by SETTINGS for board B, attaching
+     *  it to B if it is the learned one. */
+    private void attachEval(MutableBoard b, Settings settings) {
+        EvalWeights weights = settings.weights();
+        if (weights == null) {
+            _eval = null;
+        } else if (_eval == null || _eval.weights() != weights) {
+            _eval = new IncrementalEval(weights);
+        }
+        b.setSquareListener(_eval);
+    }
+
+    /** Prepare to search according to SETTINGS for at most MILLIS
+     *  milliseconds, or if NODES is positive, for at most about NODES
+     *  positions regardless of time. */
+    private void startSearch(Settings settings, long millis, long nodes) {
+        _nodes = _quiescenceNodes = _cutoffs = _firstCutoffs = 0;
+        _quiescenceBudget = settings.quiescenceNodes();
+        _deadline = System.nanoTime() + millis * NANOS_PER_MILLI;
+        _nodeBudget = nodes;
+        _outOfTime = false;
+        _nextTimeCheck = 0;
+        _ply = 0;
+        if (_pv == null) {
+            _pv = new int[MAX_PLIES + 1][MAX_PLIES];
+            _pvLength = new int[MAX_PLIES + 1];
+        }
+    }
+
+    /** Return my choice of move for P on board B, as for findMove, using
+     *  RANDOM and SETTINGS. */
+    private int search(Side p, MutableBoard b, SplittableRandom random,
+                       Settings settings) {
+        startSearch(settings, settings.timeLimit(), settings.searchNodes());
+        if (b.size() * b.size() > MAX_SEARCH_SQUARES) {
+            _depth = 1;
+            _cacheUse = SearchTrace.CacheUse.NONE;
+            _bestLine = new int[] { sampleMove(p, b, random) };
+            return _bestLine[0];
+        }
+        _depth = settings.searchDepth();
+        PositionCache cache = cache();
+        _cacheUse = SearchTrace.CacheUse.NONE;
+        int orientation;
+        long key;
+        orientation = 0;
+        key = 0;
+        if (cache != null) {
+            orientation = b.canonicalSymmetry();
+            key = cacheKey(p, b, orientation, settings);
+            PositionCache.Entry cached = cache.find(key);
+            int move =
+                cached == null || cached.depth() < _depth ? -1
+                : cachedMove(p, b, orientation, cached);
+            if (move >= 0) {
+                Metrics.CACHE_HITS.increment();
+                _cacheUse = SearchTrace.CacheUse.HIT;
+                _bestLine = new int[] { move };
+                return move;
+            }
+            Metrics.CACHE_MISSES.increment();
+            _cacheUse = SearchTrace.CacheUse.MISS;
+        }
+        int all = b.size() * b.size();
+        int best, bestValue;
+        best = -1;
+        bestValue = -INFINITY;
+        int symmetries = symmetries(b);
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (int n = 0; n < all; n += 1) {
+                if (isMove(p, b, n, pass == 0)
+                    && !isRedundant(b, n, symmetries)) {
+                    int value = tryMove(p, b, n, _depth, bestValue, INFINITY);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        best = n;
+                        _bestLine = new int[_pvLength[1] + 1];
+                        _bestLine[0] = n;
+                        System.arraycopy(_pv[1], 0, _bestLine, 1,
+                                         _pvLength[1]);
                     }
-                    int evalValue = staticEval(p, b);
-                    int response = minmax(p.opposite(), b, d - 1,
-                            bestSoFar, validMoves);
-                    if (evalValue > bestSoFar) {
-                        bestSoFar = evalValue;
-                        indexOfBest = moves.get(j);
-                        if (evalValue >= cutoff) {
-                            break;
+                }
+            }
+        }
+        if (cache != null && !_outOfTime) {
+            cache.store(key, new PositionCache.Entry(
+                            b.topology().symmetry(orientation)[best],
+                            bestValue, _depth));
+        }
+        return best;
+    }
+
+    /** Return the key in a PositionCache of the position on board B with
+     *  P to move, searched according to SETTINGS, where symmetry
+     *  #ORIENTATION of B's topology maps B to the canonical orientation
+     *  of its position (see Board.canonicalSymmetry).  Positions that
+     *  are symmetric to each other share a key. */
+    private long cacheKey(Side p, Board b, int orientation,
+                          Settings settings) {
+        return b.symmetricHash(orientation) ^ settings.searchKey()
+            ^ (p == RED ? RED_TO_MOVE_KEY : 0);
+    }
+
+    /** Return the square of B to which ENTRY, a PositionCache entry for
+     *  B with P to move, says to move, or -1 if that is not a legal move
+     *  for P.  Moves in entries are in the canonical orientation of
+     *  their position, to which symmetry #ORIENTATION maps B. */
+    private int cachedMove(Side p, Board b, int orientation,
+                           PositionCache.Entry entry) {
+        int[] map = b.topology().symmetry(orientation);
+        for (int n = 0; n < map.length; n += 1) {
+            if (map[n] == entry.move()) {
+                return b.isLegal(p, n) ? n : -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the cache of search results I should use, or null if I
+     *  should use none.  Only AIs belonging to a game use one, so that
+     *  simulations do not depend on the contents of a cache. */
+    private PositionCache cache() {
+        return getGame() == null ? null : getGame().positionCache();
+    }
+
+    /** Return true iff it is legal for P to move to square #N of B, and
+     *  that move would make the square overflow iff OVERFLOWING.  Trying
+     *  overflowing moves first makes cutoffs likelier. */
+    private boolean isMove(Side p, Board b, int n, boolean overflowing) {
+        Square sq = b.get(n);
+        if (sq.getSide() == WHITE) {
+            return !overflowing;
+        }
+        return sq.getSide() == p
+            && (sq.getSpots() == b.neighbors(n)) == overflowing;
+    }
+
+    /** Return the symmetries of B's topology other than the identity
+     *  that map B onto itself, as a mask in which bit K stands for
+     *  symmetry #K. */
+    private int symmetries(Board b) {
+        int result;
+        result = 0;
+        for (int k = 1; k < b.topology().numSymmetries(); k += 1) {
+            if (b.isSymmetric(k)) {
+                result |= 1 << k;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff one of the symmetries in the mask SYMMETRIES (see
+     *  symmetries), all of which map B onto itself, maps square #N to a
+     *  lower-numbered square.  A move there is then equivalent to the
+     *  move to #N, so that only the lowest-numbered square of each set of
+     *  equivalent squares need be searched. */
+    private boolean isRedundant(Board b, int n, int symmetries) {
+        for (int k = 1; symmetries >> k != 0; k += 1) {
+            if ((symmetries >> k & 1) != 0
+                && b.topology().symmetry(k)[n] < n) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff square #N of B belongs to P, will overflow when it
+     *  next receives a spot, and is adjacent to a square of P's
+     *  opponent, so that moving there would capture.  OFFSETS and
+     *  ADJACENT describe B's topology. */
+    private boolean isUnstable(Side p, Board b, int n, int[] offsets,
+                               int[] adjacent) {
+        Square sq = b.get(n);
+        int first = offsets[n], end = offsets[n + 1];
+        if (sq.getSide() != p || sq.getSpots() != end - first) {
+            return false;
+        }
+        Side opp = p.opposite();
+        for (int j = first; j < end; j += 1) {
+            if (b.get(adjacent[j]).getSide() == opp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the value for P of moving to square #N of B, searched to a
+     *  further depth of D, where values of at most ALPHA or at least
+     *  BETA need only be bounds (as for minmax).  The contents of B are
+     *  invariant over this call. */
+    private int tryMove(Side p, MutableBoard b, int n, int d,
+                        int alpha, int beta) {
+        b.addSpot(p, n);
+        _nodes += 1;
+        _ply += 1;
+        int value = -minmax(p.opposite(), b, d, -beta, -alpha);
+        _ply -= 1;
+        b.undo();
+        return value;
+    }
+
+    /** One of the best moves found by analyze. */
+    static class Line {
+
+        /** A line whose first move has value VALUE to the player making
+         *  it, and whose principal variation, beginning with that move,
+         *  is PV. */
+        Line(int value, int[] pv) {
+            _value = value;
+            _pv = pv;
+        }
+
+        /** Return the value of my first move to the player making it. */
+        int value() {
+            return _value;
+        }
+
+        /** Return the squares moved to in my principal variation. */
+        int[] pv() {
+            return _pv;
+        }
+
+        /** Return true iff my value represents a forced win for the
+         *  player making my first move. */
+        boolean isWin() {
+            return _value >= WIN_VALUE - MAX_PLIES;
+        }
+
+        /** Return true iff my value represents a forced loss for the
+         *  player making my first move. */
+        boolean isLoss() {
+            return _value <= -WIN_VALUE + MAX_PLIES;
+        }
+
+        /** Value of my first move. */
+        private final int _value;
+        /** Principal variation. */
+        private final int[] _pv;
+    }
+
+    /** Receives the results of analyze. */
+    interface AnalysisListener {
+
+        /** Note that analysis has completed search to depth DEPTH,
+         *  having visited NODES positions in NANOS nanoseconds so far,
+         *  and found the best moves LINES, in order of decreasing
+         *  value. */
+        void depthDone(int depth, long nodes, long nanos, List<Line> lines);
+    }
+
+    /** Return the number of positions visited by my most recent call of
+     *  findMove. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return my settings: those given to my constructor, or else my
+     *  game's. */
+    private Settings settings() {
+        return _settings != null ? _settings : getGame().settings();
+    }
+
+    /** Return the best, according to staticEval, of up to SAMPLES legal
+     *  moves for P on board B (which must be mutable) chosen at random
+     *  with RANDOM.  Used instead of minmax on boards too large to
+     *  search.  The contents of B are invariant over this call. */
+    private int sampleMove(Side p, Board b, SplittableRandom random) {
+        int all = b.size() * b.size();
+        int best, bestValue, found;
+        best = -1;
+        bestValue = Integer.MIN_VALUE;
+        found = 0;
+        for (int tries = 0; tries < MAX_SAMPLE_TRIES && found < SAMPLES;
+             tries += 1) {
+            int n = random.nextInt(all);
+            if (b.isLegal(p, n)) {
+                found += 1;
+                b.addSpot(p, n);
+                _nodes += 1;
+                int value = staticEval(p, b);
+                b.undo();
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = n;
+                }
+            }
+        }
+        if (best == -1) {
+            int start = random.nextInt(all);
+            for (int k = 0; k < all && best == -1; k += 1) {
+                if (b.isLegal(p, (start + k) % all)) {
+                    best = (start + k) % all;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return a mutable copy of the current position, which I keep
+     *  between moves so that bringing it up to date takes time
+     *  proportional to the rows changed since my previous move rather
+     *  than to the size of the board. */
+    private MutableBoard workBoard() {
+        BoardSnapshot snap = getBoard().snapshot();
+        if (_work == null) {
+            _work = new MutableBoard(snap);
+        } else {
+            _work.copyChangedRows(snap, _workSnapshot);
+        }
+        _workSnapshot = snap;
+        return _work;
+    }
+
+
+    /** Return the value for P, who is to move, of board B searched to a
+      * depth of D plies followed by a quiescence search (where D == 0
+      * denotes the quiescence search alone).  This is the exact value
+      * if it is in the range (ALPHA, BETA); otherwise it is a bound:
+      * at most ALPHA or at least BETA, respectively.  The contents of B
+      * are invariant over this call. */
+    private int minmax(Side p, MutableBoard b, int d, int alpha, int beta) {
+        _pvLength[_ply] = 0;
+        int all = b.size() * b.size();
+        if (b.numOfSide(p.opposite()) == all) {
+            return -WIN_VALUE - d;
+        }
+        if (d > 0 && !_outOfTime && _nodes >= _nextTimeCheck) {
+            if (_nodeBudget > 0) {
+                _nextTimeCheck = _nodeBudget;
+                _outOfTime = _nodes >= _nodeBudget;
+            } else {
+                _nextTimeCheck = _nodes + TIME_CHECK_INTERVAL;
+                _outOfTime = System.nanoTime() > _deadline;
+            }
+        }
+        if (_outOfTime) {
+            return staticEval(p, b);
+        } else if (d == 0) {
+            return quiesce(p, b, alpha, beta, Defaults.MAX_QUIESCENCE_DEPTH);
+        }
+        int bestValue, k;
+        bestValue = -INFINITY;
+        k = 0;
+        int symmetries = d >= MIN_SYMMETRY_DEPTH ? symmetries(b) : 0;
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (int n = 0; n < all; n += 1) {
+                if (isMove(p, b, n, pass == 0)
+                    && !isRedundant(b, n, symmetries)) {
+                    int value = tryMove(p, b, n, d - 1,
+                                        Math.max(alpha, bestValue), beta);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        if (value > alpha) {
+                            notePV(n);
+                        }
+                        if (value >= beta) {
+                            noteCutoff(k);
+                            return value;
                         }
                     }
-                    b.undo();
+                    k += 1;
                 }
             }
         }
-        return indexOfBest;
+        return bestValue;
+    }
+
+    /** Return the value for P, who is to move, of board B, extending the
+     *  search over moves that capture by overflowing (see isUnstable)
+     *  until the position is quiet, for at most D more plies and within
+     *  my quiescence budget.  P may instead stand on the static value of
+     *  B.  ALPHA and BETA are as for minmax.  The contents of B are
+     *  invariant over this call. */
+    private int quiesce(Side p, MutableBoard b, int alpha, int beta, int d) {
+        _pvLength[_ply] = 0;
+        int all = b.size() * b.size();
+        if (b.numOfSide(p.opposite()) == all) {
+            return -WIN_VALUE;
+        }
+        int bestValue = staticEval(p, b);
+        if (bestValue >= beta || d == 0
+            || _quiescenceNodes >= _quiescenceBudget) {
+            return bestValue;
+        }
+        int[] offsets = b.topology().offsets(),
+            adjacent = b.topology().adjacent();
+        int k;
+        k = 0;
+        for (int n = 0; n < all; n += 1) {
+            if (isUnstable(p, b, n, offsets, adjacent)) {
+                b.addSpot(p, n);
+                _nodes += 1;
+                _quiescenceNodes += 1;
+                _ply += 1;
+                int value = -quiesce(p.opposite(), b, -beta,
+                                     -Math.max(alpha, bestValue), d - 1);
+                _ply -= 1;
+                b.undo();
+                if (value > bestValue) {
+                    bestValue = value;
+                    if (value > alpha) {
+                        notePV(n);
+                    }
+                    if (value >= beta) {
+                        noteCutoff(k);
+                        return value;
+                    }
+                }
+                k += 1;
+            }
+        }
+        return bestValue;
+    }
+
+    /** Make the principal variation at the current ply the move to
+     *  square #N followed by the principal variation at the next ply. */
+    private void notePV(int n) {
+        int length = _pvLength[_ply + 1];
+        _pv[_ply][0] = n;
+        System.arraycopy(_pv[_ply + 1], 0, _pv[_ply], 1, length);
+        _pvLength[_ply] = length + 1;
+    }
+
+    /** Count a search cut off after trying the move at index K of its
+     *  list of moves. */
+    private void noteCutoff(int k) {
+        _cutoffs += 1;
+        if (k == 0) {
+            _firstCutoffs += 1;
+        }
     }
 
     /** Returns heuristic value of board B for player P.
-     *  Higher is better for P. */
+     *  Higher is better for P.  When my settings call for the learned
+     *  evaluator, B must be the board _eval follows. */
     private int staticEval(Side p, Board b) {
         int numOfP = b.numOfSide(p);
         int numOppP = b.numOfSide(p.opposite());
-        return numOfP - numOppP;
+        if (_eval == null) {
+            return numOfP - numOppP;
+        }
+        int all = b.size() * b.size();
+        if (numOfP == all) {
+            return WIN_VALUE;
+        } else if (numOppP == all) {
+            return -WIN_VALUE;
+        }
+        return _eval.value(p);
     }
 
+    /** Settings used in place of my game's, or null. */
+    private Settings _settings;
+    /** The learned evaluation of the board being searched, or null if
+     *  my evaluator is "material". */
+    private IncrementalEval _eval;
+    /** Depth of search for the current move. */
+    private int _depth;
+    /** Number of positions visited by search during the current move. */
+    private long _nodes;
+    /** Number of those positions visited by quiescence search. */
+    private long _quiescenceNodes;
+    /** Number of positions quiescence search may visit during the
+     *  current move. */
+    private long _quiescenceBudget;
+    /** Value of _nodes at which to check the time next. */
+    private long _nextTimeCheck;
+    /** Time (System.nanoTime()) by which the current move must be
+     *  chosen. */
+    private long _deadline;
+    /** If positive, the value of _nodes at which the current move must
+     *  be chosen, in place of _deadline. */
+    private long _nodeBudget;
+    /** True once the current move has used its time (or its budget of
+     *  positions), after which search goes no deeper. */
+    private boolean _outOfTime;
+    /** Numbers of searches cut off during the current move, in total and
+     *  after trying only their first move. */
+    private long _cutoffs, _firstCutoffs;
+    /** Number of plies between the root and the position being
+     *  searched. */
+    private int _ply;
+    /** _pv[k][0 .. _pvLength[k]-1] is the principal variation found for
+     *  the most recently searched position at ply k: its best line of
+     *  play, starting with its best move. */
+    private int[][] _pv;
+    /** Lengths of the principal variations in _pv. */
+    private int[] _pvLength;
+    /** The principal variation of the current move, starting with the
+     *  move chosen (for the trace). */
+    private int[] _bestLine;
+    /** Result of consulting the position cache for the current move. */
+    private SearchTrace.CacheUse _cacheUse;
+    /** Copy of the position used for sampling on large boards, or null. */
+    private MutableBoard _work;
+    /** The snapshot of the game board whose contents _work had after its
+     *  last update. */
+    private BoardSnapshot _workSnapshot;
+
 }
@@ -0,0 +1,102 @@
+package jump61;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of AI.
+ *  @author Thomas Wu
+ */
+public class AITest {
+
+    @Test
+    public void testAnalyze() {
+        SplittableRandom random = new SplittableRandom(61);
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 5));
+        for (int k = 0; k < 10; k += 1) {
+            Side p = B.whoseMove();
+            B.addSpot(p, Simulator.randomMove(p, B, random));
+        }
+        MutableBoard copy = new MutableBoard(B);
+        AI ai = new AI(Settings.DEFAULT);
+        List<Integer> depths = new ArrayList<>();
+        Side p = B.whoseMove();
+        ai.analyze(p, B, 4, 3, 60000, (depth, nodes, nanos, lines) -> {
+            depths.add(depth);
+            assertEquals(4, lines.size());
+            for (int i = 0; i < lines.size(); i += 1) {
+                AI.Line line = lines.get(i);
+                assertTrue(B.isLegal(p, line.pv()[0]));
+                if (i > 0) {
+                    assertTrue(line.value() <= lines.get(i - 1).value());
+                }
+            }
+        });
+        assertEquals(List.of(0, 1, 2, 3), depths);
+        assertEquals(copy, B);
+    }
+
+    @Test
+    public void testAnalyzeWin() {
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 2));
+        B.set(0, 2, RED);
+        B.set(1, 2, RED);
+        B.set(2, 2, RED);
+        B.set(3, 2, BLUE);
+        Properties props = new Properties();
+        props.setProperty(Settings.DEPTH, "0");
+        AI ai = new AI(new Settings(props));
+        List<AI.Line> found = new ArrayList<>();
+        ai.analyze(RED, B, 1, 0, 60000,
+                   (depth, nodes, nanos, lines) -> found.addAll(lines));
+        assertEquals(1, found.size());
+        assertTrue(found.get(0).isWin());
+        assertEquals(0, found.get(0).pv()[0]);
+    }
+
+    @Test
+    public void testCachedAnalysisDepth() throws IOException {
+        File file = File.createTempFile("jump61", ".cache");
+        file.delete();
+        file.deleteOnExit();
+        StringWriter out = new StringWriter();
+        Game game = new Game(new StringReader(""), out, out, out);
+        Properties props = new Properties();
+        props.setProperty(Settings.DEPTH, "2");
+        game.setSettings(new Settings(props));
+        game.setPositionCache(new PositionCache(file.getPath(), 0, 0));
+        SplittableRandom random = new SplittableRandom(61);
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 4));
+        for (int k = 0; k < 6; k += 1) {
+            Side p = B.whoseMove();
+            B.addSpot(p, Simulator.randomMove(p, B, random));
+        }
+        Side p = B.whoseMove();
+        AI ai = new AI(game, p);
+        AI.AnalysisListener ignore = (depth, nodes, nanos, lines) -> { };
+
+        ai.analyze(p, new MutableBoard(B), 1, 1, 60000, ignore);
+        long hits = Metrics.CACHE_HITS.sum();
+        ai.findMove(p, new MutableBoard(B), random);
+        assertEquals("depth-1 analysis used at depth 2",
+                     hits, Metrics.CACHE_HITS.sum());
+
+        ai.analyze(p, new MutableBoard(B), 1, 2, 60000, ignore);
+        ai.findMove(p, new MutableBoard(B), random);
+        assertEquals("depth-2 analysis not used at depth 2",
+                     hits + 1, Metrics.CACHE_HITS.sum());
+        game.setPositionCache(null);
+    }
+
+}
@@ -1,5 +1,8 @@
 package jump61;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+
 import java.util.Observable;
 
 import static jump61.Side.*;
@@ -15,12 +18,20 @@ import static jump61.Side.*;
  */
 abstract class Board extends Observable {
 
-    /** (Re)initialize me to a cleared board with N squares on a side. Clears
-     *  the undo history and sets the number of moves to 0. */
+    /** (Re)initialize me to a cleared board with N squares on a side and
+     *  the same kind of topology as at present. Clears the undo history
+     *  and sets the number of moves to 0. */
     void clear(int N) {
         unsupported("clear");
     }
 
+    /** (Re)initialize me to a cleared board with topology TOPOLOGY, which
+     *  must have as many rows as columns.  Clears the undo history and
+     *  sets the number of moves to 0. */
+    void clear(Topology topology) {
+        unsupported("clear");
+    }
+
     /** Copy the contents of BOARD into me. */
     void copy(Board board) {
         unsupported("copy");
@@ -29,6 +40,12 @@ abstract class Board extends Observable {
     /** Return the number of rows and of columns of THIS. */
     abstract int size();
 
+    /** Return my topology, which determines the neighbors of each square.
+     *  By default, a GRID. */
+    Topology topology() {
+        return Topology.of(Topology.Kind.GRID, size());
+    }
+
     /** Returns the contents of the square at row R, column C
      *  1 <= R, C <= size (). */
     Square get(int r, int c) {
@@ -145,68 +162,192 @@ abstract class Board extends Observable {
         unsupported("undo");
     }
 
+    /** Returns an immutable copy of my current contents, which may be
+     *  read by any thread without locking.  Unless otherwise specified,
+     *  this must be called by a thread that is not concurrently modifying
+     *  me. */
+    BoardSnapshot snapshot() {
+        return BoardSnapshot.of(this, 0);
+    }
+
+    /** Make LISTENER the recipient of the waves of all subsequent moves
+     *  (see CascadeListener), replacing any previous listener.  A null
+     *  LISTENER stops reporting. */
+    void setCascadeListener(CascadeListener listener) {
+        unsupported("setCascadeListener");
+    }
+
     /** Returns my dumped representation. */
     @Override
     public String toString() {
-        String toReturn = "";
-        toReturn += "=== \n";
-        for (int i = 1; i <= size(); i++) {
-            toReturn += "    ";
-            for (int j = 1; j <= size(); j++) {
-                int numSpots = get(i, j).getSpots();
-                String s = get(i, j).getSide().toString();
-                switch (s) {
-                case ("red"):
-                    s = "r";
-                    break;
-                case ("blue"):
-                    s = "b";
-                    break;
-                default:
-                    s = "-";
-                    break;
-                }
-                toReturn += Integer.toString(numSpots) + s + " ";
-            }
-            toReturn += "\n";
-        }
-        toReturn += "===";
-        return toReturn;
+        return dump(new StringBuilder()).toString();
     }
 
     /** Returns an external rendition of me, suitable for
      *  human-readable textual display.  This is distinct from the dumped
      *  representation (returned by toString). */
     public String toDisplayString() {
-        StringBuilder out = new StringBuilder(toString());
-        out.delete(0, 3 + NL_LENGTH);
-        out.delete(out.length() - 3, out.length());
+        StringBuilder out = new StringBuilder();
+        render(out, false);
         return out.toString();
     }
 
-    /** Returns the number of neighbors of the square at row R, column C. */
-    int neighbors(int r, int c) {
-        int size = size();
-        int n;
-        n = 0;
-        if (r > 1) {
-            n += 1;
+    /** Append my dumped representation (as for toString) to OUT.
+     *  Returns OUT. */
+    StringBuilder dump(StringBuilder out) {
+        render(out, true);
+        return out;
+    }
+
+    /** Print my dumped representation (as for toString) on OUT, without
+     *  a final line terminator. */
+    void dump(PrintWriter out) {
+        render(out, true);
+    }
+
+    /** Print my display representation (as for toDisplayString) on
+     *  OUT. */
+    void display(PrintWriter out) {
+        render(out, false);
+    }
+
+    /** Append the rows of my dumped representation to OUT in a single
+     *  pass, surrounded by the "===" header and trailer iff FRAMED.
+     *  Otherwise, precede the rows with a newline. */
+    private void render(Appendable out, boolean framed) {
+        try {
+            out.append(framed ? "=== \n" : "\n");
+            int N = size();
+            for (int n = 0; n < N * N; n += 1) {
+                if (n % N == 0) {
+                    out.append("    ");
+                }
+                Square sq = get(n);
+                int spots = sq.getSpots();
+                String[] glyphs = CELL_GLYPHS[sq.getSide().ordinal()];
+                if (spots < glyphs.length) {
+                    out.append(glyphs[spots]);
+                } else {
+                    out.append(Integer.toString(spots))
+                        .append(SIDE_GLYPHS[sq.getSide().ordinal()])
+                        .append(' ');
+                }
+                if (n % N == N - 1) {
+                    out.append('\n');
+                }
+            }
+            if (framed) {
+                out.append("===");
+            }
+        } catch (IOException excp) {
+            throw new IllegalStateException("unexpected output error", excp);
         }
-        if (c > 1) {
-            n += 1;
+    }
+
+    /** Returns a 64-bit hash of my topology and contents, suitable for
+     *  indexing positions.  It is the exclusive or of squareKey(n, get(n))
+     *  over all squares that are not in their initial state, and of
+     *  shapeKey(topology()), so that it may be updated incrementally as
+     *  squares change. */
+    long positionHash() {
+        int N = size();
+        long h = shapeKey(topology());
+        for (int n = 0; n < N * N; n += 1) {
+            Square sq = get(n);
+            if (!sq.equals(Square.INITIAL)) {
+                h ^= squareKey(n, sq);
+            }
+        }
+        return h;
+    }
+
+    /** Returns the positionHash of the board into which symmetry #K of
+     *  my topology (see Topology) maps me, so that two boards map to each
+     *  other under some symmetry iff (barring collisions) they have the
+     *  same set of symmetric hashes.  symmetricHash(0) is positionHash(). */
+    long symmetricHash(int k) {
+        int[] map = topology().symmetry(k);
+        long h = shapeKey(topology());
+        for (int n = 0; n < map.length; n += 1) {
+            h ^= squareKey(map[n], get(n));
+        }
+        return h;
+    }
+
+    /** Returns the least K such that symmetricHash(K) is the least of my
+     *  symmetric hashes: the symmetry mapping me onto the canonical
+     *  orientation of my position.  symmetricHash(canonicalSymmetry()) is
+     *  the same for all boards that map to each other under symmetries of
+     *  their topology, and so is suitable for indexing positions where
+     *  symmetric positions are interchangeable. */
+    int canonicalSymmetry() {
+        int result;
+        result = 0;
+        long h = symmetricHash(0);
+        for (int k = 1; k < topology().numSymmetries(); k += 1) {
+            long hk = symmetricHash(k);
+            if (hk < h) {
+                h = hk;
+                result = k;
+            }
         }
-        if (r < size) {
-            n += 1;
+        return result;
+    }
+
+    /** Returns true iff symmetry #K of my topology maps me onto
+     *  myself. */
+    boolean isSymmetric(int k) {
+        int[] map = topology().symmetry(k);
+        for (int n = 0; n < map.length; n += 1) {
+            if (!get(map[n]).equals(get(n))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the contribution to positionHash of square #N having
+     *  contents SQ, which is 0 if SQ is the initial square contents. */
+    static long squareKey(int n, Square sq) {
+        if (sq.equals(Square.INITIAL)) {
+            return 0;
         }
-        if (c < size) {
-            n += 1;
+        long code = 4L * sq.getSpots() + SIDE_CODES[sq.getSide().ordinal()];
+        return mix(((long) n << 32) + code);
+    }
+
+    /** Returns the contribution to positionHash of a board size of N. */
+    static long sizeKey(int N) {
+        return mix(-N);
+    }
+
+    /** Returns the contribution to positionHash of a board with topology
+     *  TOPOLOGY, which for a GRID is sizeKey(TOPOLOGY.rows()). */
+    static long shapeKey(Topology topology) {
+        long key = sizeKey(topology.rows());
+        if (topology.kind() != Topology.Kind.GRID) {
+            key ^= mix(Long.MIN_VALUE + topology.kind().ordinal());
         }
-        return n;
+        return key;
+    }
+
+    /** Returns a well-scrambled function of X (the SplitMix64
+     *  finalizer). */
+    private static long mix(long x) {
+        long z = x * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Returns the number of neighbors of the square at row R, column C. */
+    int neighbors(int r, int c) {
+        return neighbors(sqNum(r, c));
     }
 
     /** Returns the number of neighbors of square #N. */
     int neighbors(int n) {
-        return neighbors(row(n), col(n));
+        return topology().capacity(n);
     }
 
     /** Indicate fatal error: OP is unsupported operation. */
@@ -215,8 +356,45 @@ abstract class Board extends Observable {
         throw new UnsupportedOperationException(msg);
     }
 
-    /** The length of an end of line on this system. */
-    private static final int NL_LENGTH =
-        System.getProperty("line.separator").length();
+    /** Dump-format characters for each Side, indexed by ordinal. */
+    private static final char[] SIDE_GLYPHS = new char[Side.values().length];
+
+    /** Small integer codes for each Side used in hashing, indexed by
+     *  ordinal. */
+    private static final int[] SIDE_CODES = new int[Side.values().length];
+
+    /** Number of distinct spot counts whose cell text is precomputed. */
+    private static final int CACHED_SPOTS = 10;
+
+    /** CELL_GLYPHS[s][k] is the dump-format text (with trailing blank)
+     *  for a square of the Side with ordinal s containing k spots. */
+    private static final String[][] CELL_GLYPHS =
+        new String[Side.values().length][CACHED_SPOTS];
+
+    static {
+        for (Side side : Side.values()) {
+            char glyph;
+            int code;
+            switch (side) {
+            case RED:
+                glyph = 'r';
+                code = 1;
+                break;
+            case BLUE:
+                glyph = 'b';
+                code = 2;
+                break;
+            default:
+                glyph = '-';
+                code = 0;
+                break;
+            }
+            SIDE_GLYPHS[side.ordinal()] = glyph;
+            SIDE_CODES[side.ordinal()] = code;
+            for (int k = 0; k < CACHED_SPOTS; k += 1) {
+                CELL_GLYPHS[side.ordinal()][k] = "" + k + glyph + " ";
+            }
+        }
+    }
 
 }
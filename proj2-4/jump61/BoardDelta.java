@@ -0,0 +1,70 @@
+package jump61;
+
+import java.util.Arrays;
+
+/** A description of the squares of a Board changed by some operation (a
+ *  move, an undo, a batch of changes, or a wholesale change such as
+ *  clearing).  Boards pass BoardDeltas as the argument of their observer
+ *  notifications, so that observers need examine only changed squares.
+ *  BoardDeltas are immutable.
+ *  @author Thomas Wu
+ */
+class BoardDelta {
+
+    /** A delta for a board of size SIZE indicating that any square may
+     *  have changed (and possibly the size itself). */
+    static BoardDelta all(int size) {
+        return new BoardDelta(size, null, 0);
+    }
+
+    /** A delta for a board of size SIZE in which exactly the squares
+     *  numbered CHANGED[0 .. COUNT-1] (which are distinct) changed. */
+    BoardDelta(int size, int[] changed, int count) {
+        this(size, changed, count, false);
+    }
+
+    /** A delta as for BoardDelta(SIZE, CHANGED, COUNT), all of whose
+     *  changes were made by moves and reported as cascade waves to the
+     *  board's CascadeListener iff CASCADED. */
+    BoardDelta(int size, int[] changed, int count, boolean cascaded) {
+        _size = size;
+        _changed = changed == null ? null : Arrays.copyOf(changed, count);
+        _cascaded = cascaded && changed != null;
+    }
+
+    /** Return the size of the board after the change. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff the change may have affected any square, in which
+     *  case the individual changed squares are not listed. */
+    boolean isTotal() {
+        return _changed == null;
+    }
+
+    /** Return true iff all my changes were made by moves whose cascade
+     *  waves were reported to the board's CascadeListener, so that a
+     *  listener has already seen them. */
+    boolean isCascaded() {
+        return _cascaded;
+    }
+
+    /** Return the number of changed squares, assuming !isTotal(). */
+    int numChanged() {
+        return _changed.length;
+    }
+
+    /** Return the number of the Kth changed square, 0 <= K <
+     *  numChanged(). */
+    int changed(int k) {
+        return _changed[k];
+    }
+
+    /** Board size. */
+    private final int _size;
+    /** Changed squares, or null for a total change. */
+    private final int[] _changed;
+    /** True iff my changes were all reported as cascade waves. */
+    private final boolean _cascaded;
+}
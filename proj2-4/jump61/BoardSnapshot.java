@@ -0,0 +1,131 @@
+package jump61;
+
+import static jump61.Side.*;
+
+/** An immutable copy of the contents of a Board at some moment.  Because
+ *  nothing about a BoardSnapshot ever changes, any number of threads may
+ *  read one without locking while the original Board continues to change.
+ *  Successive snapshots of the same MutableBoard share the rows that did
+ *  not change between them, so that taking a snapshot after a move costs
+ *  time proportional to the rows the move touched.
+ *  @author Thomas Wu
+ */
+final class BoardSnapshot extends Board {
+
+    /** A snapshot of the current contents of BOARD, with version number
+     *  VERSION. */
+    static BoardSnapshot of(Board board, long version) {
+        int N = board.size();
+        Square[][] rows = new Square[N][N];
+        for (int n = 0; n < N * N; n += 1) {
+            rows[n / N][n % N] = board.get(n);
+        }
+        return new BoardSnapshot(board.topology(), rows,
+                                 board.numOfSide(RED), board.numOfSide(BLUE),
+                                 board.numPieces(), board.positionHash(),
+                                 version);
+    }
+
+    /** A snapshot of a board with topology TOPOLOGY whose contents are
+     *  ROWS (which must not change thereafter), containing NUMRED red
+     *  squares, NUMBLUE blue squares, and NUMSPOTS spots, with position
+     *  hash HASH and version number VERSION. */
+    BoardSnapshot(Topology topology, Square[][] rows, int numRed,
+                  int numBlue, int numSpots, long hash, long version) {
+        _topology = topology;
+        _rows = rows;
+        _numRed = numRed;
+        _numBlue = numBlue;
+        _numSpots = numSpots;
+        _hash = hash;
+        _version = version;
+    }
+
+    /** Return my version number.  Snapshots of the same board taken later
+     *  have larger version numbers. */
+    long version() {
+        return _version;
+    }
+
+    /** Return the row (numbered from 0) of squares numbered K*size()
+     *  through (K+1)*size()-1.  Must not be modified. */
+    Square[] rowContents(int k) {
+        return _rows[k];
+    }
+
+    @Override
+    BoardSnapshot snapshot() {
+        return this;
+    }
+
+    @Override
+    int size() {
+        return _rows.length;
+    }
+
+    @Override
+    Topology topology() {
+        return _topology;
+    }
+
+    @Override
+    Square get(int n) {
+        int N = _rows.length;
+        return _rows[n / N][n % N];
+    }
+
+    @Override
+    int numPieces() {
+        return _numSpots;
+    }
+
+    @Override
+    int numOfSide(Side side) {
+        switch (side) {
+        case RED:
+            return _numRed;
+        case BLUE:
+            return _numBlue;
+        default:
+            return size() * size() - _numRed - _numBlue;
+        }
+    }
+
+    @Override
+    long positionHash() {
+        return _hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Board)) {
+            return false;
+        }
+        Board other = (Board) obj;
+        if (other.topology() != topology()) {
+            return false;
+        }
+        for (int n = 0; n < size() * size(); n += 1) {
+            if (!other.get(n).equals(get(n))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_hash ^ (_hash >>> 32));
+    }
+
+    /** Topology. */
+    private final Topology _topology;
+    /** Contents, by row. */
+    private final Square[][] _rows;
+    /** Numbers of red and blue squares and of spots. */
+    private final int _numRed, _numBlue, _numSpots;
+    /** Position hash. */
+    private final long _hash;
+    /** Version number. */
+    private final long _version;
+}
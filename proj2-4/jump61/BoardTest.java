@@ -1,5 +1,9 @@
 package jump61;
 
+import java.util.ArrayList;
+import java.util.Observable;
+import java.util.Observer;
+
 import static jump61.Side.*;
 
 import org.junit.Test;
@@ -140,6 +144,216 @@ public class BoardTest {
 
 
 
+    @Test
+    public void testDump() {
+        Board B = new MutableBoard(3);
+        B.set(1, 1, 2, RED);
+        B.set(3, 2, 3, BLUE);
+        String rows = "    2r 1- 1- \n    1- 1- 1- \n    1- 3b 1- \n";
+        assertEquals("=== \n" + rows + "===", B.toString());
+        assertEquals("\n" + rows, B.toDisplayString());
+        StringBuilder out = new StringBuilder("x");
+        assertEquals("x" + B.toString(),
+                     new ConstantBoard(B).dump(out).toString());
+    }
+
+
+    @Test
+    public void testCascadeUndo() {
+        MutableBoard B = new MutableBoard(3);
+        B.set(1, 1, 2, RED);
+        B.set(1, 2, 3, RED);
+        B.set(2, 1, 2, BLUE);
+        String before = B.toString();
+        long hash = B.positionHash();
+        B.addSpot(RED, 1, 1);
+        checkBoard("#1", B, 1, 1, 2, RED, 1, 2, 1, RED, 1, 3, 2, RED,
+                   2, 1, 3, RED, 2, 2, 2, RED);
+        assertEquals(5, B.numOfSide(RED));
+        assertEquals(0, B.numOfSide(BLUE));
+        B.undo();
+        assertEquals(before, B.toString());
+        assertEquals(hash, B.positionHash());
+        assertEquals(2, B.numOfSide(RED));
+        assertEquals(1, B.numOfSide(BLUE));
+    }
+
+    @Test
+    public void testNotifications() {
+        MutableBoard B = new MutableBoard(3);
+        final ArrayList<BoardDelta> deltas = new ArrayList<BoardDelta>();
+        B.addObserver(new Observer() {
+            @Override
+            public void update(Observable obs, Object arg) {
+                deltas.add((BoardDelta) arg);
+            }
+        });
+        B.set(1, 1, 2, RED);
+        assertEquals(1, deltas.size());
+        assertTrue(deltas.get(0).isTotal());
+        B.addSpot(RED, 1, 1);
+        assertEquals(2, deltas.size());
+        assertEquals(3, deltas.get(1).numChanged());
+        assertFalse(deltas.get(1).isCascaded());
+        B.beginBatch();
+        B.addSpot(BLUE, 3, 3);
+        B.addSpot(BLUE, 3, 3);
+        B.endBatch();
+        assertEquals(3, deltas.size());
+        assertEquals(3, deltas.get(2).numChanged());
+        assertEquals(8, deltas.get(2).changed(0));
+        checkBoard("#B", B, 1, 1, 1, RED, 1, 2, 2, RED, 2, 1, 2, RED,
+                   3, 3, 1, BLUE, 2, 3, 2, BLUE, 3, 2, 2, BLUE);
+
+        MutableBoard copy = new MutableBoard(B);
+        copy.addSpot(RED, 2, 2);
+        assertEquals(3, deltas.size());
+    }
+
+
+    @Test
+    public void testCascadeWaves() {
+        MutableBoard B = new MutableBoard(3);
+        B.set(1, 1, 2, RED);
+        B.set(1, 2, 3, RED);
+        B.set(2, 1, 2, BLUE);
+        MutableBoard replay = new MutableBoard(B);
+        final ArrayList<BoardDelta> deltas = new ArrayList<BoardDelta>();
+        B.addObserver(new Observer() {
+            @Override
+            public void update(Observable obs, Object arg) {
+                deltas.add((BoardDelta) arg);
+            }
+        });
+        final ArrayList<CascadeWave> waves = new ArrayList<CascadeWave>();
+        B.setCascadeListener(new CascadeListener() {
+            @Override
+            public void wave(CascadeWave wave) {
+                waves.add(wave);
+            }
+        });
+        B.addSpot(RED, 1, 1);
+        assertEquals(3, waves.size());
+        for (CascadeWave wave : waves) {
+            for (int k = 0; k < wave.numChanges(); k += 1) {
+                Square sq = wave.contents(k);
+                replay.set(wave.square(k), sq.getSpots(), sq.getSide());
+            }
+        }
+        assertEquals(B.toString(), replay.toString());
+        assertTrue(deltas.get(0).isTotal());
+        B.undo();
+        assertFalse(deltas.get(1).isCascaded());
+        B.addSpot(RED, 1, 1);
+        assertTrue(deltas.get(2).isCascaded());
+        B.beginBatch();
+        B.addSpot(RED, 1, 1);
+        B.set(3, 3, 1, BLUE);
+        B.endBatch();
+        assertFalse(deltas.get(deltas.size() - 1).isCascaded());
+    }
+
+
+    @Test
+    public void testSnapshots() {
+        MutableBoard B = new MutableBoard(4);
+        B.publishSnapshots();
+        Board C = new ConstantBoard(B);
+        BoardSnapshot s0 = C.snapshot();
+        B.addSpot(RED, 1, 1);
+        BoardSnapshot s1 = C.snapshot();
+        assertTrue(s1.version() > s0.version());
+        checkBoard("#0", s0);
+        checkBoard("#1", s1, 1, 1, 2, RED);
+        assertEquals(B.positionHash(), s1.positionHash());
+        assertSame(s0.rowContents(3), s1.rowContents(3));
+        B.undo();
+        assertTrue(C.snapshot().equals(s0));
+        B.clear(5);
+        assertEquals(5, C.snapshot().size());
+    }
+
+    @Test
+    public void testRecordCascadeLengths() {
+        long before = Metrics.CASCADE_LENGTH.count();
+        MutableBoard B = new MutableBoard(4);
+        B.set(0, 2, RED);
+        B.addSpot(RED, 0);
+        assertEquals(before, Metrics.CASCADE_LENGTH.count());
+        B.recordCascadeLengths();
+        B.set(0, 2, RED);
+        B.addSpot(RED, 0);
+        assertEquals(before + 1, Metrics.CASCADE_LENGTH.count());
+    }
+
+    @Test
+    public void testSnapshotsDuringReset() {
+        MutableBoard B = new MutableBoard(4);
+        B.publishSnapshots();
+        B.addSpot(RED, 1, 1);
+        BoardSnapshot s0 = B.snapshot();
+        ArrayList<BoardSnapshot> seen = new ArrayList<>();
+        B.setSquareListener(new SquareListener() {
+            @Override
+            public void reset(MutableBoard board) {
+                seen.add(board.snapshot());
+            }
+
+            @Override
+            public void squareChanged(MutableBoard board, int n,
+                                      Square old) {
+                seen.add(board.snapshot());
+            }
+        });
+        Topology torus = Topology.of(Topology.Kind.TORUS, 4);
+        B.clear(torus);
+        B.clear(6);
+        assertFalse(seen.isEmpty());
+        assertFalse(seen.contains(null));
+        assertSame(s0, seen.get(0));
+        BoardSnapshot s1 = B.snapshot();
+        assertEquals(6, s1.size());
+        B.clear(Topology.of(Topology.Kind.TORUS, 6));
+        BoardSnapshot s2 = B.snapshot();
+        assertEquals(Topology.Kind.TORUS, s2.topology().kind());
+        assertFalse(s1.rowContents(0) == s2.rowContents(0));
+    }
+
+    @Test
+    public void testUndoLimit() {
+        MutableBoard B = new MutableBoard(4);
+        B.setUndoLimit(2);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 4, 4);
+        B.addSpot(RED, 1, 2);
+        B.addSpot(BLUE, 4, 3);
+        B.addSpot(RED, 1, 1);
+        B.undo();
+        B.undo();
+        checkBoard("#1", B, 1, 1, 2, RED, 4, 4, 2, BLUE, 1, 2, 2, RED);
+        B.setUndoLimit(0);
+        B.undo();
+        checkBoard("#2", B, 1, 1, 2, RED, 4, 4, 2, BLUE, 1, 2, 2, RED);
+    }
+
+    @Test
+    public void testCopyChangedRows() {
+        MutableBoard B = new MutableBoard(40);
+        B.publishSnapshots();
+        MutableBoard copy = new MutableBoard(B);
+        BoardSnapshot prev = B.snapshot();
+        for (int k = 0; k < 200; k += 1) {
+            B.addSpot(k % 2 == 0 ? RED : BLUE, (k * 37) % 1600);
+            if (k % 7 == 0) {
+                copy.copyChangedRows(B.snapshot(), prev);
+                prev = B.snapshot();
+                assertEquals(B, copy);
+                assertEquals(B.positionHash(), copy.positionHash());
+            }
+        }
+    }
+
+
     /** Checks that B conforms to the description given by CONTENTS.
      *  CONTENTS should be a sequence of groups of 4 items:
      *  r, c, n, s, where r and c are row and column number of a square of B,
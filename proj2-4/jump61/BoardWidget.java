@@ -4,8 +4,11 @@ import ucb.gui.Pad;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 
+import java.awt.image.BufferedImage;
+
 import java.io.PrintWriter;
 
 import static jump61.Side.*;
@@ -24,6 +27,9 @@ class BoardWidget extends Pad {
     private static final int SPOT_MARGIN = 10;
     /** Width of the bars separating squares in pixels. */
     private static final int SEPARATOR_SIZE = 3;
+    /** Number of distinct spot counts for which square images are
+     *  cached. */
+    private static final int CACHED_SPOTS = 8;
     /** Width of square plus one separator. */
     private static final int SQUARE_SEP = SQUARE_SIZE + SEPARATOR_SIZE;
 
@@ -39,38 +45,167 @@ class BoardWidget extends Pad {
      *  converts mouse clicks to commands to COMMANDWRITER. */
     BoardWidget(Game game, PrintWriter commandWriter) {
         _game = game;
-        _board = _bufferedBoard = game.getBoard();
-        _side = _board.size() * SQUARE_SEP + SEPARATOR_SIZE;
+        _board = game.getBoard();
+        _shown = _board.snapshot();
+        _side = _shown.size() * SQUARE_SEP + SEPARATOR_SIZE;
         setPreferredSize(_side, _side);
         setMouseHandler("click", this, "doClick");
         _commandOut = commandWriter;
+        _cellImages = new BufferedImage[Side.values().length][CACHED_SPOTS];
+    }
+
+    /* .update is called by the thread playing the game, while .apply and
+     *  .paintComponent are called by the display thread.  Rather than
+     *  locking, .update publishes an immutable snapshot of the Board in
+     *  _shown, and .paintComponent reads _shown once per paint, so that
+     *  it always displays a consistent position.  Only the display thread
+     *  modifies _animated, the board used for animation. */
+
+    /** Update my display depending on all changes to my Board, and resize
+     *  the Widget if the size of the Board should change.  Returns true
+     *  iff the size changed. */
+    boolean update() {
+        return update(BoardDelta.all(_board.size()));
+    }
+
+    /** Update my display depending on the changes to my Board described
+     *  by DELTA, repainting only the changed squares unless DELTA is
+     *  total.  Returns true iff the size of the Widget changed. */
+    boolean update(BoardDelta delta) {
+        BoardSnapshot snap = _board.snapshot();
+        int side0 = _side;
+        boolean total = delta.isTotal() || snap.size() != _shown.size();
+        _shown = snap;
+        if (total) {
+            _side = snap.size() * SQUARE_SEP + SEPARATOR_SIZE;
+            if (side0 != _side) {
+                setPreferredSize(_side, _side);
+            }
+            repaint();
+        } else {
+            for (int k = 0; k < delta.numChanged(); k += 1) {
+                repaintSquare(snap, delta.changed(k));
+            }
+        }
+        return side0 != _side;
     }
 
-    /* .update and .paintComponent are synchronized because they are called
-     *  by three different threads (the main thread, the thread that
-     *  responds to events, and the display thread.  We don't want the
-     *  saved copy of our Board to change while it is being displayed. */
-
-    /** Update my display depending on any changes to my Board.  Here, we
-     *  save a copy of the current Board (so that we can deal with changes
-     *  to it only when we are ready for them), and resize the Widget if the
-     *  size of the Board should change. */
-    synchronized void update() {
-        _bufferedBoard = new MutableBoard(_board);
+    /** Apply the changes in WAVE to the board being animated, repainting
+     *  the affected squares (or everything, if the board size changes).
+     *  Returns true iff the size of the Widget changed.  Called only on
+     *  the display thread. */
+    boolean apply(CascadeWave wave) {
         int side0 = _side;
-        _side = _board.size() * SQUARE_SEP + SEPARATOR_SIZE;
-        if (side0 != _side) {
-            setPreferredSize(_side, _side);
+        if (_animated == null || wave.size() != _animated.size()) {
+            _animated = new MutableBoard(wave.size());
+            _side = wave.size() * SQUARE_SEP + SEPARATOR_SIZE;
+            if (side0 != _side) {
+                setPreferredSize(_side, _side);
+            }
+            repaint();
+        }
+        for (int k = 0; k < wave.numChanges(); k += 1) {
+            int n = wave.square(k);
+            Square sq = wave.contents(k);
+            _animated.set(n, sq.getSpots(), sq.getSide());
+            repaintSquare(_animated, n);
         }
+        _shown = _animated;
+        return side0 != _side;
+    }
+
+    /** Request repainting of square #N of BOARD. */
+    private void repaintSquare(Board board, int n) {
+        repaint(cellX(board.col(n)), cellX(board.row(n)),
+                SQUARE_SIZE, SQUARE_SIZE);
     }
 
     @Override
-    public synchronized void paintComponent(Graphics2D g) {
+    public void paintComponent(Graphics2D g) {
+        Board shown = _shown;
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, _side, _side);
+        }
+        g.setColor(SEPARATOR_COLOR);
+        g.fill(clip);
+        int N = shown.size();
+        int r0 = Math.max(1, clip.y / SQUARE_SEP + 1),
+            r1 = Math.min(N, (clip.y + clip.height) / SQUARE_SEP + 1),
+            c0 = Math.max(1, clip.x / SQUARE_SEP + 1),
+            c1 = Math.min(N, (clip.x + clip.width) / SQUARE_SEP + 1);
+        for (int r = r0; r <= r1; r += 1) {
+            for (int c = c0; c <= c1; c += 1) {
+                displaySpots(g, shown, r, c);
+            }
+        }
     }
 
     /** Color and display the spots on the square at row R and column C
-     *  on G.  (Used by paintComponent). */
-    private void displaySpots(Graphics2D g, int r, int c) {
+     *  of BOARD on G.  (Used by paintComponent). */
+    private void displaySpots(Graphics2D g, Board board, int r, int c) {
+        g.drawImage(cellImage(board.get(r, c)), cellX(c), cellX(r), null);
+    }
+
+    /** Return the pixel coordinate of the left (top) edge of the squares
+     *  in column (row) K. */
+    private static int cellX(int k) {
+        return SEPARATOR_SIZE + (k - 1) * SQUARE_SEP;
+    }
+
+    /** Return an image of a square with contents SQ, creating and caching
+     *  it if necessary. */
+    private BufferedImage cellImage(Square sq) {
+        int side = sq.getSide().ordinal(), spots = sq.getSpots();
+        if (spots < CACHED_SPOTS && _cellImages[side][spots] != null) {
+            return _cellImages[side][spots];
+        }
+        BufferedImage img =
+            new BufferedImage(SQUARE_SIZE, SQUARE_SIZE,
+                              BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        switch (sq.getSide()) {
+        case RED:
+            g.setColor(RED_TINT);
+            break;
+        case BLUE:
+            g.setColor(BLUE_TINT);
+            break;
+        default:
+            g.setColor(NEUTRAL);
+            break;
+        }
+        g.fillRect(0, 0, SQUARE_SIZE, SQUARE_SIZE);
+        int lo = SPOT_MARGIN, mid = SQUARE_SIZE / 2,
+            hi = SQUARE_SIZE - SPOT_MARGIN;
+        switch (spots) {
+        case 1:
+            spot(g, mid, mid);
+            break;
+        case 2:
+            spot(g, lo, lo);
+            spot(g, hi, hi);
+            break;
+        case 3:
+            spot(g, lo, lo);
+            spot(g, mid, mid);
+            spot(g, hi, hi);
+            break;
+        default:
+            spot(g, lo, lo);
+            spot(g, hi, lo);
+            spot(g, lo, hi);
+            spot(g, hi, hi);
+            if (spots > 4) {
+                spot(g, mid, mid);
+            }
+            break;
+        }
+        g.dispose();
+        if (spots < CACHED_SPOTS) {
+            _cellImages[side][spots] = img;
+        }
+        return img;
     }
 
     /** Draw one spot centered at position (X, Y) on G. */
@@ -96,10 +231,16 @@ class BoardWidget extends Pad {
     private Game _game;
     /** The Board I am displaying. */
     private Board _board;
-    /** An internal snapshot of _board (to prevent race conditions). */
-    private Board _bufferedBoard;
+    /** The board being displayed: either a snapshot of _board or
+     *  _animated. */
+    private volatile Board _shown;
+    /** The board on which animation frames are played, or null. */
+    private MutableBoard _animated;
+    /** Cached images of squares, indexed by Side ordinal and number of
+     *  spots. */
+    private final BufferedImage[][] _cellImages;
     /** Dimension in pixels of one side of the board. */
-    private int _side;
+    private volatile int _side;
     /** Destination for commands derived from mouse clicks. */
     private PrintWriter _commandOut;
 }
@@ -0,0 +1,21 @@
+package jump61;
+
+/** An object that is told about the intermediate stages of each move
+ *  made on a MutableBoard.  A move that causes squares to overflow is
+ *  divided into waves: each wave ends just after a square overflows (is
+ *  reset to one spot before its neighbors receive their spots), and the
+ *  last wave ends with the move.  Applying the waves of a move in order
+ *  to the position before the move yields the position after it, and
+ *  each intermediate result is a position that actually arose during
+ *  the move.
+ *  @author Thomas Wu
+ */
+interface CascadeListener {
+
+    /** Receive WAVE, the next wave of the current move.  Called on the
+     *  thread making the move, after the move is complete but before
+     *  Observers of the board are notified, so implementations should
+     *  return quickly. */
+    void wave(CascadeWave wave);
+
+}
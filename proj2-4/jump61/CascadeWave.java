@@ -0,0 +1,62 @@
+package jump61;
+
+import java.util.Arrays;
+
+/** A set of changes to the squares of a board, suitable for applying
+ *  later (possibly on another thread) to a copy of that board.  Used to
+ *  describe the waves of a cascade (see CascadeListener) and other board
+ *  changes to be displayed.  CascadeWaves are immutable.
+ *  @author Thomas Wu
+ */
+class CascadeWave {
+
+    /** A wave for a board of size SIZE that sets square #SQUARES[k] to
+     *  CONTENTS[k] for FROM <= k < TO, in that order. */
+    CascadeWave(int size, int[] squares, Square[] contents,
+                int from, int to) {
+        _size = size;
+        _squares = Arrays.copyOfRange(squares, from, to);
+        _contents = Arrays.copyOfRange(contents, from, to);
+    }
+
+    /** A wave that sets all squares of a board to the current contents
+     *  of BOARD (including its size). */
+    static CascadeWave snapshot(Board board) {
+        int N = board.size();
+        int[] squares = new int[N * N];
+        Square[] contents = new Square[N * N];
+        for (int n = 0; n < N * N; n += 1) {
+            squares[n] = n;
+            contents[n] = board.get(n);
+        }
+        return new CascadeWave(N, squares, contents, 0, N * N);
+    }
+
+    /** Return the size of the board to which I apply. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of square changes in me. */
+    int numChanges() {
+        return _squares.length;
+    }
+
+    /** Return the number of the square affected by my Kth change. */
+    int square(int k) {
+        return _squares[k];
+    }
+
+    /** Return the new contents of the square affected by my Kth
+     *  change. */
+    Square contents(int k) {
+        return _contents[k];
+    }
+
+    /** Board size. */
+    private final int _size;
+    /** Changed squares, in order of change. */
+    private final int[] _squares;
+    /** New contents of the squares in _squares. */
+    private final Square[] _contents;
+}
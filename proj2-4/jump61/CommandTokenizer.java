@@ -0,0 +1,317 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/** A streaming tokenizer for Jump61 command input.  Tokens are either
+ *  words (maximal runs of characters other than blanks and line
+ *  terminators) or line ends, which are returned as "\n".  Blanks (spaces
+ *  and tabs) separate words and are otherwise ignored.  This replaces a
+ *  regular-expression-driven Scanner: characters are examined once each
+ *  out of a private buffer, and integers are converted without creating
+ *  Strings.
+ *  @author Thomas Wu
+ */
+class CommandTokenizer {
+
+    /** The token returned for the end of a line. */
+    static final String EOL = "\n";
+
+    /** A tokenizer that reads characters from INPUT. */
+    CommandTokenizer(Reader input) {
+        _input = input;
+        _buffer = new char[BUFFER_SIZE];
+        _token = new StringBuilder();
+        _atLineStart = true;
+    }
+
+    /** Return true iff there is another token (possibly a line end). */
+    boolean hasNext() {
+        return peek() != EOF_TOKEN;
+    }
+
+    /** Return true iff the next token is a word that denotes an integer
+     *  in the range of an int. */
+    boolean hasNextInt() {
+        if (peek() != WORD) {
+            return false;
+        }
+        long v = parseLong();
+        return v != BAD_NUMBER && v == (int) v;
+    }
+
+    /** Return true iff the next token is a line end. */
+    boolean atEndOfLine() {
+        return peek() == LINE_END;
+    }
+
+    /** Return true iff the next token ends the current command: a line
+     *  end, or the end of input after a last line with no line end. */
+    boolean atEndOfCommand() {
+        return peek() == LINE_END || peek() == EOF_TOKEN;
+    }
+
+    /** Consume and return the next token: either a word or EOL.  The
+     *  result is a view of an internal buffer that remains valid only
+     *  until the next call on one of my methods. */
+    CharSequence nextToken() {
+        switch (peek()) {
+        case WORD:
+            consume();
+            return _token;
+        case LINE_END:
+            consume();
+            return EOL;
+        default:
+            throw new NoSuchElementException();
+        }
+    }
+
+    /** Consume and return the next token as a String. */
+    String next() {
+        return nextToken().toString();
+    }
+
+    /** Consume and return the next token, which must be an integer.
+     *  Throws InputMismatchException (without consuming anything)
+     *  otherwise. */
+    int nextInt() {
+        long v = nextNumber();
+        if (v != (int) v) {
+            throw new InputMismatchException();
+        }
+        consume();
+        return (int) v;
+    }
+
+    /** Consume and return the next token, which must be a long integer.
+     *  Throws InputMismatchException (without consuming anything)
+     *  otherwise. */
+    long nextLong() {
+        long v = nextNumber();
+        consume();
+        return v;
+    }
+
+    /** Consume the next token, which must equal one of CHOICES (which
+     *  are in lower case), ignoring case, and return the matching member
+     *  of CHOICES.  Throws InputMismatchException (without consuming
+     *  anything) if there is no match. */
+    String nextWord(String... choices) {
+        if (peek() == EOF_TOKEN) {
+            throw new NoSuchElementException();
+        }
+        if (_kind == WORD) {
+            for (String choice : choices) {
+                if (matches(choice)) {
+                    consume();
+                    return choice;
+                }
+            }
+        }
+        throw new InputMismatchException();
+    }
+
+    /** Skip the remainder of the current line, including its terminator.
+     *  Does nothing if the last token consumed was a line end, so that
+     *  the input is left at the start of a line. */
+    void skipLine() {
+        if (_kind == LINE_END) {
+            consume();
+            return;
+        }
+        boolean pendingWord = _kind == WORD;
+        _kind = NONE;
+        if (_atLineStart && !pendingWord) {
+            return;
+        }
+        while (true) {
+            int c = read();
+            if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '\r') {
+                if (peekChar() == '\n') {
+                    _pos += 1;
+                }
+                break;
+            }
+        }
+        _atLineStart = true;
+    }
+
+    /** Return the kind of the next token, scanning it if necessary. */
+    private int peek() {
+        if (_kind != NONE) {
+            return _kind;
+        }
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t');
+        if (c == -1) {
+            _kind = EOF_TOKEN;
+        } else if (c == '\n') {
+            _kind = LINE_END;
+        } else if (c == '\r') {
+            if (peekChar() == '\n') {
+                _pos += 1;
+            }
+            _kind = LINE_END;
+        } else {
+            _token.setLength(0);
+            while (true) {
+                _token.append((char) c);
+                c = peekChar();
+                if (c == -1 || c == ' ' || c == '\t'
+                    || c == '\n' || c == '\r') {
+                    break;
+                }
+                _pos += 1;
+            }
+            _kind = WORD;
+        }
+        return _kind;
+    }
+
+    /** Consume the currently scanned token. */
+    private void consume() {
+        _atLineStart = _kind == LINE_END;
+        _kind = NONE;
+    }
+
+    /** Return the value of the next token as an integer, without
+     *  consuming it.  Throws an appropriate exception if it is missing
+     *  or not an integer. */
+    private long nextNumber() {
+        if (peek() == EOF_TOKEN) {
+            throw new NoSuchElementException();
+        } else if (_kind != WORD) {
+            throw new InputMismatchException();
+        }
+        long v = parseLong();
+        if (v == BAD_NUMBER) {
+            throw new InputMismatchException();
+        }
+        return v;
+    }
+
+    /** Return the value of the current word token as a decimal integer
+     *  with optional sign, or BAD_NUMBER if it is not one or is out of
+     *  range. */
+    private long parseLong() {
+        int n = _token.length();
+        int i = 0;
+        boolean negative = false;
+        if (_token.charAt(0) == '-' || _token.charAt(0) == '+') {
+            negative = _token.charAt(0) == '-';
+            i = 1;
+        }
+        if (i == n) {
+            return BAD_NUMBER;
+        }
+        long v = 0;
+        for (; i < n; i += 1) {
+            int d = _token.charAt(i) - '0';
+            if (d < 0 || d > 9 || v < (Long.MIN_VALUE + d) / 10) {
+                return BAD_NUMBER;
+            }
+            v = v * 10 - d;
+        }
+        if (negative) {
+            return v;
+        } else if (v == Long.MIN_VALUE) {
+            return BAD_NUMBER;
+        } else {
+            return -v;
+        }
+    }
+
+    /** Return true iff the current word token equals WORD, ignoring
+     *  case. */
+    private boolean matches(String word) {
+        if (_token.length() != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i += 1) {
+            if (Character.toLowerCase(_token.charAt(i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the next input character without consuming it, or -1 at
+     *  end of input. */
+    private int peekChar() {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        return _buffer[_pos];
+    }
+
+    /** Consume and return the next input character, or -1 at end of
+     *  input. */
+    private int read() {
+        if (_pos == _limit && !fill()) {
+            return -1;
+        }
+        char c = _buffer[_pos];
+        _pos += 1;
+        return c;
+    }
+
+    /** Refill _buffer from _input.  Returns false at end of input.  Only
+     *  blocks until some input is available, so that interactive input
+     *  is handled one line at a time. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        try {
+            int n;
+            do {
+                n = _input.read(_buffer, 0, _buffer.length);
+            } while (n == 0);
+            if (n < 0) {
+                _eof = true;
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            _eof = true;
+            return false;
+        }
+    }
+
+    /** Number of characters read from _input at a time. */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /** Token kinds: not yet scanned, a word, a line end, end of input. */
+    private static final int NONE = 0, WORD = 1, LINE_END = 2, EOF_TOKEN = 3;
+
+    /** Value returned by parseLong for a malformed or out-of-range
+     *  integer.  (Long.MIN_VALUE itself is therefore not accepted.) */
+    private static final long BAD_NUMBER = Long.MIN_VALUE;
+
+    /** Source of characters. */
+    private final Reader _input;
+    /** Characters read from _input but not yet consumed lie in
+     *  _buffer[_pos .. _limit-1]. */
+    private final char[] _buffer;
+    /** Bounds of unconsumed characters in _buffer. */
+    private int _pos, _limit;
+    /** True once _input has reported end of input. */
+    private boolean _eof;
+    /** Text of the current word token. */
+    private final StringBuilder _token;
+    /** Kind of the currently scanned (unconsumed) token. */
+    private int _kind;
+    /** True iff the last token consumed was a line end (or nothing has
+     *  been consumed yet). */
+    private boolean _atLineStart;
+}
@@ -0,0 +1,95 @@
+package jump61;
+
+import java.io.StringReader;
+import java.util.InputMismatchException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of CommandTokenizer and PrefixTrie.
+ *  @author Thomas Wu
+ */
+public class CommandTokenizerTest {
+
+    @Test
+    public void testTokens() {
+        CommandTokenizer inp =
+            new CommandTokenizer(new StringReader("  dump\t 3 -12\r\n\nx"));
+        assertTrue(inp.hasNext());
+        assertFalse(inp.hasNextInt());
+        assertEquals("dump", inp.next());
+        assertTrue(inp.hasNextInt());
+        assertEquals(3, inp.nextInt());
+        assertEquals(-12L, inp.nextLong());
+        assertTrue(inp.atEndOfLine());
+        assertTrue(inp.atEndOfCommand());
+        assertEquals(CommandTokenizer.EOL, inp.next());
+        assertEquals(CommandTokenizer.EOL, inp.next());
+        assertFalse(inp.atEndOfCommand());
+        assertEquals("x", inp.next());
+        assertFalse(inp.atEndOfLine());
+        assertTrue(inp.atEndOfCommand());
+        assertFalse(inp.hasNext());
+    }
+
+    @Test
+    public void testMismatch() {
+        CommandTokenizer inp =
+            new CommandTokenizer(new StringReader("auto Green 1\nBLUE\n"));
+        inp.next();
+        try {
+            inp.nextWord("red", "blue");
+            fail("accepted Green");
+        } catch (InputMismatchException e) {
+            assertEquals("Green", inp.next());
+        }
+        inp.skipLine();
+        assertEquals("blue", inp.nextWord("red", "blue"));
+        assertFalse(inp.hasNextInt());
+        inp.skipLine();
+        assertFalse(inp.hasNext());
+    }
+
+    @Test
+    public void testSkipLine() {
+        CommandTokenizer inp =
+            new CommandTokenizer(new StringReader("\nset 1 2\nsize 4\n"));
+        assertEquals(CommandTokenizer.EOL, inp.next());
+        inp.skipLine();
+        assertEquals("set", inp.next());
+        inp.skipLine();
+        assertEquals("size", inp.next());
+        assertEquals(4, inp.nextInt());
+        inp.skipLine();
+        assertFalse(inp.hasNext());
+    }
+
+    @Test
+    public void testPrefixTrie() {
+        PrefixTrie names = new PrefixTrie("seed", "set", "size", "start",
+                                          "dump", "st");
+        assertEquals("dump", names.complete("D"));
+        assertEquals("size", names.complete("si"));
+        assertEquals("st", names.complete("ST"));
+        assertEquals("start", names.complete("sta"));
+        assertNull(names.complete("se"));
+        assertTrue(names.isAmbiguous("se"));
+        assertNull(names.complete("dumpy"));
+        assertFalse(names.isAmbiguous("dumpy"));
+        assertNull(names.complete("1"));
+
+        PrefixTrie added =
+            new PrefixTrie(new String[] { "auto", "seed", "set", "start" },
+                           new String[] { "analyze", "save", "stats" });
+        assertEquals("auto", added.complete("a"));
+        assertEquals("analyze", added.complete("an"));
+        assertEquals("start", added.complete("st"));
+        assertEquals("start", added.complete("STA"));
+        assertEquals("stats", added.complete("stat"));
+        assertEquals("save", added.complete("sa"));
+        assertNull(added.complete("s"));
+        assertTrue(added.isAmbiguous("s"));
+        assertFalse(added.isAmbiguous("st"));
+    }
+
+}
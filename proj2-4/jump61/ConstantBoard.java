@@ -4,7 +4,9 @@ import java.util.Observer;
 
 /** A ConstantBoard is a view of an existing Board that does not allow
  *  modifications. Changes made to the underlying Board are reflected in
- *  ConstantBoards formed from it.
+ *  ConstantBoards formed from it.  Threads other than the one modifying
+ *  the underlying Board should read it through snapshot(), which gives a
+ *  consistent view without locking.
  *  @author P. N. Hilfinger
  */
 class ConstantBoard extends Board {
@@ -20,6 +22,11 @@ class ConstantBoard extends Board {
         return _board.size();
     }
 
+    @Override
+    Topology topology() {
+        return _board.topology();
+    }
+
     @Override
     Square get(int n) {
         return _board.get(n);
@@ -50,6 +57,21 @@ class ConstantBoard extends Board {
         return _board.numOfSide(color);
     }
 
+    @Override
+    BoardSnapshot snapshot() {
+        return _board.snapshot();
+    }
+
+    @Override
+    long positionHash() {
+        return _board.positionHash();
+    }
+
+    @Override
+    long symmetricHash(int k) {
+        return _board.symmetricHash(k);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return _board.equals(obj);
@@ -67,6 +89,13 @@ class ConstantBoard extends Board {
         _board.addObserver(obs);
     }
 
+    /** LISTENER receives the waves of moves made on the Board to which my
+     *  operations are delegated. */
+    @Override
+    void setCascadeListener(CascadeListener listener) {
+        _board.setCascadeListener(listener);
+    }
+
     /** Board to which all operations delegated. */
     private Board _board;
 
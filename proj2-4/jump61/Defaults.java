@@ -12,6 +12,46 @@ class Defaults {
     static final int BOARD_SIZE = 6;
 
     /** Maximum number of squares on the side of a game board. */
-    static final int MAX_BOARD_SIZE = 10;
+    static final int MAX_BOARD_SIZE = 256;
+
+    /** Default depth of AI search. */
+    static final int SEARCH_DEPTH = 3;
+
+    /** Maximum depth of AI search. */
+    static final int MAX_SEARCH_DEPTH = 32;
+
+    /** Default number of positions an AI's quiescence search may visit
+     *  per move. */
+    static final int QUIESCENCE_NODES = 2000;
+
+    /** Maximum number of plies by which quiescence search extends the
+     *  search. */
+    static final int MAX_QUIESCENCE_DEPTH = 16;
+
+    /** Default time allotted to an AI for one move (milliseconds). */
+    static final long TIME_LIMIT = 15000;
+
+    /** Default number of positions an AI's search may visit per move
+     *  (0 for no limit other than the time). */
+    static final int SEARCH_NODES = 0;
+
+    /** Default number of threads an AI may use. */
+    static final int THREADS = 1;
+
+    /** Maximum number of threads an AI may use. */
+    static final int MAX_THREADS = 256;
+
+    /** Default size of AI position tables (megabytes). */
+    static final int HASH_SIZE = 16;
+
+    /** Maximum size of AI position tables (megabytes). */
+    static final int MAX_HASH_SIZE = 1 << 16;
+
+    /** Default size of a newly created file of cached search results
+     *  (megabytes). */
+    static final int CACHE_SIZE = 64;
+
+    /** Maximum size of a file of cached search results (megabytes). */
+    static final int MAX_CACHE_SIZE = 1 << 15;
 
 }
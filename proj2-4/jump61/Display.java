@@ -3,11 +3,18 @@ package jump61;
 import ucb.gui.TopLevel;
 import ucb.gui.LayoutSpec;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
 import java.io.PrintWriter;
 import java.io.Writer;
 
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.Timer;
 
 import static jump61.Side.*;
 
@@ -16,14 +23,33 @@ import static jump61.Side.*;
  *  into textual commands that are sent to the Game object through a
  *  a Writer.  The Game object need never know where its input is coming from.
  *  A Display is an Observer of Games and Boards so that it is notified when
- *  either changes.
+ *  either changes.  When animated, it also listens to the waves of each
+ *  cascade (see CascadeListener) and plays them back, together with other
+ *  board changes, from a render queue at a limited frame rate.  When the
+ *  queue backs up, several frames are applied at once, so that the
+ *  display catches up without ever holding up the game.
  *  @author Thomas Wu
  */
-class Display extends TopLevel implements Observer {
+class Display extends TopLevel implements Observer, CascadeListener {
+
+    /** Maximum number of frames displayed per second when animating. */
+    static final int FRAMES_PER_SECOND = 30;
+
+    /** Number of queued frames beyond which frames are dropped (merged
+     *  into the next displayed frame). */
+    static final int MAX_BACKLOG = 8;
 
     /** A new window with given TITLE displaying GAME, and using COMMANDWRITER
-     *  to send commands to the current game. */
+     *  to send commands to the current game.  Cascades are animated. */
     Display(String title, Game game, Writer commandWriter) {
+        this(title, game, commandWriter, true);
+    }
+
+    /** A new window with given TITLE displaying GAME, and using COMMANDWRITER
+     *  to send commands to the current game.  Cascades are animated iff
+     *  ANIMATED. */
+    Display(String title, Game game, Writer commandWriter,
+            boolean animated) {
         super(title, true);
         _game = game;
         _board = game.getBoard();
@@ -35,6 +61,19 @@ class Display extends TopLevel implements Observer {
 
         _board.addObserver(this);
         _game.addObserver(this);
+        _frames = new ConcurrentLinkedQueue<CascadeWave>();
+        _backlog = new AtomicInteger();
+        _animator = new Timer(1000 / FRAMES_PER_SECOND, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                playFrames();
+            }
+        });
+        _animated = animated;
+        if (animated) {
+            _board.setCascadeListener(this);
+            _animator.start();
+        }
         display(true);
     }
 
@@ -45,9 +84,49 @@ class Display extends TopLevel implements Observer {
 
     @Override
     public void update(Observable obs, Object obj) {
-        _boardWidget.update();
-        frame.pack();
-        _boardWidget.repaint();
+        if (_animated) {
+            if (!(obj instanceof BoardDelta)
+                || !((BoardDelta) obj).isCascaded()) {
+                wave(CascadeWave.snapshot(_board));
+            }
+            return;
+        }
+        boolean resized;
+        if (obj instanceof BoardDelta) {
+            resized = _boardWidget.update((BoardDelta) obj);
+        } else {
+            resized = _boardWidget.update();
+        }
+        if (resized) {
+            frame.pack();
+        }
+    }
+
+    /** Add WAVE to the frames awaiting display. */
+    @Override
+    public void wave(CascadeWave wave) {
+        _frames.add(wave);
+        _backlog.incrementAndGet();
+    }
+
+    /** Display the next queued frame, if any, or (if the queue has backed
+     *  up) enough frames to bring it back to MAX_BACKLOG.  Runs on the
+     *  event-dispatch thread. */
+    private void playFrames() {
+        int n = _backlog.get();
+        int count = n > MAX_BACKLOG ? n - MAX_BACKLOG + 1 : 1;
+        boolean resized = false;
+        for (int i = 0; i < count; i += 1) {
+            CascadeWave wave = _frames.poll();
+            if (wave == null) {
+                break;
+            }
+            _backlog.decrementAndGet();
+            resized |= _boardWidget.apply(wave);
+        }
+        if (resized) {
+            frame.pack();
+        }
     }
 
     /** The current game that I am controlling. */
@@ -58,4 +137,12 @@ class Display extends TopLevel implements Observer {
     private BoardWidget _boardWidget;
     /** Writer that sends commands to our game. */
     private PrintWriter _commandOut;
+    /** True iff cascades are animated. */
+    private final boolean _animated;
+    /** Frames awaiting display, in order. */
+    private final ConcurrentLinkedQueue<CascadeWave> _frames;
+    /** Number of frames in _frames. */
+    private final AtomicInteger _backlog;
+    /** Timer that displays frames from _frames. */
+    private final Timer _animator;
 }
@@ -0,0 +1,242 @@
+package jump61;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static jump61.Side.*;
+
+/** The weights of the learned static evaluator, a linear function of
+ *  features of a position, fitted to the outcomes of recorded games by
+ *  Trainer.  The value of a position for RED is the sum of the weights
+ *  of its features, in units of 1/SCALE, and its value for BLUE is the
+ *  negation of that.
+ *
+ *  Each square has a code describing its contents: 0 for white, and
+ *  1 + 3 * (side - RED) + level for red and blue squares (so 1-3 for red
+ *  and 4-6 for blue), where the level is 2 if the square will overflow
+ *  when it next receives a spot, 1 if it is one spot short of that, and
+ *  otherwise 0.  The features of a position are
+ *      one cell feature per square, determined by its capacity and code;
+ *      one pattern feature per 2x2 block of squares (rows R and R+1,
+ *          columns C and C+1), determined by the codes of the four
+ *          squares, in the order R:C, R:C+1, R+1:C, R+1:C+1.
+ *  Exchanging the colors of every square maps each feature F to the
+ *  feature swap(F), and the weights satisfy W(swap(F)) = -W(F), so that
+ *  the evaluation treats the two sides alike.
+ *
+ *  A weight file (see write) consists of the four bytes of MAGIC, a
+ *  version byte, a four-byte count of weights (NUM_FEATURES), and the
+ *  weights as four-byte IEEE floats, all big-endian.  Weights are
+ *  immutable.
+ *  @author Thomas Wu
+ */
+class EvalWeights {
+
+    /** Number of distinct square codes. */
+    static final int CODES = 7;
+
+    /** Smallest and largest capacities of a square. */
+    static final int MIN_CAPACITY = 2, MAX_CAPACITY = 6;
+
+    /** Number of cell features. */
+    static final int CELL_FEATURES = (MAX_CAPACITY - MIN_CAPACITY + 1) * CODES;
+
+    /** Number of pattern features. */
+    static final int PATTERN_FEATURES = CODES * CODES * CODES * CODES;
+
+    /** Total number of features. */
+    static final int NUM_FEATURES = CELL_FEATURES + PATTERN_FEATURES;
+
+    /** Units per 1.0 of weight in the integer values of positions. */
+    static final int SCALE = 1000;
+
+    /** First bytes of a weight file. */
+    static final byte[] MAGIC = { 'J', '6', '1', 'E' };
+
+    /** Current version of the weight-file format. */
+    static final int VERSION = 2;
+
+    /** The weights WEIGHTS, indexed by feature, which must satisfy the
+     *  symmetry described in the class comment. */
+    EvalWeights(float[] weights) {
+        if (weights.length != NUM_FEATURES) {
+            throw new IllegalArgumentException("wrong number of weights");
+        }
+        _weights = weights.clone();
+        _values = new int[NUM_FEATURES];
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            _values[f] = Math.round(weights[f] * SCALE);
+        }
+    }
+
+    /** Return the weights in the file format described in the class
+     *  comment read from IN.  Throws IOException if IN is not a valid
+     *  weight file. */
+    static EvalWeights read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a Jump61 weight file");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported weight file version "
+                                  + version);
+        }
+        if (data.readInt() != NUM_FEATURES) {
+            throw new IOException("wrong number of weights");
+        }
+        float[] weights = new float[NUM_FEATURES];
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            weights[f] = data.readFloat();
+        }
+        return new EvalWeights(weights);
+    }
+
+    /** Write me to OUT in the file format described in the class
+     *  comment. */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(NUM_FEATURES);
+        for (float w : _weights) {
+            data.writeFloat(w);
+        }
+        data.flush();
+    }
+
+    /** Return the weight of feature F. */
+    float weight(int f) {
+        return _weights[f];
+    }
+
+    /** Return the weight of feature F in units of 1/SCALE. */
+    int value(int f) {
+        return _values[f];
+    }
+
+    /** Return a 64-bit digest of my values, equal for equal weights, and
+     *  almost certainly different for different ones. */
+    long fingerprint() {
+        long result = FINGERPRINT_BASIS;
+        for (int v : _values) {
+            result = (result ^ v) * FINGERPRINT_PRIME;
+        }
+        return result;
+    }
+
+    /** Return the value for RED of board B in units of 1/SCALE, computed
+     *  from scratch. */
+    int value(Board b) {
+        int result;
+        result = 0;
+        int N = b.size();
+        for (int n = 0; n < N * N; n += 1) {
+            result += _values[cellFeature(b, n)];
+        }
+        for (int r = 0; r < N - 1; r += 1) {
+            for (int c = 0; c < N - 1; c += 1) {
+                result += _values[patternFeature(b, r * N + c)];
+            }
+        }
+        return result;
+    }
+
+    /** Set FEATURES[0 .. K-1] to the features of board B, returning K,
+     *  which is at most numFeatures(B.size()). */
+    static int features(Board b, int[] features) {
+        int N = b.size();
+        int k;
+        k = 0;
+        for (int n = 0; n < N * N; n += 1) {
+            features[k++] = cellFeature(b, n);
+        }
+        for (int r = 0; r < N - 1; r += 1) {
+            for (int c = 0; c < N - 1; c += 1) {
+                features[k++] = patternFeature(b, r * N + c);
+            }
+        }
+        return k;
+    }
+
+    /** Return the number of features of a position on an N x N
+     *  board. */
+    static int numFeatures(int N) {
+        return N * N + (N - 1) * (N - 1);
+    }
+
+    /** Return the code of square SQ, which has capacity CAPACITY. */
+    static int code(Square sq, int capacity) {
+        if (sq.getSide() == WHITE) {
+            return 0;
+        }
+        int level = Math.max(0, sq.getSpots() - capacity + 2);
+        return (sq.getSide() == RED ? 1 : 4) + level;
+    }
+
+    /** Return the cell feature of a square with capacity CAPACITY and
+     *  code CODE. */
+    static int cellFeature(int capacity, int code) {
+        return (capacity - MIN_CAPACITY) * CODES + code;
+    }
+
+    /** Return the cell feature of square #N of B. */
+    static int cellFeature(Board b, int n) {
+        int capacity = b.neighbors(n);
+        return cellFeature(capacity, code(b.get(n), capacity));
+    }
+
+    /** Return the pattern feature of a 2x2 block whose squares have codes
+     *  C0, C1, C2, and C3, in the order given in the class comment. */
+    static int patternFeature(int c0, int c1, int c2, int c3) {
+        return CELL_FEATURES + ((c0 * CODES + c1) * CODES + c2) * CODES + c3;
+    }
+
+    /** Return the pattern feature of the 2x2 block of B whose upper-left
+     *  square is #CORNER. */
+    static int patternFeature(Board b, int corner) {
+        int N = b.size();
+        return patternFeature(code(b, corner), code(b, corner + 1),
+                              code(b, corner + N), code(b, corner + N + 1));
+    }
+
+    /** Return the code of square #N of B. */
+    private static int code(Board b, int n) {
+        return code(b.get(n), b.neighbors(n));
+    }
+
+    /** Return the feature describing the same position as F with the
+     *  colors of all squares exchanged. */
+    static int swap(int f) {
+        if (f < CELL_FEATURES) {
+            return f - f % CODES + SWAPPED_CODE[f % CODES];
+        }
+        int p = f - CELL_FEATURES, result;
+        result = 0;
+        for (int scale = CODES * CODES * CODES; scale > 0; scale /= CODES) {
+            result = result * CODES + SWAPPED_CODE[p / scale % CODES];
+        }
+        return CELL_FEATURES + result;
+    }
+
+    /** SWAPPED_CODE[C] is the code of a square with code C after its
+     *  color is exchanged. */
+    private static final int[] SWAPPED_CODE = { 0, 4, 5, 6, 1, 2, 3 };
+
+    /** Initial value and multiplier of fingerprint (those of the 64-bit
+     *  FNV-1a hash). */
+    private static final long
+        FINGERPRINT_BASIS = 0xcbf29ce484222325L,
+        FINGERPRINT_PRIME = 0x100000001b3L;
+
+    /** The weights, indexed by feature. */
+    private final float[] _weights;
+    /** The weights in units of 1/SCALE. */
+    private final int[] _values;
+}
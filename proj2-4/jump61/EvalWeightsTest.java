@@ -0,0 +1,101 @@
+package jump61;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of EvalWeights, IncrementalEval, and Trainer.
+ *  @author Thomas Wu
+ */
+public class EvalWeightsTest {
+
+    /** Return arbitrary weights with the required symmetry, chosen with
+     *  RANDOM. */
+    private EvalWeights randomWeights(SplittableRandom random) {
+        float[] w = new float[EvalWeights.NUM_FEATURES];
+        for (int f = 0; f < w.length; f += 1) {
+            int g = EvalWeights.swap(f);
+            if (f < g) {
+                w[f] = (float) random.nextDouble(-1.0, 1.0);
+                w[g] = -w[f];
+            }
+        }
+        return new EvalWeights(w);
+    }
+
+    @Test
+    public void testSwap() {
+        for (int f = 0; f < EvalWeights.NUM_FEATURES; f += 1) {
+            assertEquals(f, EvalWeights.swap(EvalWeights.swap(f)));
+        }
+        assertEquals(EvalWeights.patternFeature(4, 0, 6, 2),
+                     EvalWeights.swap(EvalWeights.patternFeature(1, 0, 3,
+                                                                 5)));
+    }
+
+    @Test
+    public void testIncremental() {
+        SplittableRandom random = new SplittableRandom(61);
+        EvalWeights weights = randomWeights(random);
+        for (Topology.Kind kind : Topology.Kind.values()) {
+            MutableBoard B = new MutableBoard(Topology.of(kind, 5));
+            IncrementalEval eval = new IncrementalEval(weights);
+            B.setSquareListener(eval);
+            for (int k = 0; k < 60 && B.getWinner() == null; k += 1) {
+                Side p = B.whoseMove();
+                B.addSpot(p, Simulator.randomMove(p, B, random));
+                if (k % 3 == 2) {
+                    B.undo();
+                }
+                assertEquals(kind + " move " + k, weights.value(B),
+                             eval.value(Side.RED));
+            }
+            assertEquals(-eval.value(Side.RED), eval.value(Side.BLUE));
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        EvalWeights weights = randomWeights(new SplittableRandom(1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        weights.write(bytes);
+        EvalWeights copy =
+            EvalWeights.read(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int f = 0; f < EvalWeights.NUM_FEATURES; f += 1) {
+            assertEquals(weights.value(f), copy.value(f));
+        }
+    }
+
+    @Test
+    public void testTrain() throws IOException {
+        File record = File.createTempFile("jump61", ".rec");
+        record.deleteOnExit();
+        GameRecordWriter out =
+            new GameRecordWriter(new FileOutputStream(record));
+        Simulator sim =
+            new Simulator(Topology.of(GRID, 4), "greedy", "random",
+                          Settings.DEFAULT);
+        sim.setRecord(out);
+        sim.run(50, 61, 2);
+        out.close();
+        Trainer trainer = new Trainer();
+        assertTrue(trainer.train(record.getPath(), 2) > 0);
+        EvalWeights weights = trainer.weights();
+        boolean trained = false;
+        for (int f = 0; f < EvalWeights.NUM_FEATURES; f += 1) {
+            assertEquals(-weights.weight(f),
+                         weights.weight(EvalWeights.swap(f)), 1e-6);
+            trained |= weights.weight(f) != 0.0f;
+        }
+        assertTrue(trained);
+    }
+
+}
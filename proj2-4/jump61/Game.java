@@ -1,11 +1,13 @@
 package jump61;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.io.PrintWriter;
 
-import java.util.Scanner;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.Observable;
 
 import static jump61.Side.*;
@@ -21,32 +23,75 @@ class Game extends Observable {
     /** Name of resource containing help message. */
     private static final String HELP = "jump61/Help.txt";
 
-    /** A list of all commands. */
+    /** A list of the original commands. */
     private static final String[] COMMAND_NAMES = {
         "auto", "clear", "dump", "help", "manual",
         "quit", "seed", "set", "size", "start",
     };
 
+    /** A list of the commands added since, which leave the abbreviations
+     *  of the original commands (such as 'a' for 'auto' and 'st' for
+     *  'start') as they were. */
+    private static final String[] ADDED_COMMAND_NAMES = {
+        "analyze", "board", "goto", "load", "redo", "save", "stats",
+        "topology", "undo",
+    };
+
+    /** All command names, indexed for lookup by abbreviation. */
+    private static final PrefixTrie COMMANDS =
+        new PrefixTrie(COMMAND_NAMES, ADDED_COMMAND_NAMES);
+
     /** A new Game that takes command/move input from INPUT, prints
      *  normal output on OUTPUT, prints prompts for input on PROMPTS,
      *  and prints error messages on ERROROUTPUT. The Game now "owns"
      *  INPUT, PROMPTS, OUTPUT, and ERROROUTPUT, and is responsible for
      *  closing them when its play method returns. */
     Game(Reader input, Writer prompts, Writer output, Writer errorOutput) {
+        this(input, prompts, output, errorOutput, false);
+    }
+
+    /** A new Game as for Game(INPUT, PROMPTS, OUTPUT, ERROROUTPUT).  If
+     *  BATCH, the Game is running a script rather than an interactive
+     *  session: it prints no prompts, and buffers normal output in large
+     *  blocks, flushing it only on 'dump', before error messages, and at
+     *  the end of play.  The content of normal output is unaffected. */
+    Game(Reader input, Writer prompts, Writer output, Writer errorOutput,
+         boolean batch) {
         _exit = -1;
+        _batch = batch;
         _board = new MutableBoard(Defaults.BOARD_SIZE);
+        _board.publishSnapshots();
+        _board.recordCascadeLengths();
+        _history = new GameHistory(_board);
         _readonlyBoard = new ConstantBoard(_board);
-        _prompter = new PrintWriter(prompts, true);
-        _inp = new Scanner(input);
-        _inp.useDelimiter("\\p{Blank}*(?=[\r\n])|(?<=\n)|\\p{Blank}+");
-        _out = new PrintWriter(output, true);
+        _prompter = new PrintWriter(prompts, !batch);
+        _inp = new CommandTokenizer(input);
+        if (batch) {
+            _out = new PrintWriter(new BufferedWriter(output,
+                                                      BATCH_BUFFER_SIZE));
+        } else {
+            _out = new PrintWriter(output, true);
+        }
         _err = new PrintWriter(errorOutput, true);
         _players[0] = new HumanPlayer(this, Side.RED);
         _players[1] = new AI(this, Side.BLUE);
     }
 
+    /** Use SETTINGS for the initial board size and for my automated
+     *  players.  Takes effect for the board when play begins, and for the
+     *  automated players at their next move. */
+    void setSettings(Settings settings) {
+        _settings = settings;
+    }
+
+    /** Return my current settings. */
+    Settings settings() {
+        return _settings;
+    }
+
     /** Returns a readonly view of the game board.  This board remains valid
-     *  throughout the session. */
+     *  throughout the session.  Threads other than the one playing the game
+     *  should read it through its snapshot() method. */
     Board getBoard() {
         return _readonlyBoard;
     }
@@ -62,7 +107,9 @@ class Game extends Observable {
     int play() {
         _out.println("Welcome to " + Defaults.VERSION);
         _out.flush();
-        _board.clear(Defaults.BOARD_SIZE);
+        _board.clear(Topology.of(_settings.topology(),
+                                 _settings.boardSize()));
+        _history.reset();
         while (_exit < 0) {
             if (_playing) {
                 try {
@@ -81,6 +128,11 @@ class Game extends Observable {
                 _exit = 0;
             }
         }
+        closeRecord();
+        closeSpectators();
+        closeSearchTrace();
+        closePositionCache();
+        _out.flush();
         _prompter.close();
         _out.close();
         _err.close();
@@ -113,7 +165,11 @@ class Game extends Observable {
     void makeMove(int r, int c) {
         assert _board.isLegal(_board.whoseMove(), r, c);
         if (_board.isLegal(_board.whoseMove(), r, c)) {
-            _board.addSpot(_board.whoseMove(), r, c);
+            if (_spectators != null) {
+                _spectators.nextMove(_board.sqNum(r, c));
+            }
+            _history.move(_board.sqNum(r, c));
+            recordMove(_board.sqNum(r, c));
         } else {
             reportError("The move to %d %d is illegal", r, c);
         }
@@ -131,10 +187,11 @@ class Game extends Observable {
         message("%s moves %d %d.%n", player.toCapitalizedString(), row, col);
     }
 
-    /** Return a random integer in the range [0 .. N), uniformly
-     *  distributed.  Requires N > 0. */
-    int randInt(int n) {
-        return _random.nextInt(n);
+    /** Return the generator from which the player of side PLAYER (RED or
+     *  BLUE) draws random numbers in the current game (see
+     *  RandomStreams).  It is used by that player alone. */
+    SplittableRandom random(Side player) {
+        return _random[player.ordinal()];
     }
 
     /** Send a message to the user as determined by FORMAT and ARGS, which
@@ -150,6 +207,7 @@ class Game extends Observable {
             return;
         } else {
             _playing = false;
+            endRecordedGame();
             announceWinner();
         }
     }
@@ -203,14 +261,73 @@ class Game extends Observable {
         setSize(_board.size());
     }
 
+    /** Analyze the current position with an AI player, reporting the best
+     *  moves for the player to move as the search deepens.  Reads the
+     *  optional number of moves to report, depth, and time limit (in
+     *  milliseconds) from the rest of the command; the depth, which is
+     *  as for Settings.searchDepth, and time default to those of my
+     *  settings, so that the last depth reported is searched as my
+     *  automated players search. */
+    private void analyze() {
+        int count =
+            _inp.atEndOfCommand() ? ANALYSIS_LINES : _inp.nextInt();
+        int depth =
+            _inp.atEndOfCommand() ? _settings.searchDepth() : _inp.nextInt();
+        long millis =
+            _inp.atEndOfCommand() ? _settings.timeLimit() : _inp.nextLong();
+        if (count < 1 || depth < 0 || millis < 1) {
+            throw error("analysis needs at least one move and"
+                        + " millisecond, and a depth of at least 0");
+        } else if (_board.getWinner() != null) {
+            throw error("the game is over");
+        } else if (_board.size() * _board.size() > AI.MAX_SEARCH_SQUARES) {
+            throw error("board is too large to analyze");
+        }
+        Side player = _board.whoseMove();
+        AI ai = new AI(this, player);
+        ai.analyze(player, new MutableBoard(_board), count, depth, millis,
+                   this::reportAnalysis);
+    }
+
+    /** Print the results of analysis to depth DEPTH, which visited NODES
+     *  positions in NANOS nanoseconds, finding the best moves LINES. */
+    private void reportAnalysis(int depth, long nodes, long nanos,
+                                List<AI.Line> lines) {
+        _out.printf("depth %d: %d nodes in %.3f s%n", depth, nodes,
+                    nanos / NANOS_PER_SECOND);
+        for (int i = 0; i < lines.size(); i += 1) {
+            AI.Line line = lines.get(i);
+            String value;
+            if (line.isWin()) {
+                value = "win";
+            } else if (line.isLoss()) {
+                value = "loss";
+            } else {
+                value = String.format("%+d", line.value());
+            }
+            _out.printf("  %d. (%s)", i + 1, value);
+            int[] pv = line.pv();
+            for (int j = 0; j < pv.length; j += 1) {
+                _out.printf("%s %d %d", j == 0 ? "" : ",",
+                            _board.row(pv[j]), _board.col(pv[j]));
+            }
+            _out.println();
+        }
+        _out.flush();
+    }
+
     /** Print the current board using standard board-dump format. */
     private void dump() {
-        _out.println(_board);
+        _board.dump(_out);
+        _out.println();
+        _out.flush();
     }
 
     /** Print a board with row/column numbers. */
     private void printBoard() {
-        _out.println(_board.toDisplayString());
+        _board.display(_out);
+        _out.println();
+        _out.flush();
     }
 
     /** Print a help message. */
@@ -218,9 +335,157 @@ class Game extends Observable {
         Main.printHelpResource(HELP, _out);
     }
 
-    /** Seed the random-number generator with SEED. */
-    private void setSeed(long seed) {
-        _random.setSeed(seed);
+    /** Seed the random-number generators of the next and subsequent
+     *  games with SEED, as described in RandomStreams.  Games between
+     *  automated players that search are reproducible only if my
+     *  settings give their searches a budget of positions (see
+     *  Settings.searchNodes) rather than of time. */
+    void setSeed(long seed) {
+        _seed = seed;
+        _gamesSinceSeed = 0;
+    }
+
+    /** Give the game about to start its seed and random streams. */
+    private void seedGame() {
+        _gameSeed = RandomStreams.gameSeed(_seed, _gamesSinceSeed);
+        _gamesSinceSeed += 1;
+        for (Side side : Side.values()) {
+            _random[side.ordinal()] = RandomStreams.stream(_gameSeed, side);
+        }
+    }
+
+    /** Record all subsequently started games on RECORD, closing any
+     *  previous record. */
+    void setRecord(GameRecordWriter record) {
+        closeRecord();
+        _record = record;
+    }
+
+    /** Broadcast all subsequent changes to my board to spectators
+     *  connecting to local port PORT (any free port if 0), closing any
+     *  previous broadcast.  Returns the port actually used. */
+    int setSpectators(int port) throws IOException {
+        closeSpectators();
+        _spectators = new SpectatorFeed(_board, port);
+        return _spectators.port();
+    }
+
+    /** Stop broadcasting to spectators, if I am. */
+    private void closeSpectators() {
+        if (_spectators != null) {
+            try {
+                _spectators.close();
+            } catch (IOException excp) {
+                reportError("could not close spectator feed: %s",
+                            excp.getMessage());
+            }
+            _spectators = null;
+        }
+    }
+
+    /** Trace the searches of my AIs on TRACE, closing any previous
+     *  trace, or stop tracing if TRACE is null. */
+    void setSearchTrace(SearchTrace trace) {
+        closeSearchTrace();
+        _searchTrace = trace;
+    }
+
+    /** Return the trace on which my AIs should describe their searches,
+     *  or null if they should not. */
+    SearchTrace searchTrace() {
+        return _searchTrace;
+    }
+
+    /** Close my search trace, if any, and stop tracing. */
+    private void closeSearchTrace() {
+        if (_searchTrace != null) {
+            try {
+                _searchTrace.close();
+            } catch (IOException excp) {
+                reportError("could not write search trace: %s",
+                            excp.getMessage());
+            }
+            _searchTrace = null;
+        }
+    }
+
+    /** Have my AIs consult and add to CACHE, closing any previous cache,
+     *  or stop using a cache if CACHE is null. */
+    void setPositionCache(PositionCache cache) {
+        closePositionCache();
+        _positionCache = cache;
+    }
+
+    /** Return the cache of search results my AIs should use, or null if
+     *  they should use none. */
+    PositionCache positionCache() {
+        return _positionCache;
+    }
+
+    /** Close my position cache, if any, and stop using it. */
+    private void closePositionCache() {
+        if (_positionCache != null) {
+            try {
+                _positionCache.close();
+            } catch (IOException excp) {
+                reportError("could not use position cache: %s",
+                            excp.getMessage());
+            }
+            _positionCache = null;
+        }
+    }
+
+    /** Begin a new game in my record, if any, from the current
+     *  position. */
+    private void beginRecordedGame() {
+        if (_record != null) {
+            try {
+                _record.beginGame(_board, _gameSeed);
+            } catch (IOException excp) {
+                recordFailed(excp);
+            }
+        }
+    }
+
+    /** Add a move to square #N to my record, if any. */
+    private void recordMove(int n) {
+        if (_record != null && _record.inGame()) {
+            try {
+                _record.move(n);
+            } catch (IOException excp) {
+                recordFailed(excp);
+            }
+        }
+    }
+
+    /** End the current game in my record, if any. */
+    private void endRecordedGame() {
+        if (_record != null) {
+            try {
+                _record.endGame(_board.positionHash());
+            } catch (IOException excp) {
+                recordFailed(excp);
+            }
+        }
+    }
+
+    /** Close my record, if any, and stop recording. */
+    private void closeRecord() {
+        if (_record != null) {
+            try {
+                _record.close();
+            } catch (IOException excp) {
+                reportError("could not write game record: %s",
+                            excp.getMessage());
+            }
+            _record = null;
+        }
+    }
+
+    /** Report failure EXCP of my record and stop recording. */
+    private void recordFailed(IOException excp) {
+        reportError("could not write game record: %s", excp.getMessage());
+        closeRecord();
     }
 
     /** Place SPOTS spots on square R:C and color the square red or
@@ -231,6 +496,7 @@ class Game extends Observable {
         _playing = false;
         if (spots == 0) {
             _board.clear(_board.size());
+            _history.reset();
             return;
         }
         Side plyr;
@@ -242,20 +508,44 @@ class Game extends Observable {
             plyr = WHITE;
         }
         if (spots <= _board.neighbors(r, c)) {
-            _board.set(r, c, spots, plyr);
+            _history.edit(_board.sqNum(r, c), spots, plyr);
         } else {
             throw error("N must be less than the number of neighbors.");
         }
     }
 
+    /** Stop any current game and set the board to the position whose
+     *  notation (see PositionNotation) is POSITION, starting a new
+     *  history there. */
+    private void load(String position) {
+        _playing = false;
+        PositionNotation.parse(position, _board);
+        _history.reset();
+        announce();
+    }
+
     /** Stop any current game and set the board to an empty N x N board
-     *  with numMoves() == 0.  Requires 2 <= N <= 10. */
+     *  with numMoves() == 0.  Requires 2 <= N <= Defaults.MAX_BOARD_SIZE. */
     private void setSize(int n) {
-        if (n < 2 || n > 10) {
-            throw error("N is out of the range [2, 10]");
+        setSize(_board.topology().kind(), n);
+    }
+
+    /** Stop any current game and set the board to an empty board of the
+     *  current size with topology of kind KIND. */
+    private void setTopology(Topology.Kind kind) {
+        setSize(kind, _board.size());
+    }
+
+    /** Stop any current game and set the board to an empty N x N board
+     *  with topology of kind KIND and numMoves() == 0. */
+    private void setSize(Topology.Kind kind, int n) {
+        if (n < 2 || n > Defaults.MAX_BOARD_SIZE) {
+            throw error("N is out of the range [2, %d]",
+                        Defaults.MAX_BOARD_SIZE);
         }
         _playing = false;
-        _board.clear(n);
+        _board.clear(Topology.of(kind, n));
+        _history.reset();
         announce();
     }
 
@@ -263,6 +553,10 @@ class Game extends Observable {
      *  immediately print a win message and end the game. */
     private void restartGame() {
         if (_board.getWinner() == null) {
+            if (!_playing) {
+                seedGame();
+                beginRecordedGame();
+            }
             _playing = true;
         } else {
             _playing = false;
@@ -285,79 +579,84 @@ class Game extends Observable {
     /** Returns a color (player) name from _inp: either RED or BLUE.
      *  Throws an exception if not present. */
     private Side readSide() {
-        return Side.parseSide(_inp.next("[rR][eE][dD]|[Bb][Ll][Uu][Ee]"));
+        return Side.parseSide(_inp.nextWord("red", "blue"));
     }
 
     /** Read and execute one command.  Leave the input at the start of
      *  a line, if there is more input. */
     private void readExecuteCommand() {
         try {
-            if (_inp.hasNextInt() && _playing) {
-                saveMove(_inp.nextInt(), _inp.nextInt());
+            boolean isMove = _inp.hasNextInt() && _playing;
+            long start = System.nanoTime();
+            if (isMove) {
+                int r = _inp.nextInt(), c = _inp.nextInt();
+                Metrics.COMMAND_PARSE_TIME.record(System.nanoTime() - start);
+                saveMove(r, c);
             } else {
-                String command = _inp.next();
-                executeCommand(canonicalizeCommand(command));
+                String cmnd = canonicalizeCommand(_inp.nextToken());
+                Metrics.COMMAND_PARSE_TIME.record(System.nanoTime() - start);
+                executeCommand(cmnd);
             }
         } catch (GameException e) {
             reportError(e.getMessage());
         } catch (InputMismatchException e) {
             reportError("Please input something valid.");
         }
-        if (_inp.hasNextLine()) {
-            _inp.nextLine();
-        }
+        _inp.skipLine();
     }
 
     /** Return the full, lower-case command name that uniquely fits
      *  COMMAND.  COMMAND may be any prefix of a valid command name,
      *  as long as that name is unique.  If the name is not unique or
      *  no command name matches, returns COMMAND in lower case. */
-    private String canonicalizeCommand(String command) {
-        command = command.toLowerCase();
-        if (command.startsWith("#")) {
+    private String canonicalizeCommand(CharSequence command) {
+        if (command.length() > 0 && command.charAt(0) == '#') {
             return "#";
         }
-        String fullName;
-        fullName = null;
-        for (String name : COMMAND_NAMES) {
-            if (name.equals(command)) {
-                return command;
-            }
-            if (name.startsWith(command)) {
-                if (fullName != null) {
-                    throw error("%s is not a unique command abbreviation",
-                                command);
-                }
-                fullName = name;
-            }
-        }
-        if (fullName == null) {
-            return command;
-        } else {
+        String fullName = COMMANDS.complete(command);
+        if (fullName != null) {
             return fullName;
+        } else if (COMMANDS.isAmbiguous(command)) {
+            throw error("%s is not a unique command abbreviation",
+                        command.toString().toLowerCase());
+        } else {
+            return command.toString().toLowerCase();
         }
     }
 
-    /** Gather arguments and execute command CMND.  Throws GameException
-     *  on errors. */
+    /** Gather arguments and execute command CMND, which has been
+     *  canonicalized.  Throws GameException on errors. */
     private void executeCommand(String cmnd) {
-        switch (canonicalizeCommand(cmnd)) {
-        case "\n": case "\r\n":
+        switch (cmnd) {
+        case CommandTokenizer.EOL:
             return;
         case "#":
             break;
+        case "analyze":
+            analyze();
+            break;
         case "auto":
             setAuto(readSide());
             break;
+        case "board":
+            printBoard();
+            break;
         case "clear":
             clear();
             break;
         case "dump":
             dump();
             break;
+        case "goto":
+            _playing = false;
+            _history.jump(_inp.nextInt());
+            break;
         case "help":
             help();
             break;
+        case "load":
+            load(_inp.next());
+            break;
         case "manual":
             setManual(readSide());
             break;
@@ -365,12 +664,20 @@ class Game extends Observable {
             _exit = 0;
             _playing = false;
             break;
+        case "redo":
+            _playing = false;
+            _history.redo();
+            break;
+        case "save":
+            _out.println(PositionNotation.format(_board));
+            _out.flush();
+            break;
         case "seed":
             setSeed(_inp.nextLong());
             break;
         case "set":
             setSpots(_inp.nextInt(), _inp.nextInt(), _inp.nextInt(),
-                     _inp.next("[brBR]"));
+                     _inp.nextWord("b", "r"));
             break;
         case "size":
             setSize(_inp.nextInt());
@@ -378,6 +685,16 @@ class Game extends Observable {
         case "start":
             restartGame();
             break;
+        case "stats":
+            Metrics.report(_out);
+            break;
+        case "topology":
+            setTopology(Topology.parseKind(_inp.next()));
+            break;
+        case "undo":
+            _playing = false;
+            _history.undo();
+            break;
         default:
             throw error("bad command: '%s'", cmnd);
         }
@@ -386,17 +703,22 @@ class Game extends Observable {
     /** Print a prompt and wait for input. Returns true iff there is another
      *  token. */
     private boolean promptForNext() {
-        if (gameInProgress()) {
-            _prompter.print(_board.whoseMove());
+        if (!_batch) {
+            if (gameInProgress()) {
+                _prompter.print(_board.whoseMove());
+            }
+            _prompter.print("> ");
+            _prompter.flush();
         }
-        _prompter.print("> ");
-        _prompter.flush();
         return _inp.hasNext();
     }
 
     /** Send an error message to the user formed from arguments FORMAT
      *  and ARGS, whose meanings are as for printf. */
     void reportError(String format, Object... args) {
+        if (_batch) {
+            _out.flush();
+        }
         _err.print("Error: ");
         _err.printf(format, args);
         _err.println();
@@ -410,21 +732,55 @@ class Game extends Observable {
 
 
 
+    /** Default number of moves reported by analyze. */
+    private static final int ANALYSIS_LINES = 3;
+
+    /** Number of nanoseconds in one second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Size in characters of the output buffer used in batch mode. */
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
+    /** True iff running a script non-interactively (see constructor). */
+    private final boolean _batch;
     /** Writer on which to print prompts for input. */
     private final PrintWriter _prompter;
-    /** Scanner from current game input.  Initialized to return
-     *  newlines as tokens. */
-    private final Scanner _inp;
+    /** Tokenizer for current game input.  Returns line ends as
+     *  tokens. */
+    private final CommandTokenizer _inp;
     /** Outlet for responses to the user. */
     private final PrintWriter _out;
     /** Outlet for error responses to the user. */
     private final PrintWriter _err;
-    /** The board on which I record all moves. */
-    private final Board _board;
+    /** The board on which I record all moves.  It publishes snapshots, so
+     *  that other threads may read it through _readonlyBoard. */
+    private final MutableBoard _board;
     /** A readonly view of _board. */
     private final Board _readonlyBoard;
-    /** A pseudo-random number generator used by players as needed. */
-    private final Random _random = new Random();
+    /** The history of _board, through which all moves and edits are
+     *  made. */
+    private final GameHistory _history;
+    /** The seed most recently set. */
+    private long _seed = new SplittableRandom().nextLong();
+    /** Number of games started since _seed was set. */
+    private long _gamesSinceSeed;
+    /** The seed of the current game. */
+    private long _gameSeed;
+    /** The random-number generators of the current game, indexed by the
+     *  ordinals of the sides that use them. */
+    private final SplittableRandom[] _random =
+        new SplittableRandom[Side.values().length];
+    /** Destination for records of games played, or null if games are
+     *  not being recorded. */
+    private GameRecordWriter _record;
+    /** Broadcaster of changes to _board to spectators, or null. */
+    private SpectatorFeed _spectators;
+    /** Destination for traces of AI searches, or null. */
+    private SearchTrace _searchTrace;
+    /** Cache of AI search results, or null. */
+    private PositionCache _positionCache;
+    /** Tunable parameters of this session. */
+    private Settings _settings = Settings.DEFAULT;
     /** True iff a game is currently in progress. */
     private boolean _playing;
     /** When set to a non-negative value, indicates that play should terminate
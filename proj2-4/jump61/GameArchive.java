@@ -0,0 +1,415 @@
+package jump61;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A large, append-only collection of recorded games kept in a directory.
+ *  Games are stored in segment files, each of which is a game record in
+ *  the format written by GameRecordWriter; a new segment is begun when
+ *  the current one exceeds a size limit.  Index files accompany the
+ *  segments:
+ *
+ *    games.idx      one 12-byte entry per game: segment number (int) and
+ *                   offset of the game within that segment (long), so
+ *                   that game #k's entry is at offset 12k;
+ *    positions.idx  one 16-byte entry per position reached in each game:
+ *                   positionHash (long), game number (int), and number of
+ *                   moves made to reach the position (int), in order
+ *                   of game and then ply;
+ *    hashes-*.idx   the same entries in runs sorted by hash, which find
+ *                   the games reaching a position by binary search (see
+ *                   PositionHashIndex).
+ *
+ *  All reading is done through memory-mapped buffers, so that queries scan
+ *  or seek across the archive without copying it onto the heap.  Each
+ *  segment holds games in the format version in its header; games are
+ *  only appended to a segment of the current version, a new segment
+ *  being begun if needed.  An archive opened by readOnly changes no
+ *  files.
+ *  @author Thomas Wu
+ */
+class GameArchive implements Closeable {
+
+    /** Default maximum size of a segment file in bytes. */
+    static final long DEFAULT_SEGMENT_LIMIT = 1L << 28;
+
+    /** An archive kept in directory DIR, which is created if needed, with
+     *  the default segment size limit. */
+    GameArchive(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_LIMIT);
+    }
+
+    /** An archive kept in directory DIR, which is created if needed,
+     *  beginning a new segment whenever the current one reaches
+     *  SEGMENTLIMIT bytes.  Since segments are mapped in their entirety,
+     *  SEGMENTLIMIT must be well under 2GB. */
+    GameArchive(File dir, long segmentLimit) throws IOException {
+        this(dir, segmentLimit, PositionHashIndex.DEFAULT_CHUNK);
+    }
+
+    /** An archive as for GameArchive(DIR, SEGMENTLIMIT) whose hash index
+     *  copies positions into sorted runs in chunks of CHUNK entries. */
+    GameArchive(File dir, long segmentLimit, int chunk) throws IOException {
+        this(dir, segmentLimit, chunk, true);
+    }
+
+    /** An archive as for GameArchive(DIR, SEGMENTLIMIT, CHUNK) that may
+     *  be appended to iff WRITABLE.  If not WRITABLE, DIR must already
+     *  hold an archive, and no file in it is created or changed. */
+    private GameArchive(File dir, long segmentLimit, int chunk,
+                        boolean writable) throws IOException {
+        if (segmentLimit <= 0 || segmentLimit > MAX_SEGMENT_LIMIT) {
+            throw new IllegalArgumentException("bad segment limit");
+        }
+        if (!writable && !new File(dir, "games.idx").isFile()) {
+            throw new IOException(dir + " is not a Jump61 game archive");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create archive directory " + dir);
+        }
+        _dir = dir;
+        _segmentLimit = segmentLimit;
+        _writable = writable;
+        _games = open(new File(dir, "games.idx"), writable);
+        _positions = open(new File(dir, "positions.idx"), writable);
+        if (_games.size() % GAME_ENTRY != 0
+            || _positions.size() % POSITION_ENTRY != 0) {
+            throw new IOException("corrupted archive index in " + dir);
+        }
+        _numGames = (int) (_games.size() / GAME_ENTRY);
+        _segmentNum = 0;
+        if (_numGames > 0) {
+            _segmentNum = gameEntry(_numGames - 1).getInt();
+        }
+        if (writable) {
+            _segment = openSegment(_segmentNum);
+            if (version(_segment) != GameRecordWriter.VERSION) {
+                _segment.close();
+                _segmentNum += 1;
+                _segment = openSegment(_segmentNum);
+            }
+            _bytes = new ByteArrayOutputStream();
+            _encoder = new GameRecordWriter(_bytes, false);
+        } else {
+            _segment = null;
+            _bytes = null;
+            _encoder = null;
+        }
+        _pending = ByteBuffer.allocate(INITIAL_MOVES * POSITION_ENTRY);
+        _mappedSegments = new ArrayList<MappedByteBuffer>();
+        _hashIndex = new PositionHashIndex(dir, _positions, chunk, writable);
+        _hashIndex.update();
+    }
+
+    /** Return the archive in directory DIR, which must exist, opened for
+     *  reading only: it cannot be appended to, and opening it changes no
+     *  files (so that, for instance, hash index runs left by an
+     *  interrupted update are ignored rather than removed). */
+    static GameArchive readOnly(File dir) throws IOException {
+        return new GameArchive(dir, DEFAULT_SEGMENT_LIMIT,
+                               PositionHashIndex.DEFAULT_CHUNK, false);
+    }
+
+    /** Return the number of games in me. */
+    int numGames() {
+        return _numGames;
+    }
+
+    /** Add a game played with random seed SEED, starting from position
+     *  START and consisting of the first NUMMOVES moves (square numbers)
+     *  in MOVES, each of which must be legal.  Returns the number of the
+     *  new game. */
+    int append(Board start, long seed, int[] moves, int numMoves)
+        throws IOException {
+        if (!_writable) {
+            throw new IOException("archive in " + _dir + " is read-only");
+        }
+        if (_segment.size() >= _segmentLimit) {
+            _segment.close();
+            _segmentNum += 1;
+            _segment = openSegment(_segmentNum);
+        }
+        int id = _numGames;
+        MutableBoard board = new MutableBoard(start);
+        _bytes.reset();
+        _pending.clear();
+        _encoder.beginGame(board, seed);
+        addPosition(board.positionHash(), id, 0);
+        for (int i = 0; i < numMoves; i += 1) {
+            if (!board.isLegal(board.whoseMove(), moves[i])) {
+                _encoder.endGame(board.positionHash());
+                _encoder.flush();
+                throw new IOException("illegal move in archived game");
+            }
+            board.addSpot(board.whoseMove(), moves[i]);
+            _encoder.move(moves[i]);
+            addPosition(board.positionHash(), id, i + 1);
+        }
+        _encoder.endGame(board.positionHash());
+        _encoder.flush();
+
+        long offset = _segment.size();
+        writeFully(_segment, ByteBuffer.wrap(_bytes.toByteArray()));
+        ByteBuffer entry = ByteBuffer.allocate(GAME_ENTRY);
+        entry.putInt(_segmentNum).putLong(offset).flip();
+        writeFully(_games, entry);
+        _pending.flip();
+        writeFully(_positions, _pending);
+        _numGames += 1;
+        _hashIndex.update();
+        return id;
+    }
+
+    /** Add all remaining games read from IN.  Returns the number of games
+     *  added. */
+    int appendAll(GameRecordReader in) throws IOException {
+        MutableBoard start = new MutableBoard(Defaults.BOARD_SIZE);
+        int[] moves = new int[INITIAL_MOVES];
+        int count;
+        count = 0;
+        while (in.nextGame()) {
+            in.setUp(start);
+            int numMoves;
+            numMoves = 0;
+            for (int n = in.nextMove(); n >= 0; n = in.nextMove()) {
+                if (numMoves == moves.length) {
+                    moves = Arrays.copyOf(moves, 2 * numMoves);
+                }
+                moves[numMoves] = n;
+                numMoves += 1;
+            }
+            append(start, in.seed(), moves, numMoves);
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Return a reader positioned just before game #ID, so that its
+     *  nextGame method will return that game, and subsequent calls the
+     *  following games in the same segment. */
+    GameRecordReader read(int id) throws IOException {
+        if (id < 0 || id >= _numGames) {
+            throw new IOException("no archived game #" + id);
+        }
+        ByteBuffer entry = gameEntry(id);
+        int segment = entry.getInt();
+        long offset = entry.getLong();
+        ByteBuffer games = mappedSegment(segment).duplicate();
+        games.position((int) offset);
+        int version = games.get(GameRecordWriter.MAGIC.length);
+        return new GameRecordReader(games, version);
+    }
+
+    /** Return the number of the segment holding game #ID. */
+    int segmentOf(int id) throws IOException {
+        if (id < 0 || id >= _numGames) {
+            throw new IOException("no archived game #" + id);
+        }
+        return gameEntry(id).getInt();
+    }
+
+    /** Return a read-only buffer of the entries of positions.idx,
+     *  positioned at the first entry for game #ID (or at the end, if
+     *  there is none).  Entries are in order of game and then ply, so
+     *  that the entries for game #ID and the games after it follow. */
+    ByteBuffer positionsFrom(int id) throws IOException {
+        _positionIndex = remap(_positions, _positionIndex);
+        ByteBuffer index = _positionIndex.duplicate();
+        int lo, hi;
+        lo = 0;
+        hi = index.capacity() / POSITION_ENTRY;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getInt(mid * POSITION_ENTRY + Long.BYTES) < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        index.position(lo * POSITION_ENTRY);
+        return index;
+    }
+
+    /** Return the numbers, in increasing order and without duplicates, of
+     *  all games in which a position with positionHash HASH was
+     *  reached. */
+    ArrayList<Integer> gamesReaching(long hash) throws IOException {
+        return _hashIndex.gamesReaching(hash);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_writable) {
+            _encoder.close();
+            _segment.close();
+        }
+        _games.close();
+        _positions.close();
+        _mappedSegments.clear();
+    }
+
+    /** Add an entry for a position with hash HASH reached after PLY
+     *  moves of game #ID to those waiting to be written to the position
+     *  index. */
+    private void addPosition(long hash, int id, int ply) {
+        if (_pending.remaining() < POSITION_ENTRY) {
+            ByteBuffer bigger = ByteBuffer.allocate(2 * _pending.capacity());
+            _pending.flip();
+            bigger.put(_pending);
+            _pending = bigger;
+        }
+        _pending.putLong(hash).putInt(id).putInt(ply);
+    }
+
+    /** Return a buffer positioned at the games.idx entry for game
+     *  #ID. */
+    private ByteBuffer gameEntry(int id) throws IOException {
+        _gameIndex = remap(_games, _gameIndex);
+        ByteBuffer entry = _gameIndex.duplicate();
+        entry.position(id * GAME_ENTRY);
+        return entry;
+    }
+
+    /** Return MAPPING if it is a read-only mapping of all of CHAN, and
+     *  otherwise a new such mapping (CHAN having grown). */
+    private static MappedByteBuffer remap(FileChannel chan,
+                                          MappedByteBuffer mapping)
+        throws IOException {
+        if (mapping != null && mapping.capacity() == chan.size()) {
+            return mapping;
+        }
+        return chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+    }
+
+    /** Return a read-only mapping of all of segment #K as it currently
+     *  stands.  Only the segment I am appending to (if I am writable)
+     *  can have grown since it was mapped. */
+    private MappedByteBuffer mappedSegment(int k) throws IOException {
+        while (_mappedSegments.size() <= k) {
+            _mappedSegments.add(null);
+        }
+        MappedByteBuffer buf = _mappedSegments.get(k);
+        if (_segment != null && k == _segmentNum && buf != null
+            && buf.capacity() != _segment.size()) {
+            buf = null;
+        }
+        if (buf == null) {
+            FileChannel chan =
+                FileChannel.open(segmentFile(k).toPath(),
+                                 StandardOpenOption.READ);
+            try {
+                buf = chan.map(FileChannel.MapMode.READ_ONLY,
+                               0, chan.size());
+            } finally {
+                chan.close();
+            }
+            buf.position(HEADER_SIZE);
+            _mappedSegments.set(k, buf);
+        }
+        return buf;
+    }
+
+    /** Return the file holding segment #K. */
+    private File segmentFile(int k) {
+        return new File(_dir, String.format("segment-%05d.j61", k));
+    }
+
+    /** Open segment #K for appending, writing its header if it is
+     *  new. */
+    private FileChannel openSegment(int k) throws IOException {
+        FileChannel chan = open(segmentFile(k), true);
+        if (chan.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(GameRecordWriter.MAGIC)
+                .put((byte) GameRecordWriter.VERSION).flip();
+            writeFully(chan, header);
+        }
+        return chan;
+    }
+
+    /** Open FILE for reading and appending, creating it if needed, or if
+     *  not WRITABLE, open the existing FILE for reading only. */
+    private static FileChannel open(File file, boolean writable)
+        throws IOException {
+        if (!writable) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        FileChannel chan =
+            FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                             StandardOpenOption.READ,
+                             StandardOpenOption.WRITE);
+        chan.position(chan.size());
+        return chan;
+    }
+
+    /** Return the format version in the header of SEGMENT. */
+    private static int version(FileChannel segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()
+               && segment.read(header, header.position()) >= 0) {
+            continue;
+        }
+        if (header.hasRemaining()) {
+            throw new IOException("truncated archive segment");
+        }
+        return header.get(HEADER_SIZE - 1);
+    }
+
+    /** Write all of BUF to CHAN at its current position. */
+    private static void writeFully(FileChannel chan, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            chan.write(buf);
+        }
+    }
+
+    /** Upper bound on segment size limits. */
+    private static final long MAX_SEGMENT_LIMIT = 1L << 30;
+    /** Size of a games.idx entry in bytes. */
+    private static final int GAME_ENTRY = 12;
+    /** Size of a positions.idx entry in bytes. */
+    private static final int POSITION_ENTRY = 16;
+    /** Size of the header at the start of each segment. */
+    private static final int HEADER_SIZE = GameRecordWriter.MAGIC.length + 1;
+    /** Initial capacity of move buffers. */
+    private static final int INITIAL_MOVES = 256;
+
+    /** Directory containing the archive. */
+    private final File _dir;
+    /** Segment size at which a new segment is begun. */
+    private final long _segmentLimit;
+    /** True iff I may be appended to. */
+    private final boolean _writable;
+    /** The game index. */
+    private final FileChannel _games;
+    /** The position index. */
+    private final FileChannel _positions;
+    /** Current mappings of _games and _positions, or null. */
+    private MappedByteBuffer _gameIndex, _positionIndex;
+    /** Number of games in the archive. */
+    private int _numGames;
+    /** Number of the segment being appended to. */
+    private int _segmentNum;
+    /** The segment being appended to, or null if I am read-only. */
+    private FileChannel _segment;
+    /** Holds the encoding of a game being appended, or null if I am
+     *  read-only. */
+    private final ByteArrayOutputStream _bytes;
+    /** Encodes games into _bytes, or null if I am read-only. */
+    private final GameRecordWriter _encoder;
+    /** The position index ordered by hash. */
+    private final PositionHashIndex _hashIndex;
+    /** Position index entries for the game being appended. */
+    private ByteBuffer _pending;
+    /** Cached read-only mappings of segments, indexed by segment
+     *  number (null where not yet mapped). */
+    private final ArrayList<MappedByteBuffer> _mappedSegments;
+}
@@ -0,0 +1,126 @@
+package jump61;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of GameArchive.
+ *  @author Thomas Wu
+ */
+public class GameArchiveTest {
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 40);
+        int[] moves = { 0, 3, 0, 8 };
+        MutableBoard start = new MutableBoard(3);
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(k, archive.append(start, k, moves, 1 + k % 4));
+        }
+        assertEquals(5, archive.numGames());
+        assertTrue("no segment rollover",
+                   new File(dir, "segment-00001.j61").exists());
+
+        GameRecordReader in = archive.read(3);
+        assertTrue(in.nextGame());
+        assertEquals(3L, in.seed());
+        MutableBoard board = new MutableBoard(2);
+        assertEquals(4, in.replay(board));
+
+        ArrayList<Integer> games = archive.gamesReaching(board.positionHash());
+        assertEquals(1, games.size());
+        assertEquals(3, (int) games.get(0));
+        assertEquals(5, archive.gamesReaching(start.positionHash()).size());
+        archive.close();
+
+        archive = new GameArchive(dir, 40);
+        assertEquals(5, archive.numGames());
+        assertEquals(5, archive.append(start, 9, moves, 2));
+        in = archive.read(5);
+        assertTrue(in.nextGame());
+        assertEquals(9L, in.seed());
+        assertEquals(2, in.replay(board));
+        assertEquals(6, archive.gamesReaching(start.positionHash()).size());
+        archive.close();
+    }
+
+    @Test
+    public void testReadOnlyLastSegment() throws IOException {
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 1 << 12);
+        int[] moves = { 0, 3, 0, 8 };
+        MutableBoard start = new MutableBoard(3);
+        for (int k = 0; k < 3; k += 1) {
+            archive.append(start, k, moves, 1 + k);
+        }
+        archive.close();
+
+        archive = GameArchive.readOnly(dir);
+        assertEquals(archive.segmentOf(2), archive.segmentOf(1));
+        MutableBoard board = new MutableBoard(2);
+        for (int k = 1; k < 3; k += 1) {
+            GameRecordReader in = archive.read(k);
+            assertTrue(in.nextGame());
+            assertEquals((long) k, in.seed());
+            assertEquals(1 + k, in.replay(board));
+        }
+        archive.close();
+    }
+
+    @Test
+    public void testHashIndex() throws IOException {
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 1 << 12, 7);
+        SplittableRandom random = new SplittableRandom(61);
+        HashMap<Long, TreeSet<Integer>> reached = new HashMap<>();
+        MutableBoard start = new MutableBoard(3);
+        int[] moves = new int[40];
+        int positions;
+        positions = 0;
+        for (int g = 0; g < 60; g += 1) {
+            MutableBoard board = new MutableBoard(start);
+            int limit = random.nextInt(moves.length);
+            int numMoves;
+            numMoves = 0;
+            reached.computeIfAbsent(board.positionHash(),
+                                    h -> new TreeSet<>()).add(g);
+            for (int i = 0; i < limit && board.getWinner() == null;
+                 i += 1) {
+                Side p = board.whoseMove();
+                moves[i] = Simulator.randomMove(p, board, random);
+                board.addSpot(p, moves[i]);
+                reached.computeIfAbsent(board.positionHash(),
+                                        h -> new TreeSet<>()).add(g);
+                numMoves = i + 1;
+            }
+            positions += numMoves + 1;
+            archive.append(start, g, moves, numMoves);
+            if (g == 30) {
+                archive.close();
+                new File(dir, "hashes.tmp").createNewFile();
+                archive = new GameArchive(dir, 1 << 12, 7);
+                assertFalse(new File(dir, "hashes.tmp").exists());
+            }
+        }
+        int runs = dir.list((d, name) -> name.startsWith("hashes-")).length;
+        assertTrue("no runs", runs > 1);
+        assertTrue("too many runs: " + runs,
+                   runs <= 1 + 31 - Integer.numberOfLeadingZeros(
+                       positions / 7));
+        for (long hash : reached.keySet()) {
+            assertEquals(new ArrayList<>(reached.get(hash)),
+                         archive.gamesReaching(hash));
+        }
+        assertTrue(archive.gamesReaching(12345).isEmpty());
+        archive.close();
+    }
+
+}
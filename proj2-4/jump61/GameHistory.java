@@ -0,0 +1,199 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static jump61.GameException.error;
+
+/** The history of the position on a game's board since the board was
+ *  last cleared: a sequence of entries, each either a move or an edit of
+ *  one square (as by the 'set' command), that may be undone, redone, and
+ *  jumped through.  Ply K of the history is the position after its
+ *  first K entries.  Making a move or edit at any ply other than the
+ *  last discards the entries after it.
+ *
+ *  Stepping through the history takes time proportional to the squares
+ *  changed by the entries stepped over: undoing uses the board's own
+ *  undo journal, and redoing replays the entry.  The board keeps only
+ *  CHECKPOINT_INTERVAL to 2 * CHECKPOINT_INTERVAL moves of undo journal,
+ *  so I also keep a snapshot of the board at every ply that is a
+ *  multiple of CHECKPOINT_INTERVAL.  Going to a distant ply restores the
+ *  nearest checkpoint at or before it, which takes time proportional to
+ *  the size of the board plus the squares in rows that differ, and
+ *  replays fewer than CHECKPOINT_INTERVAL entries from there.  Snapshots
+ *  share unchanged rows, so checkpoints cost space in proportion to the
+ *  rows changed between them.
+ *  @author Thomas Wu
+ */
+class GameHistory {
+
+    /** Number of plies between checkpoints. */
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    /** A history of BOARD, which must publish snapshots, starting at its
+     *  current position.  All subsequent changes to BOARD must be made
+     *  through me, or followed by reset. */
+    GameHistory(MutableBoard board) {
+        _board = board;
+        _board.setUndoLimit(CHECKPOINT_INTERVAL);
+        reset();
+    }
+
+    /** Start a new, empty history at the current position of my
+     *  board. */
+    void reset() {
+        _length = _ply = 0;
+        Arrays.fill(_edits, null);
+        Arrays.fill(_previous, null);
+        _checkpoints.clear();
+        _checkpoints.add(_board.snapshot());
+    }
+
+    /** Return the current ply. */
+    int ply() {
+        return _ply;
+    }
+
+    /** Return the number of entries in the history, which is the last
+     *  ply. */
+    int length() {
+        return _length;
+    }
+
+    /** Make a move to square #N, which must be legal, for the player
+     *  whose move it is. */
+    void move(int n) {
+        _board.addSpot(_board.whoseMove(), n);
+        append(n, null, null);
+    }
+
+    /** Set the contents of square #N to SPOTS spots of color SIDE (white
+     *  if SPOTS is 0), as for Board.set. */
+    void edit(int n, int spots, Side side) {
+        Square old = _board.get(n);
+        _board.set(n, spots, side);
+        append(n, _board.get(n), old);
+    }
+
+    /** Go back one ply.  Throws a GameException if there is no earlier
+     *  ply. */
+    void undo() {
+        if (_ply == 0) {
+            throw error("nothing to undo");
+        }
+        step(-1);
+    }
+
+    /** Go forward one ply, to a ply left by undo or jump.  Throws a
+     *  GameException if there is no later ply. */
+    void redo() {
+        if (_ply == _length) {
+            throw error("nothing to redo");
+        }
+        step(1);
+    }
+
+    /** Go to ply K, by whichever of stepping from the current ply or
+     *  restoring a checkpoint is quicker.  The board's observers are
+     *  notified once.  Throws a GameException if there is no ply K. */
+    void jump(int k) {
+        if (k < 0 || k > _length) {
+            throw error("no ply %d: the history has plies 0-%d", k, _length);
+        }
+        int fromCheckpoint = k % CHECKPOINT_INTERVAL;
+        _board.beginBatch();
+        try {
+            if (k >= _ply && k - _ply <= fromCheckpoint
+                || k < _ply && _ply - k <= _board.undoableMoves()) {
+                while (_ply != k) {
+                    step(k > _ply ? 1 : -1);
+                }
+            } else {
+                restore(k / CHECKPOINT_INTERVAL);
+                while (_ply < k) {
+                    step(1);
+                }
+            }
+        } finally {
+            _board.endBatch();
+        }
+    }
+
+    /** Go forward one ply if DIRECTION is 1, and back one if it is -1. */
+    private void step(int direction) {
+        if (direction > 0) {
+            int n = _squares[_ply];
+            if (_edits[_ply] == null) {
+                _board.addSpot(_board.whoseMove(), n);
+            } else {
+                _board.set(n, _edits[_ply].getSpots(),
+                           _edits[_ply].getSide());
+            }
+            _ply += 1;
+        } else if (_edits[_ply - 1] != null) {
+            Square old = _previous[_ply - 1];
+            _board.set(_squares[_ply - 1], old.getSpots(), old.getSide());
+            _ply -= 1;
+        } else if (_board.undoableMoves() > 0) {
+            _board.undo();
+            _ply -= 1;
+        } else {
+            jump(_ply - 1);
+        }
+    }
+
+    /** Make my board's contents those of checkpoint #I, at ply I *
+     *  CHECKPOINT_INTERVAL. */
+    private void restore(int i) {
+        _board.copyChangedRows(_checkpoints.get(i), _board.snapshot());
+        _ply = i * CHECKPOINT_INTERVAL;
+    }
+
+    /** Add an entry to the history at the current ply, discarding any
+     *  later entries and checkpoints: a change to square #N that is a
+     *  move if EDIT is null, and otherwise an edit giving it contents
+     *  EDIT in place of PREVIOUS.  Take a checkpoint if the new ply calls
+     *  for one. */
+    private void append(int n, Square edit, Square previous) {
+        if (_ply == _squares.length) {
+            _squares = Arrays.copyOf(_squares, 2 * _ply);
+            _edits = Arrays.copyOf(_edits, 2 * _ply);
+            _previous = Arrays.copyOf(_previous, 2 * _ply);
+        }
+        int keep = _ply / CHECKPOINT_INTERVAL + 1;
+        _squares[_ply] = n;
+        _edits[_ply] = edit;
+        _previous[_ply] = previous;
+        _ply += 1;
+        Arrays.fill(_edits, _ply, Math.max(_ply, _length), null);
+        Arrays.fill(_previous, _ply, Math.max(_ply, _length), null);
+        _length = _ply;
+        while (_checkpoints.size() > keep) {
+            _checkpoints.remove(_checkpoints.size() - 1);
+        }
+        if (_ply % CHECKPOINT_INTERVAL == 0) {
+            _checkpoints.add(_board.snapshot());
+        }
+    }
+
+    /** Initial capacity of the history. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The board whose history I am. */
+    private final MutableBoard _board;
+    /** _squares[k] is the square changed by entry #k. */
+    private int[] _squares = new int[INITIAL_CAPACITY];
+    /** _edits[k] is null if entry #k is a move, and otherwise the
+     *  contents it gives its square. */
+    private Square[] _edits = new Square[INITIAL_CAPACITY];
+    /** _previous[k] is the contents of the square of entry #k before the
+     *  entry, if it is an edit, and otherwise null. */
+    private Square[] _previous = new Square[INITIAL_CAPACITY];
+    /** Number of entries. */
+    private int _length;
+    /** The current ply. */
+    private int _ply;
+    /** _checkpoints.get(i) is a snapshot of the position at ply
+     *  i * CHECKPOINT_INTERVAL. */
+    private final ArrayList<BoardSnapshot> _checkpoints = new ArrayList<>();
+}
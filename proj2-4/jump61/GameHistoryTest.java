@@ -0,0 +1,97 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of GameHistory.
+ *  @author Thomas Wu
+ */
+public class GameHistoryTest {
+
+    /** Play a random game on BOARD through HISTORY, with an occasional
+     *  edit, returning copies of the position at each ply. */
+    private ArrayList<Board> play(MutableBoard board, GameHistory history,
+                                  SplittableRandom random) {
+        ArrayList<Board> positions = new ArrayList<>();
+        positions.add(new MutableBoard(board));
+        for (int k = 0; board.getWinner() == null && k < 400; k += 1) {
+            Side p = board.whoseMove();
+            int n = Simulator.randomMove(p, board, random);
+            if (k % 37 == 36) {
+                history.edit(n, 1, p.opposite());
+            } else {
+                history.move(n);
+            }
+            positions.add(new MutableBoard(board));
+        }
+        return positions;
+    }
+
+    @Test
+    public void testNavigation() {
+        SplittableRandom random = new SplittableRandom(61);
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 8));
+        B.publishSnapshots();
+        GameHistory history = new GameHistory(B);
+        ArrayList<Board> positions = play(B, history, random);
+        int last = positions.size() - 1;
+        assertTrue(last > 3 * GameHistory.CHECKPOINT_INTERVAL);
+        assertEquals(last, history.length());
+        for (int i = 0; i < 200; i += 1) {
+            int k = random.nextInt(last + 1);
+            switch (random.nextInt(3)) {
+            case 0:
+                history.jump(k);
+                break;
+            case 1:
+                if (history.ply() > 0) {
+                    history.undo();
+                }
+                break;
+            default:
+                if (history.ply() < last) {
+                    history.redo();
+                }
+                break;
+            }
+            assertEquals(positions.get(history.ply()), B);
+        }
+        history.jump(last);
+        while (history.ply() > 0) {
+            history.undo();
+            assertEquals(positions.get(history.ply()), B);
+        }
+        assertEquals(last, history.length());
+    }
+
+    @Test
+    public void testTruncate() {
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 4));
+        B.publishSnapshots();
+        GameHistory history = new GameHistory(B);
+        history.move(0);
+        history.move(15);
+        history.move(0);
+        history.undo();
+        history.undo();
+        history.move(5);
+        assertEquals(2, history.length());
+        assertEquals(RED, B.get(0).getSide());
+        assertEquals(BLUE, B.get(5).getSide());
+        assertEquals(WHITE, B.get(15).getSide());
+        try {
+            history.redo();
+            fail("redo past end");
+        } catch (GameException excp) {
+            history.jump(0);
+        }
+        assertEquals(new MutableBoard(B.topology()), B);
+    }
+
+}
@@ -0,0 +1,249 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Reads game records in the format written by GameRecordWriter (in any
+ *  version from OLDEST_VERSION on), one game at a time, and replays them
+ *  onto boards.
+ *  @author Thomas Wu
+ */
+class GameRecordReader implements Closeable {
+
+    /** A reader for the record on IN.  Throws IOException if IN does not
+     *  start with a valid record header. */
+    GameRecordReader(InputStream in) throws IOException {
+        _in = new BufferedInputStream(in, BUFFER_SIZE);
+        byte[] magic = new byte[GameRecordWriter.MAGIC.length];
+        for (int i = 0; i < magic.length; i += 1) {
+            magic[i] = (byte) readByte();
+        }
+        if (!Arrays.equals(magic, GameRecordWriter.MAGIC)) {
+            throw new IOException("not a Jump61 game record");
+        }
+        _version = readByte();
+        checkVersion(_version);
+        _buffer = null;
+        _movesLeft = false;
+    }
+
+    /** A reader for the games in BUFFER, from its current position to its
+     *  limit.  BUFFER contains games only, without the record header, in
+     *  format version VERSION. */
+    GameRecordReader(ByteBuffer buffer, int version) throws IOException {
+        checkVersion(version);
+        _in = null;
+        _buffer = buffer;
+        _version = version;
+        _movesLeft = false;
+    }
+
+    /** Throw an IOException unless I can read games in format version
+     *  VERSION. */
+    static void checkVersion(int version) throws IOException {
+        if (version < GameRecordWriter.OLDEST_VERSION
+            || version > GameRecordWriter.VERSION) {
+            throw new IOException("unsupported game record version "
+                                  + version);
+        }
+    }
+
+    /** Advance to the next game, skipping any unread moves of the current
+     *  one.  Returns false if there are no more games. */
+    boolean nextGame() throws IOException {
+        while (_movesLeft) {
+            nextMove();
+        }
+        int first = read();
+        if (first == -1) {
+            return false;
+        }
+        _size = readVarint(first);
+        if (_size < 2) {
+            throw new IOException("bad board size in game record");
+        }
+        _seed = readLong();
+        int start = readByte();
+        Topology.Kind[] kinds = Topology.Kind.values();
+        if (start / 2 >= kinds.length) {
+            throw new IOException("bad board shape in game record");
+        }
+        _topology = Topology.of(kinds[start / 2], _size);
+        if (start % 2 == 0) {
+            _start = null;
+        } else {
+            _start = new int[_size * _size];
+            for (int n = 0; n < _start.length; n += 1) {
+                _start[n] = readVarint(readByte());
+            }
+        }
+        _movesLeft = true;
+        return true;
+    }
+
+    /** Return the board size of the current game. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the board topology of the current game. */
+    Topology topology() {
+        return _topology;
+    }
+
+    /** Return the random seed recorded for the current game. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return true iff the current game records the hash of its final
+     *  position, which finalHash returns once its moves are read. */
+    boolean hasFinalHash() {
+        return _version >= GameRecordWriter.FINAL_HASH_VERSION;
+    }
+
+    /** Return the positionHash recorded for the final position of the
+     *  current game, once nextMove has returned -1. */
+    long finalHash() {
+        return _finalHash;
+    }
+
+    /** Return the number of the next square moved to in the current game,
+     *  or -1 if there are no more moves. */
+    int nextMove() throws IOException {
+        if (!_movesLeft) {
+            return -1;
+        }
+        int v = readVarint(readByte());
+        if (v == 0) {
+            _movesLeft = false;
+            if (hasFinalHash()) {
+                _finalHash = readLong();
+            }
+        } else if (v > _size * _size) {
+            throw new IOException("bad square number in game record");
+        }
+        return v - 1;
+    }
+
+    /** Set BOARD to the starting position of the current game, notifying
+     *  its Observers once. */
+    void setUp(MutableBoard board) {
+        board.beginBatch();
+        board.clear(_topology);
+        if (_start != null) {
+            for (int n = 0; n < _start.length; n += 1) {
+                int spots = _start[n] / 4;
+                Side side = GameRecordWriter.SIDE_CODES[_start[n] % 4];
+                if (!Square.square(side, spots).equals(Square.INITIAL)) {
+                    board.set(n, spots, side);
+                }
+            }
+        }
+        board.endBatch();
+    }
+
+    /** Set BOARD to the starting position of the current game, and then
+     *  make all its remaining moves.  Returns the number of moves made.
+     *  Throws IOException if a move is illegal, or if the game records a
+     *  final position hash that BOARD does not then have. */
+    int replay(MutableBoard board) throws IOException {
+        setUp(board);
+        int count;
+        count = 0;
+        for (int n = nextMove(); n >= 0; n = nextMove()) {
+            Side player = board.whoseMove();
+            if (!board.isLegal(player, n)) {
+                throw new IOException("illegal move in game record");
+            }
+            board.addSpot(player, n);
+            count += 1;
+        }
+        if (hasFinalHash() && board.positionHash() != _finalHash) {
+            throw new IOException("final position does not match game"
+                                  + " record");
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_in != null) {
+            _in.close();
+        }
+    }
+
+    /** Return the varint whose first byte is FIRST, reading any
+     *  remaining bytes. */
+    private int readVarint(int first) throws IOException {
+        int v = first & 0x7f;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("malformed varint in game record");
+            }
+            b = readByte();
+            v |= (b & 0x7f) << shift;
+        }
+        return v;
+    }
+
+    /** Return the next 8 bytes of input as a long, most significant
+     *  first. */
+    private long readLong() throws IOException {
+        long v = 0;
+        for (int i = 0; i < 8; i += 1) {
+            v = (v << 8) | readByte();
+        }
+        return v;
+    }
+
+    /** Return the next byte of input, throwing EOFException at the
+     *  end. */
+    private int readByte() throws IOException {
+        int b = read();
+        if (b == -1) {
+            throw new EOFException("truncated game record");
+        }
+        return b;
+    }
+
+    /** Return the next byte of input, or -1 at the end. */
+    private int read() throws IOException {
+        if (_buffer == null) {
+            return _in.read();
+        } else if (_buffer.hasRemaining()) {
+            return _buffer.get() & 0xff;
+        } else {
+            return -1;
+        }
+    }
+
+    /** Size of input buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of the record, if it is a stream. */
+    private final InputStream _in;
+    /** Source of the games, if they are in a buffer. */
+    private final ByteBuffer _buffer;
+    /** Format version of the games. */
+    private final int _version;
+    /** Board size of the current game. */
+    private int _size;
+    /** Board topology of the current game. */
+    private Topology _topology;
+    /** Seed of the current game. */
+    private long _seed;
+    /** Recorded hash of the final position of the current game. */
+    private long _finalHash;
+    /** Cell codes of the starting position of the current game, or null
+     *  if it started from a cleared board. */
+    private int[] _start;
+    /** True iff the current game may have unread moves. */
+    private boolean _movesLeft;
+}
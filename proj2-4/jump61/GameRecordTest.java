@@ -0,0 +1,103 @@
+package jump61;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static jump61.Side.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of GameRecordWriter and GameRecordReader.
+ *  @author Thomas Wu
+ */
+public class GameRecordTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter out = new GameRecordWriter(bytes);
+        MutableBoard played = new MutableBoard(4);
+        out.beginGame(played, 42L);
+        int[] moves = { 0, 5, 0, 15, 1 };
+        for (int n : moves) {
+            played.addSpot(played.whoseMove(), n);
+            out.move(n);
+        }
+        MutableBoard start = new MutableBoard(12);
+        start.set(3, 2, 1, RED);
+        out.beginGame(start, -7L);
+        out.move(130);
+        out.close();
+
+        GameRecordReader in =
+            new GameRecordReader(new ByteArrayInputStream(bytes.toByteArray()));
+        MutableBoard replayed = new MutableBoard(2);
+        assertTrue(in.nextGame());
+        assertEquals(4, in.size());
+        assertEquals(42L, in.seed());
+        assertEquals(moves.length, in.replay(replayed));
+        assertEquals(played.toString(), replayed.toString());
+        assertTrue(in.hasFinalHash());
+        assertEquals(played.positionHash(), in.finalHash());
+
+        assertTrue(in.nextGame());
+        assertEquals(12, in.size());
+        assertEquals(-7L, in.seed());
+        in.setUp(replayed);
+        assertEquals(start.toString(), replayed.toString());
+        assertEquals(130, in.nextMove());
+        assertEquals(-1, in.nextMove());
+        assertFalse(in.nextGame());
+        in.close();
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter out = new GameRecordWriter(bytes);
+        out.beginGame(new MutableBoard(6), 0L);
+        for (int i = 0; i < 100; i += 1) {
+            out.move(i % 36);
+        }
+        out.close();
+        assertEquals(5 + 1 + 8 + 1 + 100 + 1 + 8, bytes.size());
+    }
+
+    @Test
+    public void testFinalHash() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter out = new GameRecordWriter(bytes);
+        out.beginGame(new MutableBoard(3), 0L);
+        out.move(0);
+        out.move(8);
+        out.close();
+        byte[] record = bytes.toByteArray();
+        record[record.length - 1] ^= 1;
+        GameRecordReader in =
+            new GameRecordReader(new ByteArrayInputStream(record));
+        assertTrue(in.nextGame());
+        try {
+            in.replay(new MutableBoard(3));
+            fail("accepted a wrong final position");
+        } catch (IOException excp) {
+            assertTrue(excp.getMessage().contains("final position"));
+        }
+
+        in = new GameRecordReader(new ByteArrayInputStream(new byte[] {
+            'J', '6', '1', 'R', 1, 3, 0, 0, 0, 0, 0, 0, 0, 5, 0, 1, 9, 0 }));
+        assertTrue(in.nextGame());
+        assertFalse(in.hasFinalHash());
+        assertEquals(5L, in.seed());
+        assertEquals(2, in.replay(new MutableBoard(3)));
+        assertFalse(in.nextGame());
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadHeader() throws IOException {
+        new GameRecordReader(new ByteArrayInputStream(new byte[] {
+            'J', '6', '1', 'X', 1 }));
+    }
+
+}
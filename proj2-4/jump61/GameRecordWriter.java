@@ -0,0 +1,218 @@
+package jump61;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static jump61.Side.*;
+
+/** Writes a compact binary record of a sequence of games.  The format is
+ *
+ *      record   ::= MAGIC VERSION game*
+ *      game     ::= size seed start moves final
+ *      size     ::= varint (board size N)
+ *      seed     ::= 8 bytes, big-endian (the game's seed; see RandomStreams)
+ *      start    ::= shape | shape+1 cell{N*N}  (the latter if the game
+ *                                     began from a position other than
+ *                                     the cleared board)
+ *      shape    ::= 2 * ordinal of the board's Topology.Kind (so 0 for
+ *                   an ordinary GRID)
+ *      cell     ::= varint (4 * spots + side code, codes being 0 for
+ *                           white, 1 for red, 2 for blue)
+ *      moves    ::= varint(square number + 1)* varint(0)
+ *      final    ::= 8 bytes, big-endian (the positionHash of the position
+ *                   after the last move)
+ *
+ *  where a varint is an unsigned integer written 7 bits at a time, least
+ *  significant first, with the high bit of each byte set on all but the
+ *  last.  Almost every move therefore takes a single byte.  Version 1 of
+ *  the format, which GameRecordReader still reads, lacked the final
+ *  hash.  Callers that know the final position supply its hash when
+ *  ending a game; otherwise the writer replays the game to find it.
+ *  @author Thomas Wu
+ */
+class GameRecordWriter implements Closeable {
+
+    /** Initial bytes of every record. */
+    static final byte[] MAGIC = { 'J', '6', '1', 'R' };
+
+    /** Current format version. */
+    static final int VERSION = 2;
+
+    /** Earliest format version that can still be read. */
+    static final int OLDEST_VERSION = 1;
+
+    /** First format version whose games end with the hash of their final
+     *  position. */
+    static final int FINAL_HASH_VERSION = 2;
+
+    /** Side codes used in cells, indexed by code. */
+    static final Side[] SIDE_CODES = { WHITE, RED, BLUE };
+
+    /** A writer that sends a record to OUT, starting with its
+     *  header. */
+    GameRecordWriter(OutputStream out) throws IOException {
+        this(out, true);
+    }
+
+    /** A writer that sends games to OUT, preceded by the record header
+     *  iff HEADER.  Without the header, the output is suitable for
+     *  appending to an existing record. */
+    GameRecordWriter(OutputStream out, boolean header) throws IOException {
+        _out = new BufferedOutputStream(out, BUFFER_SIZE);
+        if (header) {
+            _out.write(MAGIC);
+            _out.write(VERSION);
+        }
+    }
+
+    /** Return true iff a game has been begun and not yet ended. */
+    boolean inGame() {
+        return _inGame;
+    }
+
+    /** Begin recording a game starting from the current position of
+     *  BOARD, played with random SEED.  Ends any game in progress. */
+    void beginGame(Board board, long seed) throws IOException {
+        endGame();
+        int N = board.size();
+        writeVarint(N);
+        writeLong(seed);
+        boolean cleared = true;
+        for (int n = 0; n < N * N && cleared; n += 1) {
+            cleared = board.get(n).equals(Square.INITIAL);
+        }
+        int shape = 2 * board.topology().kind().ordinal();
+        _topology = board.topology();
+        _start = null;
+        if (cleared) {
+            _out.write(shape);
+        } else {
+            _out.write(shape + 1);
+            _start = new Square[N * N];
+            for (int n = 0; n < N * N; n += 1) {
+                _start[n] = board.get(n);
+                writeVarint(cellCode(_start[n]));
+            }
+        }
+        _numMoves = 0;
+        _inGame = true;
+    }
+
+    /** Record a move to square #N, which must be legal, in the current
+     *  game. */
+    void move(int n) throws IOException {
+        writeVarint(n + 1);
+        if (_numMoves == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _numMoves);
+        }
+        _moves[_numMoves] = n;
+        _numMoves += 1;
+    }
+
+    /** End the current game, if any, replaying it to find the hash of
+     *  its final position. */
+    void endGame() throws IOException {
+        if (_inGame) {
+            endGame(finalHash());
+        }
+    }
+
+    /** End the current game, if any, whose final position has
+     *  positionHash FINALHASH.  This saves the replay that endGame()
+     *  does, for callers that have the final position at hand. */
+    void endGame(long finalHash) throws IOException {
+        if (_inGame) {
+            _out.write(0);
+            writeLong(finalHash);
+            _inGame = false;
+        }
+    }
+
+    /** Write out any buffered data. */
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    /** End any current game and close the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        endGame();
+        _out.close();
+    }
+
+    /** Return the cell code for SQ. */
+    static int cellCode(Square sq) {
+        int code;
+        switch (sq.getSide()) {
+        case RED:
+            code = 1;
+            break;
+        case BLUE:
+            code = 2;
+            break;
+        default:
+            code = 0;
+            break;
+        }
+        return 4 * sq.getSpots() + code;
+    }
+
+    /** Return the positionHash of the final position of the current
+     *  game, found by replaying it. */
+    private long finalHash() {
+        if (_board == null) {
+            _board = new MutableBoard(_topology);
+            _board.setUndoLimit(0);
+        }
+        if (_start == null) {
+            _board.clear(_topology);
+        } else {
+            _board.setContents(_topology, _start);
+        }
+        for (int k = 0; k < _numMoves; k += 1) {
+            _board.addSpot(_board.whoseMove(), _moves[k]);
+        }
+        return _board.positionHash();
+    }
+
+    /** Write V as 8 bytes, most significant first. */
+    private void writeLong(long v) throws IOException {
+        for (int i = 56; i >= 0; i -= 8) {
+            _out.write((int) (v >>> i));
+        }
+    }
+
+    /** Write non-negative V as a varint. */
+    private void writeVarint(int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            _out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        _out.write(v);
+    }
+
+    /** Size of output buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Initial capacity of _moves. */
+    private static final int INITIAL_MOVES = 256;
+
+    /** Destination of the record. */
+    private final OutputStream _out;
+    /** True iff a game has been begun and not ended. */
+    private boolean _inGame;
+    /** Topology of the current game. */
+    private Topology _topology;
+    /** Starting contents of the current game, or null if it began from
+     *  a cleared board. */
+    private Square[] _start;
+    /** The moves of the current game are _moves[0 .. _numMoves-1]. */
+    private int[] _moves = new int[INITIAL_MOVES];
+    /** Number of moves in the current game. */
+    private int _numMoves;
+    /** Board on which games are replayed, or null if none has been. */
+    private MutableBoard _board;
+}
@@ -1,5 +1,8 @@
 package jump61;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static jump61.Side.*;
 
 import org.junit.Test;
@@ -23,8 +26,27 @@ public class GameTest {
         assertEquals("bad length", 5, C.size());
     }
 
+    @Test
+    public void testAnalyzeAtEndOfInput() {
+        for (String last : new String[] { "analyze", "analyze 2 1" }) {
+            StringWriter out = new StringWriter();
+            Game game = new Game(new StringReader("size 3\n" + last), out,
+                                 out, new StringWriter(), true);
+            game.play();
+            assertTrue(last, out.toString().contains("depth 1:"));
+        }
+    }
 
-
+    @Test
+    public void testBoard() {
+        StringWriter out = new StringWriter();
+        Game game = new Game(new StringReader("size 2\nboard\ndump\n"),
+                             out, out, new StringWriter(), true);
+        game.play();
+        Board B = new MutableBoard(2);
+        assertTrue(out.toString().contains(B.toDisplayString()));
+        assertTrue(out.toString().contains(B.toString()));
+    }
 
     /** Checks that B conforms to the description given by CONTENTS.
      *  CONTENTS should be a sequence of groups of 4 items:
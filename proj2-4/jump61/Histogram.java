@@ -0,0 +1,119 @@
+package jump61;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A histogram of non-negative long values (such as latencies in
+ *  nanoseconds) that any number of threads may record into without
+ *  locking.  Values are counted in buckets whose widths grow with the
+ *  magnitude of the values: each power of two is divided into
+ *  2**SUB_BUCKET_BITS equal buckets, so that every reported value is
+ *  within about 6% of a value actually recorded, and the whole range of
+ *  longs needs fewer than 1000 buckets.  Every count is a LongAdder, so
+ *  that threads recording at once add to separate cells rather than
+ *  contending for one word.  Recording a value costs a few additions
+ *  and allocates only when contention is first seen.
+ *  @author Thomas Wu
+ */
+class Histogram {
+
+    /** log2 of the number of buckets for each power of two. */
+    static final int SUB_BUCKET_BITS = 4;
+
+    /** An empty histogram. */
+    Histogram() {
+        _counts = new LongAdder[bucket(Long.MAX_VALUE) + 1];
+        for (int b = 0; b < _counts.length; b += 1) {
+            _counts[b] = new LongAdder();
+        }
+        _count = new LongAdder();
+        _sum = new LongAdder();
+        _max = new LongAccumulator(Math::max, 0);
+    }
+
+    /** Add VALUE (which must be non-negative) to me. */
+    void record(long value) {
+        _counts[bucket(value)].increment();
+        _count.increment();
+        _sum.add(value);
+        _max.accumulate(value);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        return _count.sum();
+    }
+
+    /** Return the largest value recorded (0 if none). */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return the mean of the values recorded (0 if none). */
+    double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) _sum.sum() / n;
+    }
+
+    /** Return (approximately) the smallest value that is at least as
+     *  large as FRACTION (0 <= FRACTION <= 1) of the values recorded, or
+     *  0 if there are none. */
+    long percentile(double fraction) {
+        long[] counts = new long[_counts.length];
+        long n = 0;
+        for (int b = 0; b < counts.length; b += 1) {
+            counts[b] = _counts[b].sum();
+            n += counts[b];
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        for (int b = 0; b < counts.length; b += 1) {
+            rank -= counts[b];
+            if (rank <= 0) {
+                return Math.min(lowest(b), max());
+            }
+        }
+        return 0;
+    }
+
+    /** Discard all recorded values. */
+    void reset() {
+        for (int b = 0; b < _counts.length; b += 1) {
+            _counts[b].reset();
+        }
+        _count.reset();
+        _sum.reset();
+        _max.reset();
+    }
+
+    /** Return the number of the bucket containing VALUE >= 0. */
+    static int bucket(long value) {
+        int top = 63 - Long.numberOfLeadingZeros(value);
+        if (top < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = top - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS)
+            + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** Return the smallest value in bucket B. */
+    static long lowest(int b) {
+        if (b < SUB_BUCKETS) {
+            return b;
+        }
+        int shift = (b >>> SUB_BUCKET_BITS) - 1;
+        return (long) (SUB_BUCKETS + (b & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    /** Number of buckets for each power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Count of values in each bucket. */
+    private final LongAdder[] _counts;
+    /** Number of values recorded. */
+    private final LongAdder _count;
+    /** Sum of values recorded. */
+    private final LongAdder _sum;
+    /** Largest value recorded. */
+    private final LongAccumulator _max;
+}
@@ -0,0 +1,41 @@
+package jump61;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of Histogram.
+ *  @author Thomas Wu
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 100000; v += 1) {
+            int b = Histogram.bucket(v);
+            assertTrue(Histogram.lowest(b) <= v);
+            assertTrue(v < Histogram.lowest(b + 1));
+        }
+        long v = Long.MAX_VALUE;
+        assertTrue(Histogram.lowest(Histogram.bucket(v)) <= v);
+        assertTrue(Histogram.lowest(Histogram.bucket(v)) > v / 17 * 16);
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram hist = new Histogram();
+        assertEquals(0, hist.percentile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            hist.record(v);
+        }
+        assertEquals(1000, hist.count());
+        assertEquals(1000, hist.max());
+        assertEquals(500.5, hist.mean(), 1e-9);
+        long median = hist.percentile(0.5);
+        assertTrue(median <= 500 && median > 500 * 15 / 16);
+        assertEquals(1, hist.percentile(0.0));
+        assertTrue(hist.percentile(1.0) > 1000 * 15 / 16);
+        hist.reset();
+        assertEquals(0, hist.count());
+    }
+
+}
@@ -0,0 +1,145 @@
+package jump61;
+
+import static jump61.Side.*;
+
+/** The learned evaluation (see EvalWeights) of a MutableBoard, kept up to
+ *  date as the board's squares change, so that evaluating a position
+ *  takes time proportional to the number of squares changed since the
+ *  last evaluation rather than to the size of the board.  A change to a
+ *  square alters only its cell feature and the pattern features of the
+ *  (at most four) 2x2 blocks containing it.  Changes are merely noted as
+ *  they happen, and applied when the value is next needed, so that a
+ *  square that changes many times during a cascade, or changes and is
+ *  restored by undo, costs no more than one that changes once.  An
+ *  IncrementalEval may follow one board at a time (see
+ *  MutableBoard.setSquareListener).
+ *  @author Thomas Wu
+ */
+class IncrementalEval implements SquareListener {
+
+    /** An evaluator using WEIGHTS. */
+    IncrementalEval(EvalWeights weights) {
+        _weights = weights;
+    }
+
+    /** Return my weights. */
+    EvalWeights weights() {
+        return _weights;
+    }
+
+    /** Return the value for P of the board I follow in units of
+     *  1/EvalWeights.SCALE. */
+    int value(Side p) {
+        if (_numChanged > 0) {
+            update();
+        }
+        return p == RED ? _value : -_value;
+    }
+
+    @Override
+    public void reset(MutableBoard board) {
+        int N = board.size();
+        _board = board;
+        if (_codes == null || _codes.length != N * N) {
+            _codes = new int[N * N];
+            _changed = new boolean[N * N];
+            _changedList = new int[N * N];
+            _marked = new boolean[N * N];
+            _blocks = new int[N * N];
+        }
+        for (int n = 0; n < N * N; n += 1) {
+            _codes[n] = EvalWeights.code(board.get(n), board.neighbors(n));
+            _changed[n] = false;
+        }
+        _numChanged = 0;
+        _value = _weights.value(board);
+    }
+
+    @Override
+    public void squareChanged(MutableBoard board, int n, Square old) {
+        if (!_changed[n]) {
+            _changed[n] = true;
+            _changedList[_numChanged] = n;
+            _numChanged += 1;
+        }
+    }
+
+    /** Bring _value and _codes up to date with the squares in
+     *  _changedList. */
+    private void update() {
+        int N = _board.size();
+        int numBlocks;
+        numBlocks = 0;
+        int change;
+        change = 0;
+        for (int i = 0; i < _numChanged; i += 1) {
+            int n = _changedList[i];
+            int capacity = _board.neighbors(n);
+            int code = EvalWeights.code(_board.get(n), capacity);
+            if (code == _codes[n]) {
+                continue;
+            }
+            change +=
+                _weights.value(EvalWeights.cellFeature(capacity, code))
+                - _weights.value(EvalWeights.cellFeature(capacity,
+                                                         _codes[n]));
+            int r = n / N, c = n % N;
+            for (int r0 = Math.max(0, r - 1); r0 <= r && r0 < N - 1;
+                 r0 += 1) {
+                for (int c0 = Math.max(0, c - 1); c0 <= c && c0 < N - 1;
+                     c0 += 1) {
+                    int corner = r0 * N + c0;
+                    if (!_marked[corner]) {
+                        _marked[corner] = true;
+                        _blocks[numBlocks] = corner;
+                        numBlocks += 1;
+                        change -= _weights.value(pattern(corner, N));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < _numChanged; i += 1) {
+            int n = _changedList[i];
+            _codes[n] = EvalWeights.code(_board.get(n), _board.neighbors(n));
+            _changed[n] = false;
+        }
+        _numChanged = 0;
+        for (int i = 0; i < numBlocks; i += 1) {
+            change += _weights.value(pattern(_blocks[i], N));
+            _marked[_blocks[i]] = false;
+        }
+        _value += change;
+    }
+
+    /** Return the pattern feature of the 2x2 block whose upper-left
+     *  square is #CORNER on an N x N board, according to _codes. */
+    private int pattern(int corner, int N) {
+        return EvalWeights.patternFeature(_codes[corner], _codes[corner + 1],
+                                          _codes[corner + N],
+                                          _codes[corner + N + 1]);
+    }
+
+    /** The weights I evaluate with. */
+    private final EvalWeights _weights;
+    /** The board I follow. */
+    private MutableBoard _board;
+    /** The value for RED of the board I follow, as of the last
+     *  update. */
+    private int _value;
+    /** The codes (see EvalWeights) of the squares of the board I follow,
+     *  as of the last update. */
+    private int[] _codes;
+    /** _changed[n] is true iff square #n has changed since the last
+     *  update.  Such squares are listed in _changedList[0 ..
+     *  _numChanged-1]. */
+    private boolean[] _changed;
+    /** Squares changed since the last update. */
+    private int[] _changedList;
+    /** Number of squares in _changedList. */
+    private int _numChanged;
+    /** During an update, _marked[k] is true iff the 2x2 block whose
+     *  upper-left square is #k is listed in _blocks. */
+    private boolean[] _marked;
+    /** Blocks affected by an update, by upper-left square. */
+    private int[] _blocks;
+}
@@ -1,12 +1,23 @@
 package jump61;
 
+import java.awt.HeadlessException;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PipedReader;
+import java.io.PipedWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Properties;
 
 import ucb.util.CommandArgs;
 
@@ -18,32 +29,299 @@ public class Main {
     /** Size of the buffer used for commands from the GUI. */
     static final int COMMAND_BUFFER_SIZE = 2048;
 
+    /** Milliseconds between reports of metrics to the --stats file. */
+    static final long STATS_PERIOD = 10000;
+
+    /** Bytes per megabyte, the unit of the sizes in Settings. */
+    static final long MEGABYTE = 1 << 20;
+
     /** Location of usage message resource. */
     static final String USAGE = "jump61/Usage.txt";
 
-    /** Play jump61.  ARGS0 may consist of the single string
-     *  '--display' to indicate that the game is played using a GUI. Prints
-     *  a usage message if the arguments are wrong. */
+    /** Play jump61.  ARGS0 may contain the options
+     *      --display        play using a GUI (see Display), which sends
+     *                       its commands to the game through a pipe;
+     *      --batch          run a script without prompts and with
+     *                       buffered output;
+     *      --record=FILE    record all games played in FILE in binary form
+     *                       (see GameRecordWriter);
+     *      --spectate=PORT  broadcast the board to spectators connecting to
+     *                       local port PORT (see SpectatorFeed);
+     *      --stats=FILE     write a report of performance metrics (see
+     *                       Metrics) to FILE periodically and on exit;
+     *      --trace=FILE     write a trace of AI searches (see SearchTrace)
+     *                       to FILE;
+     *      --cache=FILE     have AIs look up positions in, and add their
+     *                       search results to, the position cache FILE
+     *                       (see PositionCache), creating it if needed;
+     *      --config=FILE    read settings (see Settings) from the
+     *                       properties file FILE;
+     *      --KEY=VALUE      for each settings key KEY, override the
+     *                       setting from the --config file;
+     *      --seed=SEED      derive all random choices from SEED (see
+     *                       RandomStreams);
+     *      --simulate=GAMES instead of playing, simulate GAMES games
+     *                       (see Simulator) using the board size,
+     *                       topology, and number of threads from the
+     *                       settings, and report the results
+     *                       (reproducible from --seed only if any ai
+     *                       policy is given --nodes);
+     *      --policies=RED,BLUE  the policies of the two sides in a
+     *                       simulation (default random,random);
+     *      --train=FILE     instead of playing, fit the weights of the
+     *                       learned evaluator to the games recorded in
+     *                       FILE (see Trainer), and write them to the file
+     *                       given by --weights;
+     *      --verify=PATHS   instead of playing, replay the games in PATHS
+     *                       (record files and archive directories,
+     *                       separated as in a class path) through the
+     *                       engine, checking them (see ReplayVerifier)
+     *                       with the number of threads from the settings,
+     *                       and report the results, exiting with status 1
+     *                       if any game fails.
+     *  With --simulate, --record records the simulated games.
+     *  Prints a usage message if the arguments are wrong. */
     public static void main(String[] args0) {
         CommandArgs args =
-            new CommandArgs("--display{0,1}", args0);
+            new CommandArgs("--display{0,1} --batch{0,1} --record=(.+){0,1}"
+                            + " --spectate=(\\d+){0,1} --stats=(.+){0,1}"
+                            + " --trace=(.+){0,1} --config=(.+){0,1}"
+                            + " --size=(.+){0,1} --topology=(.+){0,1}"
+                            + " --depth=(.+){0,1} --quiesce=(.+){0,1}"
+                            + " --time=(.+){0,1} --nodes=(.+){0,1}"
+                            + " --threads=(.+){0,1}"
+                            + " --hash=(.+){0,1} --eval=(.+){0,1}"
+                            + " --cache=(.+){0,1} --cachesize=(.+){0,1}"
+                            + " --weights=(.+){0,1} --train=(.+){0,1}"
+                            + " --seed=(-?\\d+){0,1}"
+                            + " --simulate=(\\d+){0,1}"
+                            + " --policies=(\\w+,\\w+){0,1}"
+                            + " --verify=(.+){0,1}",
+                            args0);
 
         if (!args.ok()) {
             usage();
             return;
         }
 
+        if (args.contains("--simulate")) {
+            simulate(args);
+            return;
+        }
+        if (args.contains("--train")) {
+            train(args);
+            return;
+        }
+        if (args.contains("--verify")) {
+            verify(args);
+            return;
+        }
+
         Game game;
+        PipedWriter guiCommands = null;
+        Writer output = new OutputStreamWriter(System.out);
         if (args.contains("--display")) {
-            System.err.println("No graphical interface implemented");
-            System.exit(1);
+            guiCommands = new PipedWriter();
+            Reader input;
+            try {
+                input = new PipedReader(guiCommands, COMMAND_BUFFER_SIZE);
+            } catch (IOException excp) {
+                System.err.println("Error: could not connect to the display");
+                System.exit(1);
+                return;
+            }
+            game = new Game(input, Writer.nullWriter(), output,
+                            new OutputStreamWriter(System.err));
         } else {
-            Writer output = new OutputStreamWriter(System.out);
             game = new Game(new InputStreamReader(System.in),
                             output, output,
-                            new OutputStreamWriter(System.err));
-            System.exit(game.play());
+                            new OutputStreamWriter(System.err),
+                            args.contains("--batch"));
+        }
+        Settings settings = settings(args);
+        game.setSettings(settings);
+        if (args.contains("--seed")) {
+            game.setSeed(Long.parseLong(args.getFirst("--seed")));
+        }
+        if (args.contains("--record")) {
+            String name = args.getFirst("--record");
+            try {
+                game.setRecord(new GameRecordWriter(
+                                   new FileOutputStream(name)));
+            } catch (IOException excp) {
+                System.err.printf("Error: could not open %s%n", name);
+                System.exit(1);
+            }
+        }
+        if (args.contains("--spectate")) {
+            String port = args.getFirst("--spectate");
+            try {
+                game.setSpectators(Integer.parseInt(port));
+            } catch (IOException | NumberFormatException excp) {
+                System.err.printf("Error: could not listen on port %s%n",
+                                  port);
+                System.exit(1);
+            }
+        }
+        if (args.contains("--trace")) {
+            String name = args.getFirst("--trace");
+            try {
+                game.setSearchTrace(new SearchTrace(
+                                        new FileWriter(name)));
+            } catch (IOException excp) {
+                System.err.printf("Error: could not open %s%n", name);
+                System.exit(1);
+            }
+        }
+        if (args.contains("--cache")) {
+            String name = args.getFirst("--cache");
+            try {
+                game.setPositionCache(new PositionCache(
+                    name, settings.cacheSize() * MEGABYTE,
+                    settings.hashSize() * MEGABYTE));
+            } catch (IOException excp) {
+                System.err.printf("Error: could not open %s: %s%n", name,
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        File stats = null;
+        if (args.contains("--stats")) {
+            stats = new File(args.getFirst("--stats"));
+            Metrics.dumpPeriodically(stats, STATS_PERIOD);
+        }
+        if (guiCommands != null) {
+            try {
+                new Display("Jump61", game, guiCommands);
+            } catch (HeadlessException excp) {
+                System.err.println("Error: no display is available");
+                System.exit(1);
+            }
+        }
+        int status = game.play();
+        if (stats != null) {
+            try {
+                Metrics.dump(stats);
+            } catch (IOException excp) {
+                System.err.printf("Error: could not write %s%n", stats);
+            }
+        }
+        System.exit(status);
+    }
+
+    /** Return the settings specified by ARGS: those in the --config file,
+     *  if any, overridden by any --KEY=VALUE options for settings keys.
+     *  Exits with an error message if the settings are invalid. */
+    private static Settings settings(CommandArgs args) {
+        String name =
+            args.contains("--config") ? args.getFirst("--config") : null;
+        try {
+            Properties props =
+                name == null ? new Properties()
+                : Settings.readProperties(name);
+            for (String key : Settings.KEYS) {
+                if (args.contains("--" + key)) {
+                    props.setProperty(key, args.getFirst("--" + key));
+                }
+            }
+            return new Settings(props);
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", name);
+        } catch (GameException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+        return null;
+    }
+
+    /** Run the simulation specified by ARGS, as for --simulate, and print
+     *  its results on the standard output.  Exits with an error message
+     *  if the simulation is misspecified. */
+    private static void simulate(CommandArgs args) {
+        Settings settings = settings(args);
+        String[] policies =
+            args.contains("--policies")
+            ? args.getFirst("--policies").split(",")
+            : new String[] { "random", "random" };
+        long seed =
+            args.contains("--seed") ? Long.parseLong(args.getFirst("--seed"))
+            : System.nanoTime();
+        Simulator sim;
+        try {
+            sim = new Simulator(Topology.of(settings.topology(),
+                                            settings.boardSize()),
+                                policies[0], policies[1], settings);
+        } catch (GameException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        int games = Integer.parseInt(args.getFirst("--simulate"));
+        GameRecordWriter record = null;
+        String name =
+            args.contains("--record") ? args.getFirst("--record") : null;
+        try {
+            if (name != null) {
+                record = new GameRecordWriter(new FileOutputStream(name));
+                sim.setRecord(record);
+            }
+            System.out.println(sim.run(games, seed, settings.threads()));
+            if (record != null) {
+                record.close();
+            }
+        } catch (IOException | UncheckedIOException excp) {
+            System.err.printf("Error: could not write %s%n", name);
+            System.exit(1);
+        }
+    }
+
+    /** Fit the weights of the learned evaluator as specified by ARGS (see
+     *  --train), and write them out.  Exits with an error message on
+     *  failure. */
+    private static void train(CommandArgs args) {
+        if (!args.contains("--weights")) {
+            System.err.println("Error: --train requires --weights=FILE");
+            System.exit(1);
+        }
+        String records = args.getFirst("--train"),
+            name = args.getFirst("--weights");
+        Trainer trainer = new Trainer();
+        try {
+            long positions = trainer.train(records, Trainer.EPOCHS);
+            OutputStream out = new FileOutputStream(name);
+            try {
+                trainer.weights().write(out);
+            } finally {
+                out.close();
+            }
+            System.out.printf("Fitted %d positions; wrote %s.%n",
+                              positions, name);
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Verify the recorded games specified by ARGS (see --verify), print
+     *  the results, and exit with status 0 if all games are valid and 1
+     *  otherwise. */
+    private static void verify(CommandArgs args) {
+        ArrayList<File> sources = new ArrayList<>();
+        for (String name
+                 : args.getFirst("--verify").split(File.pathSeparator)) {
+            sources.add(new File(name));
+        }
+        ReplayVerifier.Report report;
+        try {
+            report = new ReplayVerifier(settings(args).threads())
+                .verify(sources);
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
         }
+        System.out.println(report);
+        System.exit(report.failures() == 0 ? 0 : 1);
     }
 
     /** Print the contents of the resource named NAME on OUT.
@@ -0,0 +1,154 @@
+package jump61;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The counters and histograms measuring the performance of the game and
+ *  its automated players.  All are shared by all threads, and may be
+ *  updated without locking: counters are LongAdders, which stripe their
+ *  counts over several cells when threads contend, and histograms are
+ *  Histograms.
+ *  @author Thomas Wu
+ */
+final class Metrics {
+
+    /** All counters and histograms, by name, in order of creation. */
+    private static final Map<String, Object> REGISTRY =
+        new LinkedHashMap<String, Object>();
+
+    /** Number of moves made by AIs. */
+    static final LongAdder AI_MOVES = counter("ai.moves");
+    /** Time taken by AI.makeMove (nanoseconds). */
+    static final Histogram AI_MOVE_TIME = histogram("ai.move.nanos");
+    /** Total number of positions visited by AI searches. */
+    static final LongAdder SEARCH_NODES = counter("ai.search.nodes");
+    /** Number of positions visited by AI quiescence searches (included
+     *  in SEARCH_NODES). */
+    static final LongAdder QUIESCENCE_NODES =
+        counter("ai.search.quiescenceNodes");
+    /** Number of positions visited by each AI move. */
+    static final Histogram SEARCH_NODES_PER_MOVE =
+        histogram("ai.search.nodesPerMove");
+    /** Number of AI searches answered from the position cache. */
+    static final LongAdder CACHE_HITS = counter("ai.cache.hits");
+    /** Number of AI searches whose position was not in the position
+     *  cache, or only from a shallower search. */
+    static final LongAdder CACHE_MISSES = counter("ai.cache.misses");
+    /** Number of squares overflowing in each move that causes any
+     *  overflow, on the MutableBoards that record them (see
+     *  MutableBoard.recordCascadeLengths): those of Games, but not the
+     *  scratch boards of searches, simulations, training, or
+     *  verification. */
+    static final Histogram CASCADE_LENGTH =
+        histogram("board.cascade.overflows");
+    /** Time taken to parse each command or move (nanoseconds), after its
+     *  line has been read. */
+    static final Histogram COMMAND_PARSE_TIME =
+        histogram("game.command.parse.nanos");
+
+    /** Fractions of values reported as percentiles of histograms. */
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+    /** Names of PERCENTILES in reports. */
+    private static final String[] PERCENTILE_NAMES = {
+        "50", "90", "99", "99.9",
+    };
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** Print the current values of all counters and histograms on OUT,
+     *  one per line. */
+    static void report(PrintWriter out) {
+        for (Map.Entry<String, Object> entry : REGISTRY.entrySet()) {
+            Object metric = entry.getValue();
+            if (metric instanceof LongAdder) {
+                out.printf("%s %d%n", entry.getKey(),
+                           ((LongAdder) metric).sum());
+            } else {
+                Histogram hist = (Histogram) metric;
+                out.printf("%s count=%d mean=%.1f", entry.getKey(),
+                           hist.count(), hist.mean());
+                for (int i = 0; i < PERCENTILES.length; i += 1) {
+                    out.printf(" p%s=%d", PERCENTILE_NAMES[i],
+                               hist.percentile(PERCENTILES[i]));
+                }
+                out.printf(" max=%d%n", hist.max());
+            }
+        }
+        out.flush();
+    }
+
+    /** Reset all counters and histograms to zero. */
+    static void reset() {
+        for (Object metric : REGISTRY.values()) {
+            if (metric instanceof LongAdder) {
+                ((LongAdder) metric).reset();
+            } else {
+                ((Histogram) metric).reset();
+            }
+        }
+    }
+
+    /** Start rewriting FILE with a report of all metrics every PERIOD
+     *  milliseconds, on a background thread, until the program ends.
+     *  Reports end with a blank line, and an incomplete report is never
+     *  left in FILE.  Returns the Timer doing the writing, whose
+     *  cancellation stops it. */
+    static Timer dumpPeriodically(final File file, long period) {
+        Timer timer = new Timer("jump61 metrics", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    dump(file);
+                } catch (IOException excp) {
+                    System.err.printf("Error: could not write %s: %s%n",
+                                      file, excp.getMessage());
+                    cancel();
+                }
+            }
+        }, period, period);
+        return timer;
+    }
+
+    /** Replace the contents of FILE with a report of all metrics. */
+    static void dump(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new FileWriter(temp));
+        report(out);
+        out.println();
+        out.close();
+        if (out.checkError()) {
+            throw new IOException("write failed");
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("could not rename " + temp);
+            }
+        }
+    }
+
+    /** Return a new counter registered under NAME. */
+    private static LongAdder counter(String name) {
+        LongAdder result = new LongAdder();
+        REGISTRY.put(name, result);
+        return result;
+    }
+
+    /** Return a new histogram registered under NAME. */
+    private static Histogram histogram(String name) {
+        Histogram result = new Histogram();
+        REGISTRY.put(name, result);
+        return result;
+    }
+
+}
@@ -2,8 +2,8 @@ package jump61;
 
 import static jump61.Side.*;
 import static jump61.Square.square;
-import java.util.Stack;
-import java.util.EmptyStackException;
+import java.util.Arrays;
+import java.util.Observer;
 /** A Jump61 board state that may be modified.
  *  @author Thomas Wu
  */
@@ -12,96 +12,209 @@ class MutableBoard extends Board {
     /** The length of a row (or column) of the board. */
     private int _size;
 
+    /** The board's topology, giving the neighbors of each square. */
+    private Topology _topology;
+
     /** The board that stores squares. An array of squares of length N^2. */
     private Square[] _mBoard;
 
-    /** The variables _NUMBLUE, _NUMRED, and _NUMWHITE keep track of the numbers
-      * of each color there are on the board. */
+    /** The variables _numRed, _numBlue, and _numSpots keep track of the
+      * numbers of red and blue squares and of spots on the board, so that
+      * none of them requires a scan of the board. */
+    private int _numRed, _numBlue, _numSpots;
+
+    /** The positionHash of the current contents, updated as squares
+      * change. */
+    private long _hash;
+
+    /** The undo journal.  Every change to a square made by a move appends
+      * the square's number to _changedSquares and its previous contents
+      * to _oldContents.  _journalSize is the number of entries in use. */
+    private int[] _changedSquares;
+
+    /** Previous contents of the squares in _changedSquares. */
+    private Square[] _oldContents;
+
+    /** Number of entries in use in the undo journal. */
+    private int _journalSize;
+
+    /** _moveStarts[k] is the journal size at the beginning of move #k in
+      * the undo history.  Undoing a move restores the journal entries
+      * after that point, so costs time proportional to the number of
+      * squares the move changed. */
+    private int[] _moveStarts;
+
+    /** Number of moves in the undo history. */
+    private int _numMoves;
+
+    /** Maximum number of moves that must remain undoable, or -1 if
+      * there is no limit. */
+    private int _undoLimit = -1;
+
+    /** Stack of squares that have yet to receive a spot during the
+      * current move.  Used in place of recursion when overflowing. */
+    private int[] _pending;
+
+    /** True iff some Observer has been added.  Boards that are never
+      * observed (such as the AI's private copies) do no notification
+      * work at all. */
+    private boolean _observed;
+
+    /** Number of unfinished beginBatch calls.  Notifications are
+      * deferred while this is positive. */
+    private int _batchDepth;
+
+    /** _noted[k] is true iff square #k has changed since the last
+      * notification.  Such squares are listed in
+      * _notedList[0 .. _numNoted-1]. */
+    private boolean[] _noted;
+
+    /** Squares changed since the last notification. */
+    private int[] _notedList;
+
+    /** Number of squares in _notedList. */
+    private int _numNoted;
+
+    /** True iff any square may have changed since the last notification
+      * (in which case _noted is not maintained). */
+    private boolean _totalChange;
+
+    /** True iff some change since the last notification was not made by
+      * a move whose waves went to _cascadeListener. */
+    private boolean _uncascaded;
+
+    /** The listener told about the waves of each move, or null. */
+    private CascadeListener _cascadeListener;
+
+    /** When _cascadeListener is non-null, _newContents[j] is the contents
+      * given to square _changedSquares[j] by journal entry j. */
+    private Square[] _newContents;
+
+    /** When _cascadeListener is non-null, the journal sizes at which the
+      * waves of the current move end are _waveEnds[0 .. _numWaves-1]. */
+    private int[] _waveEnds;
 
-    /** The stack of previous squares, when addSpot is called. Contains their
-      * color and spots. Works together with _past and _numOverFlow to keep
-      * track of the undo history. */
-    private Stack<Square> _undoHistory;
+    /** Number of wave ends recorded for the current move. */
+    private int _numWaves;
 
-    /** The stack that keeps track of the sqNum index of the sqaures that were
-      * changed. Works together w/ _numOverFlow and _undoHistory
-      * and _numTotalMoves. */
-    private Stack<Integer> _past;
+    /** The listener told of every change to a square, or null. */
+    private SquareListener _squareListener;
 
-    /** The Stack of integers. A stack of 0, 1, 3, 2 means the first move
-      * (bottom of stack) had 2 squares overflowed into (3 total square
-      * changes). The second move had 3 squares overflowed into, so 4 total
-      * square changes (the initial add spot, and the 3 adjacent
-      * square overflows). A 0 in the stack means that there was just
-      * the initial change in square with no adjacent squares changing
-      * due to overflow. */
-    private Stack<Integer> _numOverFlow;
+    /** True iff I record the overflows of my moves (see
+      * recordCascadeLengths). */
+    private boolean _recordingCascades;
 
-    /** The TOTAL number of changes in the current undo history. Adds 1
-      * for every addSpot call (so basically every time you overflow a
-      * square, you add 1 for every adjacent square, and so forth). */
-    private int _numTotalMoves;
+    /** True iff I publish a snapshot after every change (see
+      * publishSnapshots). */
+    private boolean _publishing;
 
+    /** The most recently published snapshot of my contents. */
+    private volatile BoardSnapshot _snapshot;
 
-    /** An N x N board in initial configuration. */
+    /** Version number of the most recently published snapshot. */
+    private long _version;
+
+    /** When _publishing, _dirtyRows[r] is true iff row r (numbered from 0)
+      * has changed since the last snapshot.  Such rows are listed in
+      * _dirtyRowList[0 .. _numDirtyRows-1]. */
+    private boolean[] _dirtyRows;
+
+    /** Rows changed since the last snapshot. */
+    private int[] _dirtyRowList;
+
+    /** Number of rows in _dirtyRowList. */
+    private int _numDirtyRows;
+
+    /** Initial size of the undo journal and pending-square stack. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** An N x N GRID board in initial configuration. */
     MutableBoard(int N) {
-        _mBoard = new Square[N * N];
-        _size = N;
-        for (int i = 0; i < _size * _size; i++) {
-            _mBoard[i] = Square.INITIAL;
-        }
-        _undoHistory = new Stack<Square>();
-        _past = new Stack<Integer>();
-        _numOverFlow = new Stack<Integer>();
+        this(Topology.of(Topology.Kind.GRID, N));
     }
 
+    /** A board with topology TOPOLOGY (which must have as many rows as
+     *  columns) in initial configuration. */
+    MutableBoard(Topology topology) {
+        reset(topology);
+    }
 
     /** A board whose initial contents are copied from BOARD0, but whose
      *  undo history is clear. */
     MutableBoard(Board board0) {
-        _size = board0.size();
-        _undoHistory = new Stack<Square>();
-        _numOverFlow = new Stack<Integer>();
-        _past = new Stack<Integer>();
-        _numTotalMoves = 0;
-        _mBoard = new Square[_size * _size];
-        for (int i = 0; i < board0.size() * board0.size(); i++) {
-            _mBoard[i] = board0.get(i);
+        Board source = board0.snapshot();
+        reset(source.topology());
+        for (int i = 0; i < _size * _size; i++) {
+            internalSet(i, source.get(i));
         }
-
     }
-    /** (Re)initialize me to a cleared board with N squares on a side. Clears
-     *  the undo history and sets the number of moves to 0. */
+
     @Override
     void clear(int N) {
-        _mBoard = new Square[N * N];
-        _size = N;
-        for (int i = 0; i < size() * size(); i++) {
-            _mBoard[i] = Square.INITIAL;
-        }
-        _numOverFlow = new Stack<Integer>();
-        _undoHistory = new Stack<Square>();
-        _past = new Stack<Integer>();
-        _numTotalMoves = 0;
+        clear(Topology.of(_topology.kind(), N));
+    }
 
+    @Override
+    void clear(Topology topology) {
+        reset(topology);
+        publish();
         announce();
-
     }
 
-    /** Copy the contents of BOARD into me. */
+    /** Copy the contents of BOARD into me, clearing my undo history. */
     @Override
     void copy(Board board) {
-        internalCopy((MutableBoard) board);
+        reset(board.topology());
+        for (int i = 0; i < _size * _size; i++) {
+            internalSet(i, board.get(i));
+        }
+        publish();
+        announce();
+    }
 
+    /** Give me topology TOPOLOGY (which must have as many rows as
+     *  columns) and contents CONTENTS, the contents of each square in
+     *  order of square number, clearing my undo history.  Observers are
+     *  notified once, and the work done is proportional to the number of
+     *  squares. */
+    void setContents(Topology topology, Square[] contents) {
+        reset(topology);
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] != Square.INITIAL) {
+                internalSet(i, contents[i]);
+            }
+        }
+        publish();
+        announce();
     }
 
-    /** Copy the contents of BOARD into me, without modifying my undo
-     *  history.  Assumes BOARD and I have the same size. */
-    private void internalCopy(MutableBoard board) {
-        for (int i = 0; i < board.size(); i++) {
-            _mBoard[i] = board.get(i);
+    /** Make my contents equal those of BOARD, clearing my undo history,
+     *  assuming that my contents currently equal those of PREVIOUS, an
+     *  earlier snapshot of the same board as BOARD (or null if there is
+     *  none).  Since successive snapshots share unchanged rows, this
+     *  takes time proportional to the size plus the number of squares in
+     *  rows that changed between PREVIOUS and BOARD. */
+    void copyChangedRows(BoardSnapshot board, BoardSnapshot previous) {
+        int N = board.size();
+        if (previous == null || previous.topology() != board.topology()
+            || _topology != board.topology()) {
+            copy(board);
+            return;
         }
-        _size = board.size();
+        for (int r = 0; r < N; r += 1) {
+            Square[] row = board.rowContents(r);
+            if (row != previous.rowContents(r)) {
+                for (int c = 0; c < N; c += 1) {
+                    if (_mBoard[r * N + c] != row[c]) {
+                        internalSet(r * N + c, row[c]);
+                        _uncascaded = true;
+                    }
+                }
+            }
+        }
+        clearHistory();
+        publish();
+        announce();
     }
 
     /** Returns the size of the current board (length). */
@@ -110,6 +223,11 @@ class MutableBoard extends Board {
         return this._size;
     }
 
+    @Override
+    Topology topology() {
+        return _topology;
+    }
+
     /** Returns the contents of square #N, numbering squares by rows, with
      *  squares in row 1 number 0 - size()-1, in row 2 numbered
      *  size() - 2*size() - 1, etc. */
@@ -121,111 +239,154 @@ class MutableBoard extends Board {
     /** Return the number of squares of given SIDE. */
     @Override
     int numOfSide(Side side) {
-        int num = 0;
-        for (int i = 0; i < size() * size(); i++) {
-            if (_mBoard[i].getSide() == side) {
-                num += 1;
-            }
+        switch (side) {
+        case RED:
+            return _numRed;
+        case BLUE:
+            return _numBlue;
+        default:
+            return _size * _size - _numRed - _numBlue;
         }
-        return num;
     }
 
     /** Returns the total number of spots on the board. */
     @Override
     int numPieces() {
-        int numSpots = 0;
-        for (int i = 0; i < _size * _size; i++) {
-            numSpots += get(i).getSpots();
-        }
-        return numSpots;
+        return _numSpots;
+    }
+
+    @Override
+    long positionHash() {
+        return _hash;
     }
 
     /** Adds a spot. Includes overflow. Will add a spot for side
-      * PLAYER, at row R, and column C. */
+      * PLAYER, at row R, and column C.  Does nothing if R and C do not
+      * denote a square. */
     @Override
     void addSpot(Side player, int r, int c) {
-        Square original = get(r, c);
-        if (r <= 0 || c <= 0 || r > size() || c > size()) {
+        if (!exists(r, c)) {
             return;
         }
-        markUndo();
-        _undoHistory.push(original);
-        _past.push(sqNum(r, c));
-
-        int numberRed = 0;
-        int numberBlue = 0;
-        for (int i = 0; i < size() * size(); i++) {
-            if (_mBoard[i].getSide() == RED) {
-                numberRed += 1;
-            } else if (_mBoard[i].getSide() == BLUE) {
-                numberBlue += 1;
-            }
+        addSpot(player, sqNum(r, c));
+    }
+
+    /** Adds a spot for side PLAYER to square #N, including overflow.  A
+      * square that already holds as many spots as it has neighbors is
+      * set to one spot, and its neighbors (in the order given by my
+      * topology: above, below, left, right for a GRID) each receive a
+      * spot in turn, with any further overflow from one neighbor
+      * completed before the next receives its spot.
+      * Overflow stops as soon as one side owns every square.  Observers
+      * receive a single notification for the whole move. */
+    @Override
+    void addSpot(Side player, int n) {
+        if (_numMoves == _moveStarts.length) {
+            _moveStarts = Arrays.copyOf(_moveStarts, 2 * _numMoves);
         }
-        if (numberRed == size() * size() || numberBlue == size() * size()) {
-            return;
+        _moveStarts[_numMoves] = _journalSize;
+        _numMoves += 1;
+
+        int all = _size * _size;
+        int[] offsets = _topology.offsets(), adjacent = _topology.adjacent();
+        _numWaves = 0;
+        _pending[0] = n;
+        int top = 1;
+        int overflows = 0;
+        while (top > 0 && _numRed != all && _numBlue != all) {
+            top -= 1;
+            int k = _pending[top];
+            int spots = _mBoard[k].getSpots();
+            int first = offsets[k], end = offsets[k + 1];
+            if (spots == end - first) {
+                overflows += 1;
+                change(k, square(player, 1));
+                if (_cascadeListener != null) {
+                    endWave();
+                }
+                if (top + end - first > _pending.length) {
+                    _pending = Arrays.copyOf(_pending,
+                                             2 * _pending.length + end - first);
+                }
+                for (int j = end - 1; j >= first; j -= 1) {
+                    _pending[top++] = adjacent[j];
+                }
+            } else {
+                change(k, square(player, spots + 1));
+            }
         }
-
-        int numSpots = original.getSpots();
-        if (numSpots == neighbors(r, c)) {
-            internalSet(sqNum(r, c), square(player, 1));
-            int amountOverflow = overFlow(r, c, player);
-            _numOverFlow.push(amountOverflow);
+        if (_cascadeListener != null) {
+            endWave();
+            reportWaves(_moveStarts[_numMoves - 1]);
         } else {
-            internalSet(sqNum(r, c), square(player, numSpots + 1));
-            _numOverFlow.push(0);
+            _uncascaded = true;
+        }
+        if (_recordingCascades && overflows > 0) {
+            Metrics.CASCADE_LENGTH.record(overflows);
         }
+        trimHistory();
+        publish();
         announce();
     }
 
-
-    /** A helper function that recurses with addSpot such that it adds a dot
-      * to each adjacent square. This function is only called when the maximum
-      * number of dots in a square is reached. This returns an INT of how many
-      * times things overflowed, to but into our stack in addSpot. The purpose
-      * of this is for undohistory-keeping. Takes in row R, column C, the num
-      * of spots there are orginially NUMSPOTS there are currently,
-      * and the side PLAYER. */
-    public int overFlow(int r, int c, Side player) {
-        int numOverFlow = 0;
-        try {
-            addSpot(player, r - 1, c);
-            numOverFlow += 1;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            what();
-        }
-        try {
-            addSpot(player, r + 1, c);
-            numOverFlow += 1;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            what();
-        }
-        try {
-            addSpot(player, r, c - 1);
-            numOverFlow += 1;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            what();
-        }
-        try {
-            addSpot(player, r, c + 1);
-            numOverFlow += 1;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            what();
+    /** Make LISTENER the recipient of the waves of all subsequent moves,
+     *  replacing any previous listener.  A null LISTENER stops reporting,
+     *  after which moves do no extra work. */
+    @Override
+    void setCascadeListener(CascadeListener listener) {
+        _cascadeListener = listener;
+        if (listener != null && _newContents == null) {
+            _newContents = new Square[_changedSquares.length];
+            _waveEnds = new int[INITIAL_CAPACITY];
         }
-        return numOverFlow;
     }
 
-    /** The style checker didn't let me have an empty catch block.
-      * So I made it do what() which does absolutely nothing. */
-    public void what() {
-        return;
+    /** Arrange that, from now on, the number of squares that overflow in
+     *  each of my moves is recorded in Metrics.CASCADE_LENGTH.  Boards
+     *  that do not call this (such as those used in search) record
+     *  nothing. */
+    void recordCascadeLengths() {
+        _recordingCascades = true;
+    }
+
+    /** Make LISTENER the recipient of every subsequent change to my
+     *  squares, replacing any previous listener, and tell it of my
+     *  current contents.  A null LISTENER stops reporting. */
+    void setSquareListener(SquareListener listener) {
+        _squareListener = listener;
+        if (listener != null) {
+            listener.reset(this);
+        }
     }
 
-    /** Convenience method for addSpot with the squareNum instead of r,c.
-      * Takes in the side PLAYER and the index N. */
     @Override
-    void addSpot(Side player, int n) {
-        addSpot(player, row(n), col(n));
-        announce();
+    long symmetricHash(int k) {
+        return k == 0 ? _hash : super.symmetricHash(k);
+    }
+
+    /** Record the end of a wave of the current move at the current
+     *  journal size. */
+    private void endWave() {
+        if (_numWaves == _waveEnds.length) {
+            _waveEnds = Arrays.copyOf(_waveEnds, 2 * _numWaves);
+        }
+        _waveEnds[_numWaves] = _journalSize;
+        _numWaves += 1;
+    }
+
+    /** Send the waves of the current move, whose journal entries begin at
+     *  START, to _cascadeListener. */
+    private void reportWaves(int start) {
+        int from = start;
+        for (int w = 0; w < _numWaves; w += 1) {
+            int to = _waveEnds[w];
+            if (to > from) {
+                _cascadeListener.wave(new CascadeWave(_size, _changedSquares,
+                                                      _newContents,
+                                                      from, to));
+            }
+            from = to;
+        }
     }
 
     /** Set the square at row R, column C to NUM spots (0 <= NUM), and give
@@ -244,59 +405,282 @@ class MutableBoard extends Board {
             player = WHITE;
         }
         internalSet(n, square(player, num));
-        _undoHistory = new Stack<Square>();
-        _past = new Stack<Integer>();
-        _numTotalMoves = 0;
-        _numOverFlow = new Stack<Integer>();
+        _uncascaded = true;
+        clearHistory();
+        publish();
         announce();
     }
 
+    /** Discard my undo history, releasing the journal's references to
+     *  old contents. */
+    private void clearHistory() {
+        Arrays.fill(_oldContents, 0, _journalSize, null);
+        _journalSize = 0;
+        _numMoves = 0;
+    }
+
+    /** Keep at least the last LIMIT moves undoable, discarding older
+     *  history as convenient, so that the undo journal needs space
+     *  proportional to the squares changed by about 2 * LIMIT moves.  A
+     *  negative LIMIT (the default) keeps all history. */
+    void setUndoLimit(int limit) {
+        _undoLimit = Math.max(-1, limit);
+        trimHistory();
+    }
+
+    /** Return the number of moves that may currently be undone. */
+    int undoableMoves() {
+        return _numMoves;
+    }
+
+    /** If my undo history contains more than twice _undoLimit moves,
+     *  discard all but the last _undoLimit.  Costs time proportional to
+     *  the journal entries of the moves kept and discarded, so that
+     *  trimming after every move takes constant amortized time per
+     *  change. */
+    private void trimHistory() {
+        if (_undoLimit < 0 || _numMoves <= 2 * _undoLimit) {
+            return;
+        }
+        int drop = _numMoves - _undoLimit;
+        int from = drop == _numMoves ? _journalSize : _moveStarts[drop];
+        int kept = _journalSize - from;
+        System.arraycopy(_changedSquares, from, _changedSquares, 0, kept);
+        System.arraycopy(_oldContents, from, _oldContents, 0, kept);
+        Arrays.fill(_oldContents, kept, _journalSize, null);
+        for (int k = drop; k < _numMoves; k += 1) {
+            _moveStarts[k - drop] = _moveStarts[k] - from;
+        }
+        _numMoves -= drop;
+        _journalSize = kept;
+    }
+
     /** Undo the effects of one move (that is, one addSpot command).  One
      *  can only undo back to the last point at which the undo history
-     *  was cleared, or the construction of this Board. */
+     *  was cleared, or the construction of this Board.  Takes time
+     *  proportional to the number of squares the move changed. */
     @Override
     void undo() {
-        if (_numTotalMoves < 0) {
+        if (_numMoves == 0) {
             return;
         }
-        int x = _numOverFlow.pop();
-        try {
-            while (x >= 0) {
-                int indx = _past.pop();
-                Square temp = _undoHistory.pop();
-                Side colorAfterMove = _mBoard[indx].getSide();
-                Side previousColor = temp.getSide();
-                _mBoard[indx] = temp;
-                _numTotalMoves -= 1;
-                x -= 1;
-            }
-        } catch (EmptyStackException e) {
+        _numMoves -= 1;
+        int start = _moveStarts[_numMoves];
+        for (int j = _journalSize - 1; j >= start; j -= 1) {
+            internalSet(_changedSquares[j], _oldContents[j]);
+            _oldContents[j] = null;
+        }
+        _journalSize = start;
+        _uncascaded = true;
+        publish();
+        announce();
+    }
+
+    /** Arrange that, from now on, I publish a new snapshot of my contents
+     *  after every change, so that snapshot() may be called from any
+     *  thread at any time, returning a consistent view without locking.
+     *  Must be called by the thread that modifies me. */
+    void publishSnapshots() {
+        if (!_publishing) {
+            _publishing = true;
+            markAllRowsDirty();
+            publish();
+        }
+    }
+
+    /** Returns my most recently published snapshot if I am publishing
+     *  snapshots, and otherwise a new snapshot (in which case, this must
+     *  be called by the thread that modifies me). */
+    @Override
+    BoardSnapshot snapshot() {
+        if (_publishing) {
+            return _snapshot;
+        }
+        return BoardSnapshot.of(this, _version);
+    }
+
+    /** If I am publishing snapshots, publish one of my current contents,
+     *  sharing all unchanged rows with the previous snapshot. */
+    private void publish() {
+        if (!_publishing) {
             return;
         }
+        int N = _size;
+        BoardSnapshot last = _snapshot;
+        _version += 1;
+        if (last == null || last.size() != N) {
+            _snapshot = BoardSnapshot.of(this, _version);
+        } else {
+            Square[][] rows = new Square[N][];
+            for (int r = 0; r < N; r += 1) {
+                rows[r] = last.rowContents(r);
+            }
+            for (int i = 0; i < _numDirtyRows; i += 1) {
+                int r = _dirtyRowList[i];
+                rows[r] = Arrays.copyOfRange(_mBoard, r * N, (r + 1) * N);
+            }
+            _snapshot = new BoardSnapshot(_topology, rows, _numRed, _numBlue,
+                                          _numSpots, _hash, _version);
+        }
+        for (int i = 0; i < _numDirtyRows; i += 1) {
+            _dirtyRows[_dirtyRowList[i]] = false;
+        }
+        _numDirtyRows = 0;
+    }
+
+    /** Mark every row dirty, so that the next publish() copies all of
+     *  them rather than sharing any with a snapshot of different
+     *  contents or topology.  _snapshot remains published meanwhile. */
+    private void markAllRowsDirty() {
+        if (_dirtyRows == null || _dirtyRows.length != _size) {
+            _dirtyRows = new boolean[_size];
+            _dirtyRowList = new int[_size];
+        }
+        for (int r = 0; r < _size; r += 1) {
+            _dirtyRows[r] = true;
+            _dirtyRowList[r] = r;
+        }
+        _numDirtyRows = _size;
     }
 
-    /** Record the beginning of a move in the undo history. Adds 1 to the
-      * total number of dots added/squares moved. _numTotalMoves is the number
-      * of squares that have changed and can be undone. */
-    private void markUndo() {
-        _numTotalMoves += 1;
+    /** Defer notification of Observers until the matching call of
+     *  endBatch, so that a sequence of changes produces one notification
+     *  describing all of them.  Batches may nest. */
+    void beginBatch() {
+        _batchDepth += 1;
+    }
+
+    /** End a batch begun by beginBatch, notifying Observers of the
+     *  changes in the batch if it is the outermost one. */
+    void endBatch() {
+        _batchDepth -= 1;
+        announce();
+    }
+
+    /** Records that OBS is observing me. */
+    @Override
+    public void addObserver(Observer obs) {
+        if (!_observed) {
+            _observed = true;
+            _totalChange = true;
+        }
+        super.addObserver(obs);
+    }
+
+    /** Reset me to a cleared board with topology TOPOLOGY and empty undo
+     *  history.  When my size is unchanged, my existing arrays are
+     *  reused, so that a board cleared for each of many games (as by
+     *  Simulator) allocates nothing. */
+    private void reset(Topology topology) {
+        if (topology.rows() != topology.cols()) {
+            throw new IllegalArgumentException("board must be square");
+        }
+        int N = topology.rows();
+        _topology = topology;
+        if (_mBoard == null || _size != N) {
+            _mBoard = new Square[N * N];
+            _changedSquares = new int[INITIAL_CAPACITY];
+            _oldContents = new Square[INITIAL_CAPACITY];
+            _moveStarts = new int[INITIAL_CAPACITY];
+            _pending = new int[INITIAL_CAPACITY];
+            _noted = new boolean[N * N];
+            _notedList = new int[N * N];
+        } else {
+            Arrays.fill(_oldContents, 0, _journalSize, null);
+            Arrays.fill(_noted, false);
+        }
+        _size = N;
+        Arrays.fill(_mBoard, Square.INITIAL);
+        _numRed = _numBlue = 0;
+        _numSpots = N * N * Square.INITIAL.getSpots();
+        _hash = shapeKey(topology);
+        _journalSize = 0;
+        _numMoves = 0;
+        _numNoted = 0;
+        _totalChange = true;
+        if (_publishing) {
+            markAllRowsDirty();
+        }
+        if (_squareListener != null) {
+            _squareListener.reset(this);
+        }
+    }
+
+    /** Set the contents of square #K to SQ as part of the current move,
+     *  recording its previous contents in the undo journal. */
+    private void change(int k, Square sq) {
+        if (_journalSize == _changedSquares.length) {
+            _changedSquares = Arrays.copyOf(_changedSquares, 2 * _journalSize);
+            _oldContents = Arrays.copyOf(_oldContents, 2 * _journalSize);
+        }
+        if (_cascadeListener != null) {
+            if (_newContents.length < _changedSquares.length) {
+                _newContents =
+                    Arrays.copyOf(_newContents, _changedSquares.length);
+            }
+            _newContents[_journalSize] = sq;
+        }
+        _changedSquares[_journalSize] = k;
+        _oldContents[_journalSize] = _mBoard[k];
+        _journalSize += 1;
+        internalSet(k, sq);
     }
 
     /** Set the contents of the square with index IND to SQ. Update counts
-     *  of numbers of squares of each color.  */
+     *  of numbers of squares of each color and of spots, and the position
+     *  hash, and note the change for Observers.  */
     private void internalSet(int ind, Square sq) {
-        Side originalColor = _mBoard[ind].getSide();
+        Square old = _mBoard[ind];
         _mBoard[ind] = sq;
-        Side color = sq.getSide();
-        if (originalColor == color) {
-            return;
+        count(old, -1);
+        count(sq, 1);
+        _hash ^= squareKey(ind, old) ^ squareKey(ind, sq);
+        if (_squareListener != null) {
+            _squareListener.squareChanged(this, ind, old);
+        }
+        if (_observed && !_totalChange && !_noted[ind]) {
+            _noted[ind] = true;
+            _notedList[_numNoted] = ind;
+            _numNoted += 1;
+        }
+        if (_publishing && !_dirtyRows[ind / _size]) {
+            _dirtyRows[ind / _size] = true;
+            _dirtyRowList[_numDirtyRows] = ind / _size;
+            _numDirtyRows += 1;
         }
     }
 
-    /** Notify all Observers of a change. */
+    /** Add SIGN (1 or -1) times the contribution of SQ to the counts of
+     *  colored squares and spots. */
+    private void count(Square sq, int sign) {
+        _numSpots += sign * sq.getSpots();
+        if (sq.getSide() == RED) {
+            _numRed += sign;
+        } else if (sq.getSide() == BLUE) {
+            _numBlue += sign;
+        }
+    }
+
+    /** Notify all Observers of the changes since the last notification,
+     *  passing them a BoardDelta, unless a batch is in progress. */
     private void announce() {
+        if (!_observed || _batchDepth > 0) {
+            return;
+        }
+        BoardDelta delta;
+        if (_totalChange) {
+            delta = BoardDelta.all(_size);
+        } else {
+            delta = new BoardDelta(_size, _notedList, _numNoted,
+                                   !_uncascaded);
+            for (int i = 0; i < _numNoted; i += 1) {
+                _noted[_notedList[i]] = false;
+            }
+        }
+        _numNoted = 0;
+        _totalChange = _uncascaded = false;
         setChanged();
-        notifyObservers();
+        notifyObservers(delta);
     }
 
     @Override
@@ -304,8 +688,11 @@ class MutableBoard extends Board {
         if (!(obj instanceof MutableBoard)) {
             return obj.equals(this);
         } else {
+            MutableBoard temp = (MutableBoard) obj;
+            if (temp.topology() != topology()) {
+                return false;
+            }
             for (int i = 0; i < size() * size(); i++) {
-                MutableBoard temp = (MutableBoard) obj;
                 if (!temp.get(i).equals(this.get(i))) {
                     return false;
                 }
@@ -314,9 +701,10 @@ class MutableBoard extends Board {
         }
     }
 
-    /** WHAT HASHCODE SHOULD I USE LOL. Returns an INT for the haschode. */
+    /** Returns an INT for the hashcode, derived from the position hash
+     *  (which is consistent with equals). */
     @Override
     public int hashCode() {
-        return 0;
+        return (int) (_hash ^ (_hash >>> 32));
     }
 }
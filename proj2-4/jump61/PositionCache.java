@@ -0,0 +1,311 @@
+package jump61;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A persistent, size-bounded table of the results of AI searches,
+ *  mapping 64-bit keys of positions (see AI) to the best move found for
+ *  the position, its value, and the depth of the search that found it,
+ *  so that positions searched in one run need not be searched again in
+ *  later ones.
+ *
+ *  The table lives in a file of fixed size, set when the file is
+ *  created.  The file consists of a header (MAGIC, a version byte, and
+ *  the number of slots as a four-byte integer) followed by the slots,
+ *  each holding a key (8 bytes; 0 for an empty slot), move, value, and
+ *  depth (4 bytes each), all big-endian.  A key may occupy any of the
+ *  BUCKET slots beginning at a slot determined by the key, so that
+ *  finding it takes one read of the file.  When all are occupied by
+ *  other keys, a new entry replaces the one from the shallowest search.
+ *  Entries are written to the file as they are stored, so that the
+ *  file is complete whenever the program stops.  If reading or writing
+ *  the file fails, I stop using it, and close reports the failure.
+ *
+ *  In front of the file is an in-memory table of the most recently used
+ *  entries, of bounded size, from which entries are evicted by the CLOCK
+ *  algorithm: each entry has a reference bit, set on use, and a hand
+ *  sweeps over the entries, clearing set bits and evicting the first
+ *  entry whose bit is clear.  The methods of a PositionCache are
+ *  synchronized, so that it may be shared among threads.
+ *  @author Thomas Wu
+ */
+class PositionCache implements Closeable {
+
+    /** First bytes of a cache file. */
+    static final byte[] MAGIC = { 'J', '6', '1', 'C' };
+
+    /** Current version of the cache-file format. */
+    static final int VERSION = 1;
+
+    /** Bytes in a cache-file slot. */
+    static final int SLOT_BYTES = 20;
+
+    /** Number of slots in which a key may lie. */
+    static final int BUCKET = 4;
+
+    /** Approximate number of bytes of memory used per entry in the
+     *  in-memory table. */
+    static final int MEMORY_ENTRY_BYTES = 96;
+
+    /** The results of one search in the cache. */
+    static class Entry {
+
+        /** An entry for a search to depth DEPTH (as for
+         *  Settings.searchDepth) that found best move MOVE, with value
+         *  VALUE. */
+        Entry(int move, int value, int depth) {
+            _move = move;
+            _value = value;
+            _depth = depth;
+        }
+
+        /** Return the best move found. */
+        int move() {
+            return _move;
+        }
+
+        /** Return the value of the best move. */
+        int value() {
+            return _value;
+        }
+
+        /** Return the depth of the search. */
+        int depth() {
+            return _depth;
+        }
+
+        /** The best move. */
+        private final int _move;
+        /** Its value. */
+        private final int _value;
+        /** Depth of search. */
+        private final int _depth;
+    }
+
+    /** A cache kept in the file named NAME, which is created with
+     *  FILEBYTES bytes of slots if it does not exist, fronted by an
+     *  in-memory table of about MEMORYBYTES bytes.  Throws IOException if
+     *  the file cannot be created or is not a cache file. */
+    PositionCache(String name, long fileBytes, long memoryBytes)
+        throws IOException {
+        _file = new RandomAccessFile(name, "rw");
+        _channel = _file.getChannel();
+        try {
+            if (_channel.size() == 0) {
+                long slots = Math.max(BUCKET, fileBytes / SLOT_BYTES);
+                _slots = (int) Math.min(slots, Integer.MAX_VALUE / 2);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.put(MAGIC).put((byte) VERSION).putInt(_slots);
+                header.flip();
+                writeFully(header, 0);
+                _file.setLength(HEADER_BYTES + (long) _slots * SLOT_BYTES);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                readFully(header, 0);
+                header.flip();
+                byte[] magic = new byte[MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, MAGIC)
+                    || header.get() != VERSION) {
+                    throw new IOException("not a Jump61 position cache");
+                }
+                _slots = header.getInt();
+                if (_slots < BUCKET || _slots > Integer.MAX_VALUE / 2
+                    || _channel.size()
+                    != HEADER_BYTES + (long) _slots * SLOT_BYTES) {
+                    throw new IOException("damaged position cache");
+                }
+            }
+        } catch (IOException excp) {
+            _file.close();
+            throw excp;
+        }
+        int entries = (int) Math.min(Integer.MAX_VALUE / 2,
+                                     Math.max(1, memoryBytes
+                                                 / MEMORY_ENTRY_BYTES));
+        _keys = new long[entries];
+        _entries = new Entry[entries];
+        _referenced = new boolean[entries];
+        _index = new HashMap<>();
+        _bucket = ByteBuffer.allocate(BUCKET * SLOT_BYTES);
+    }
+
+    /** Return the entry for KEY, or null if there is none. */
+    synchronized Entry find(long key) {
+        Integer i = _index.get(key);
+        if (i != null) {
+            _referenced[i] = true;
+            return _entries[i];
+        }
+        int slot = readBucket(key);
+        if (slot < 0 || _bucket.getLong(slot * SLOT_BYTES) != key) {
+            return null;
+        }
+        int at = slot * SLOT_BYTES + Long.BYTES;
+        Entry entry =
+            new Entry(_bucket.getInt(at), _bucket.getInt(at + Integer.BYTES),
+                      _bucket.getInt(at + 2 * Integer.BYTES));
+        remember(key, entry);
+        return entry;
+    }
+
+    /** Record ENTRY as the entry for KEY, unless there is already an
+     *  entry for KEY from a deeper search. */
+    synchronized void store(long key, Entry entry) {
+        if (key == 0) {
+            return;
+        }
+        int slot = readBucket(key);
+        if (slot >= 0) {
+            if (_bucket.getLong(slot * SLOT_BYTES) == key
+                && depth(slot) > entry.depth()) {
+                return;
+            }
+            ByteBuffer data = ByteBuffer.allocate(SLOT_BYTES);
+            data.putLong(key).putInt(entry.move()).putInt(entry.value())
+                .putInt(entry.depth());
+            data.flip();
+            try {
+                writeFully(data, HEADER_BYTES + (long) ((start(key) + slot)
+                                                       % _slots) * SLOT_BYTES);
+            } catch (IOException excp) {
+                _failure = excp;
+            }
+        }
+        remember(key, entry);
+    }
+
+    /** Return the number of slots in my file. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Close my file.  Throws the IOException that made me stop using it,
+     *  if any. */
+    @Override
+    public synchronized void close() throws IOException {
+        _file.close();
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Read the bucket of slots in which KEY may lie into _bucket, and
+     *  return the index within it of the slot holding KEY if there is
+     *  one, and otherwise of the slot a new entry for KEY should
+     *  occupy: an empty one if any, and else the one from the
+     *  shallowest search.  Returns -1 if my file is unusable. */
+    private int readBucket(long key) {
+        if (_failure != null) {
+            return -1;
+        }
+        int start = start(key);
+        _bucket.clear();
+        int first = Math.min(BUCKET, _slots - start);
+        _bucket.limit(first * SLOT_BYTES);
+        try {
+            readFully(_bucket, HEADER_BYTES + (long) start * SLOT_BYTES);
+            if (first < BUCKET) {
+                _bucket.limit(BUCKET * SLOT_BYTES);
+                readFully(_bucket, HEADER_BYTES);
+            }
+        } catch (IOException excp) {
+            _failure = excp;
+            return -1;
+        }
+        int result;
+        result = 0;
+        for (int s = 0; s < BUCKET; s += 1) {
+            long k = _bucket.getLong(s * SLOT_BYTES);
+            if (k == key) {
+                return s;
+            } else if (_bucket.getLong(result * SLOT_BYTES) != 0
+                       && (k == 0 || depth(s) < depth(result))) {
+                result = s;
+            }
+        }
+        return result;
+    }
+
+    /** Return the depth in slot S of _bucket. */
+    private int depth(int s) {
+        return _bucket.getInt(s * SLOT_BYTES + Long.BYTES
+                              + 2 * Integer.BYTES);
+    }
+
+    /** Return the first slot in which KEY may lie. */
+    private int start(long key) {
+        return (int) Long.remainderUnsigned(key, _slots);
+    }
+
+    /** Make ENTRY the entry for KEY in my in-memory table, evicting
+     *  another entry by the CLOCK algorithm if necessary. */
+    private void remember(long key, Entry entry) {
+        Integer i = _index.get(key);
+        if (i == null) {
+            while (_referenced[_hand]) {
+                _referenced[_hand] = false;
+                _hand = (_hand + 1) % _keys.length;
+            }
+            i = _hand;
+            _hand = (_hand + 1) % _keys.length;
+            if (_entries[i] != null) {
+                _index.remove(_keys[i]);
+            }
+            _keys[i] = key;
+            _index.put(key, i);
+        }
+        _entries[i] = entry;
+        _referenced[i] = true;
+    }
+
+    /** Fill the remainder of BUF from my file, starting at byte POS. */
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = _channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("truncated position cache");
+            }
+            pos += n;
+        }
+    }
+
+    /** Write the remainder of BUF to my file, starting at byte POS. */
+    private void writeFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += _channel.write(buf, pos);
+        }
+    }
+
+    /** Bytes in the file header. */
+    private static final int HEADER_BYTES = MAGIC.length + 1 + Integer.BYTES;
+
+    /** The cache file. */
+    private final RandomAccessFile _file;
+    /** Channel for positioned reads and writes of _file. */
+    private final FileChannel _channel;
+    /** Number of slots in _file. */
+    private final int _slots;
+    /** Buffer for one bucket of slots. */
+    private final ByteBuffer _bucket;
+    /** _keys[i] and _entries[i] are the key and entry of element i of my
+     *  in-memory table, and _referenced[i] is its CLOCK reference bit.
+     *  _entries[i] is null if element i is unused. */
+    private final long[] _keys;
+    /** Entries of my in-memory table. */
+    private final Entry[] _entries;
+    /** Reference bits of my in-memory table. */
+    private final boolean[] _referenced;
+    /** Maps each key in my in-memory table to its index. */
+    private final HashMap<Long, Integer> _index;
+    /** The CLOCK hand: the next element of my in-memory table to
+     *  consider for eviction. */
+    private int _hand;
+    /** The error that made me stop using my file, or null. */
+    private IOException _failure;
+}
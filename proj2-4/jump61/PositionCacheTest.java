@@ -0,0 +1,81 @@
+package jump61;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of PositionCache.
+ *  @author Thomas Wu
+ */
+public class PositionCacheTest {
+
+    /** Return a new, nonexistent file to hold a cache. */
+    private File newFile() throws IOException {
+        File file = File.createTempFile("jump61", ".cache");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        File file = newFile();
+        PositionCache cache = new PositionCache(file.getPath(), 4096, 4096);
+        for (long key = 1; key <= 100; key += 1) {
+            cache.store(key * 0x9e3779b97f4a7c15L,
+                        new PositionCache.Entry((int) key, (int) -key, 3));
+        }
+        cache.store(2 * 0x9e3779b97f4a7c15L, new PositionCache.Entry(0, 0, 1));
+        assertNull(cache.find(12345));
+        cache.close();
+        assertEquals(4096 / PositionCache.SLOT_BYTES, cache.slots());
+
+        cache = new PositionCache(file.getPath(), 0, 0);
+        assertEquals(4096 / PositionCache.SLOT_BYTES, cache.slots());
+        for (long key = 1; key <= 100; key += 1) {
+            PositionCache.Entry entry = cache.find(key * 0x9e3779b97f4a7c15L);
+            assertNotNull(entry);
+            assertEquals(key, entry.move());
+            assertEquals(-key, entry.value());
+            assertEquals(3, entry.depth());
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testReplacement() throws IOException {
+        File file = newFile();
+        PositionCache cache = new PositionCache(file.getPath(), 0, 0);
+        assertEquals(PositionCache.BUCKET, cache.slots());
+        for (int key = 1; key <= PositionCache.BUCKET; key += 1) {
+            cache.store(key, new PositionCache.Entry(key, 0, key));
+        }
+        cache.store(99, new PositionCache.Entry(99, 0, 9));
+        cache.close();
+        cache = new PositionCache(file.getPath(), 0, 0);
+        assertNull(cache.find(1));
+        for (int key = 2; key <= PositionCache.BUCKET; key += 1) {
+            assertEquals(key, cache.find(key).move());
+        }
+        assertEquals(99, cache.find(99).move());
+        cache.close();
+    }
+
+    @Test
+    public void testBadFile() throws IOException {
+        File file = newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("not a cache".getBytes());
+        out.close();
+        try {
+            new PositionCache(file.getPath(), 4096, 4096).close();
+            fail("accepted a bad cache file");
+        } catch (IOException excp) {
+            assertEquals(11, file.length());
+        }
+    }
+
+}
@@ -0,0 +1,368 @@
+package jump61;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** The hash-ordered index of a GameArchive's positions, which finds the
+ *  games reaching a position without reading the whole position index.
+ *
+ *  The entries of positions.idx (see GameArchive), which are in order of
+ *  game, are copied in chunks of a fixed number of entries into runs,
+ *  each sorted by hash, and each kept in a file hashes-F.idx, where F is
+ *  the number, in positions.idx, of the first entry it covers (written
+ *  in 12 decimal digits).  The runs cover successive ranges of entries.
+ *  When a new run is no larger than the one before it, the two are
+ *  merged into one (up to a maximum size), so that runs halve in size
+ *  from first to last, and there are about log2 of the number of chunks
+ *  of them.  Looking a hash up costs a binary search of each run, plus
+ *  a scan of the entries not yet in a run, of which there are fewer
+ *  than a chunk.  Each entry is rewritten about log2 of the number of
+ *  chunks times in all.
+ *
+ *  Runs are written to temporary files and renamed into place, so that
+ *  an interrupted update leaves at worst a run that is covered by the
+ *  one before it, which is ignored, or a temporary file, which is
+ *  deleted.
+ *  @author Thomas Wu
+ */
+class PositionHashIndex {
+
+    /** Default number of entries in each chunk copied into a run. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** Largest number of entries in a run, so that a run may be
+     *  mapped whole. */
+    static final int MAX_RUN = 1 << 26;
+
+    /** The index of the entries in POSITIONS, the position index of
+     *  the archive in directory DIR, copying them into runs of CHUNK
+     *  entries iff WRITABLE.  Runs left incomplete by an interrupted
+     *  update are ignored, and also deleted if WRITABLE. */
+    PositionHashIndex(File dir, FileChannel positions, int chunk,
+                      boolean writable) throws IOException {
+        _dir = dir;
+        _positions = positions;
+        _chunk = Math.max(1, Math.min(chunk, MAX_RUN));
+        _writable = writable;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("cannot list archive directory " + dir);
+        }
+        Arrays.sort(files);
+        long total = positions.size() / ENTRY;
+        for (File file : files) {
+            Matcher m = RUN_NAME.matcher(file.getName());
+            if (m.matches()) {
+                long first = Long.parseLong(m.group(1));
+                long count = file.length() / ENTRY;
+                if (first == _indexed && file.length() % ENTRY == 0
+                    && count > 0 && first + count <= total) {
+                    _runs.add(new Run(file, first, (int) count));
+                    _indexed += count;
+                    continue;
+                }
+            } else if (!file.getName().endsWith(TEMP_SUFFIX)) {
+                continue;
+            }
+            if (_writable && !file.delete()) {
+                throw new IOException("cannot delete " + file);
+            }
+        }
+    }
+
+    /** Copy any complete chunks of entries not yet in runs into runs.  A
+     *  no-op unless I am writable. */
+    void update() throws IOException {
+        if (!_writable) {
+            return;
+        }
+        while (_positions.size() / ENTRY - _indexed >= _chunk) {
+            addChunk();
+            while (_runs.size() >= 2) {
+                Run last = _runs.get(_runs.size() - 1),
+                    prev = _runs.get(_runs.size() - 2);
+                if (prev._count > last._count
+                    || (long) prev._count + last._count > MAX_RUN) {
+                    break;
+                }
+                merge(prev, last);
+            }
+        }
+    }
+
+    /** Return the numbers, in increasing order and without duplicates, of
+     *  all games in which a position with positionHash HASH was
+     *  reached. */
+    ArrayList<Integer> gamesReaching(long hash) throws IOException {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        for (Run run : _runs) {
+            ByteBuffer entries = run.entries();
+            int lo, hi;
+            lo = 0;
+            hi = run._count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries.getLong(mid * ENTRY) < hash) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < run._count
+                     && entries.getLong(i * ENTRY) == hash; i += 1) {
+                result.add(entries.getInt(i * ENTRY + Long.BYTES));
+            }
+        }
+        long end = _positions.size();
+        if (end > _indexed * ENTRY) {
+            ByteBuffer tail =
+                _positions.map(FileChannel.MapMode.READ_ONLY,
+                               _indexed * ENTRY, end - _indexed * ENTRY);
+            while (tail.remaining() >= ENTRY) {
+                long h = tail.getLong();
+                int game = tail.getInt();
+                tail.getInt();
+                if (h == hash) {
+                    result.add(game);
+                }
+            }
+        }
+        Collections.sort(result);
+        int k;
+        k = 0;
+        for (int i = 0; i < result.size(); i += 1) {
+            if (k == 0 || !result.get(i).equals(result.get(k - 1))) {
+                result.set(k, result.get(i));
+                k += 1;
+            }
+        }
+        result.subList(k, result.size()).clear();
+        return result;
+    }
+
+    /** Return the number of runs. */
+    int numRuns() {
+        return _runs.size();
+    }
+
+    /** Return the number of entries in runs. */
+    long indexed() {
+        return _indexed;
+    }
+
+    /** Copy the next chunk of entries of positions.idx into a new run. */
+    private void addChunk() throws IOException {
+        ByteBuffer chunk =
+            _positions.map(FileChannel.MapMode.READ_ONLY, _indexed * ENTRY,
+                           (long) _chunk * ENTRY);
+        long[] hashes = new long[_chunk], rest = new long[_chunk];
+        for (int i = 0; i < _chunk; i += 1) {
+            hashes[i] = chunk.getLong();
+            rest[i] = chunk.getLong();
+        }
+        sort(hashes, rest, new long[_chunk], new long[_chunk], 0, _chunk);
+        ByteBuffer sorted = ByteBuffer.allocate(_chunk * ENTRY);
+        for (int i = 0; i < _chunk; i += 1) {
+            sorted.putLong(hashes[i]).putLong(rest[i]);
+        }
+        File temp = tempFile();
+        FileChannel out = create(temp);
+        try {
+            write(out, sorted);
+        } finally {
+            out.close();
+        }
+        File file = runFile(_indexed);
+        rename(temp, file);
+        _runs.add(new Run(file, _indexed, _chunk));
+        _indexed += _chunk;
+    }
+
+    /** Sort HASHES[LO .. HI-1] into increasing order, stably, permuting
+     *  REST[LO .. HI-1] in the same way, using TMPHASHES and TMPREST
+     *  (the same length as HASHES) as scratch space. */
+    private static void sort(long[] hashes, long[] rest, long[] tmpHashes,
+                             long[] tmpRest, int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        sort(hashes, rest, tmpHashes, tmpRest, lo, mid);
+        sort(hashes, rest, tmpHashes, tmpRest, mid, hi);
+        if (hashes[mid - 1] <= hashes[mid]) {
+            return;
+        }
+        System.arraycopy(hashes, lo, tmpHashes, lo, hi - lo);
+        System.arraycopy(rest, lo, tmpRest, lo, hi - lo);
+        int i, j;
+        i = lo;
+        j = mid;
+        for (int k = lo; k < hi; k += 1) {
+            if (j == hi || i < mid && tmpHashes[i] <= tmpHashes[j]) {
+                hashes[k] = tmpHashes[i];
+                rest[k] = tmpRest[i];
+                i += 1;
+            } else {
+                hashes[k] = tmpHashes[j];
+                rest[k] = tmpRest[j];
+                j += 1;
+            }
+        }
+    }
+
+    /** Replace the last two runs, PREV and LAST, by one run covering both
+     *  their ranges. */
+    private void merge(Run prev, Run last) throws IOException {
+        ByteBuffer a = prev.entries(), b = last.entries();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        File temp = tempFile();
+        FileChannel out = create(temp);
+        try {
+            int i, j;
+            i = j = 0;
+            while (i < prev._count || j < last._count) {
+                ByteBuffer src;
+                int at;
+                if (j == last._count
+                    || i < prev._count
+                       && a.getLong(i * ENTRY) <= b.getLong(j * ENTRY)) {
+                    src = a;
+                    at = i * ENTRY;
+                    i += 1;
+                } else {
+                    src = b;
+                    at = j * ENTRY;
+                    j += 1;
+                }
+                if (!buf.hasRemaining()) {
+                    write(out, buf);
+                }
+                buf.putLong(src.getLong(at))
+                    .putLong(src.getLong(at + Long.BYTES));
+            }
+            write(out, buf);
+        } finally {
+            out.close();
+        }
+        rename(temp, prev._file);
+        if (!last._file.delete()) {
+            throw new IOException("cannot delete " + last._file);
+        }
+        _runs.remove(_runs.size() - 1);
+        _runs.set(_runs.size() - 1,
+                  new Run(prev._file, prev._first,
+                          prev._count + last._count));
+    }
+
+    /** Return the file holding the run whose first entry is entry
+     *  #FIRST of positions.idx. */
+    private File runFile(long first) {
+        return new File(_dir, String.format("hashes-%012d.idx", first));
+    }
+
+    /** Return the name of a temporary file for a run being written. */
+    private File tempFile() {
+        return new File(_dir, "hashes" + TEMP_SUFFIX);
+    }
+
+    /** Return a channel writing the file FILE, created empty. */
+    private static FileChannel create(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING,
+                                StandardOpenOption.WRITE);
+    }
+
+    /** Write the contents of BUF, up to its position, to OUT, and clear
+     *  BUF. */
+    private static void write(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** Rename FROM to TO, replacing any existing TO. */
+    private static void rename(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** One sorted run of entries. */
+    private static class Run {
+
+        /** A run kept in FILE, covering the COUNT entries of
+         *  positions.idx beginning with entry #FIRST. */
+        Run(File file, long first, int count) {
+            _file = file;
+            _first = first;
+            _count = count;
+        }
+
+        /** Return a read-only buffer of my entries, in order of hash. */
+        ByteBuffer entries() throws IOException {
+            if (_mapping == null) {
+                FileChannel chan =
+                    FileChannel.open(_file.toPath(),
+                                     StandardOpenOption.READ);
+                try {
+                    _mapping = chan.map(FileChannel.MapMode.READ_ONLY,
+                                        0, (long) _count * ENTRY);
+                } finally {
+                    chan.close();
+                }
+            }
+            return _mapping;
+        }
+
+        /** The file holding me. */
+        private final File _file;
+        /** Number in positions.idx of my first entry. */
+        private final long _first;
+        /** Number of my entries. */
+        private final int _count;
+        /** Mapping of _file, or null if not yet mapped. */
+        private MappedByteBuffer _mapping;
+    }
+
+    /** Size of an entry in bytes: hash (long), game number and ply
+     *  (ints), as in positions.idx. */
+    private static final int ENTRY = Long.BYTES + 2 * Integer.BYTES;
+
+    /** Names of run files. */
+    private static final Pattern RUN_NAME =
+        Pattern.compile("hashes-(\\d{12})\\.idx");
+
+    /** Suffix of temporary files. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Size of the output buffer for merges in bytes, a multiple of
+     *  ENTRY. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Directory containing the archive. */
+    private final File _dir;
+    /** The archive's position index. */
+    private final FileChannel _positions;
+    /** Number of entries in each chunk copied into a run. */
+    private final int _chunk;
+    /** True iff I may write runs. */
+    private final boolean _writable;
+    /** The runs, in order of the entries they cover. */
+    private final ArrayList<Run> _runs = new ArrayList<>();
+    /** Number of entries of positions.idx in runs. */
+    private long _indexed;
+}
@@ -0,0 +1,142 @@
+package jump61;
+
+import static jump61.GameException.error;
+import static jump61.Side.*;
+
+/** A one-line text notation for a board position, read and written in
+ *  one pass, for loading and saving positions in bulk.  A position is
+ *  written
+ *      <kind>:<row>/<row>/.../<row>
+ *  where <kind> is the topology kind (grid, torus, or hex; the "<kind>:"
+ *  may be omitted for a grid), and there is one <row> per row of the
+ *  (square) board, from the top.  Each row lists its squares from left
+ *  to right, run-length encoded: a colored square is its color, r or b,
+ *  followed by its number of spots (a single digit), and a run of
+ *  white squares is the decimal number of squares in the run.  For
+ *  example, "grid:r22b1/4/4/3r1" is a 4x4 grid with red squares of 2 and
+ *  1 spots at its upper-left and lower-right corners, and a blue square
+ *  of 1 spot at the end of its first row.
+ *  @author Thomas Wu
+ */
+class PositionNotation {
+
+    /** Separator of the topology kind from the rows. */
+    static final char KIND_END = ':';
+
+    /** Separator of rows. */
+    static final char ROW_END = '/';
+
+    /** Return the notation for the position on board B. */
+    static String format(Board b) {
+        int N = b.size();
+        StringBuilder out = new StringBuilder(2 * N * N);
+        out.append(b.topology().kind()).append(KIND_END);
+        for (int r = 0; r < N; r += 1) {
+            if (r > 0) {
+                out.append(ROW_END);
+            }
+            int white;
+            white = 0;
+            for (int c = 0; c < N; c += 1) {
+                Square sq = b.get(r * N + c);
+                if (sq.getSide() == WHITE) {
+                    white += 1;
+                } else {
+                    if (white > 0) {
+                        out.append(white);
+                        white = 0;
+                    }
+                    out.append(sq.getSide() == RED ? 'r' : 'b')
+                        .append(sq.getSpots());
+                }
+            }
+            if (white > 0) {
+                out.append(white);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Set board B to the position whose notation is TEXT, clearing its
+     *  undo history, with one notification of its Observers.  Throws a
+     *  GameException, leaving B unchanged, if TEXT is not valid
+     *  notation for a position of at most Defaults.MAX_BOARD_SIZE rows,
+     *  or gives some square more spots than it has neighbors. */
+    static void parse(CharSequence text, MutableBoard b) {
+        int len = text.length();
+        int start;
+        start = 0;
+        Topology.Kind kind = Topology.Kind.GRID;
+        for (int i = 0; i < len; i += 1) {
+            if (text.charAt(i) == KIND_END) {
+                kind = Topology.parseKind(text.subSequence(0, i).toString());
+                start = i + 1;
+                break;
+            }
+        }
+        int N;
+        N = 1;
+        for (int i = start; i < len; i += 1) {
+            if (text.charAt(i) == ROW_END) {
+                N += 1;
+            }
+        }
+        if (N < 2 || N > Defaults.MAX_BOARD_SIZE) {
+            throw error("position must have 2 to %d rows",
+                        Defaults.MAX_BOARD_SIZE);
+        }
+        Topology topology = Topology.of(kind, N);
+        Square[] contents = new Square[N * N];
+        int r, c;
+        r = c = 0;
+        for (int i = start; i < len; i += 1) {
+            char ch = text.charAt(i);
+            if (ch == ROW_END) {
+                checkRow(r, c, N);
+                r += 1;
+                c = 0;
+            } else if (ch >= '0' && ch <= '9') {
+                int run;
+                run = 0;
+                for (; i < len && Character.isDigit(text.charAt(i));
+                     i += 1) {
+                    run = Math.min(run * 10 + text.charAt(i) - '0', N + 1);
+                }
+                i -= 1;
+                if (run == 0 || c + run > N) {
+                    throw error("bad run of white squares in row %d",
+                                r + 1);
+                }
+                for (; run > 0; run -= 1, c += 1) {
+                    contents[r * N + c] = Square.INITIAL;
+                }
+            } else if ((ch == 'r' || ch == 'b') && i + 1 < len
+                       && Character.isDigit(text.charAt(i + 1))
+                       && c < N) {
+                int spots = text.charAt(i + 1) - '0';
+                i += 1;
+                if (spots < 1 || spots > topology.capacity(r * N + c)) {
+                    throw error("bad number of spots at %d %d",
+                                r + 1, c + 1);
+                }
+                contents[r * N + c] =
+                    Square.square(ch == 'r' ? RED : BLUE, spots);
+                c += 1;
+            } else {
+                throw error("bad position notation at '%s'",
+                            text.subSequence(i, len));
+            }
+        }
+        checkRow(r, c, N);
+        b.setContents(topology, contents);
+    }
+
+    /** Check that row R (numbered from 0) of an N x N board, whose last
+     *  square parsed is in column C-1, is complete. */
+    private static void checkRow(int r, int c, int N) {
+        if (c != N) {
+            throw error("row %d has %d squares, not %d", r + 1, c, N);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package jump61;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of PositionNotation.
+ *  @author Thomas Wu
+ */
+public class PositionNotationTest {
+
+    @Test
+    public void testFormat() {
+        MutableBoard B = new MutableBoard(Topology.of(GRID, 4));
+        B.set(0, 2, RED);
+        B.set(3, 1, BLUE);
+        B.set(15, 1, RED);
+        assertEquals("grid:r22b1/4/4/3r1", PositionNotation.format(B));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        SplittableRandom random = new SplittableRandom(61);
+        for (Topology.Kind kind : Topology.Kind.values()) {
+            MutableBoard B = new MutableBoard(Topology.of(kind, 12));
+            for (int k = 0; k < 150 && B.getWinner() == null; k += 1) {
+                Side p = B.whoseMove();
+                B.addSpot(p, Simulator.randomMove(p, B, random));
+            }
+            MutableBoard copy = new MutableBoard(5);
+            int[] notes = new int[1];
+            copy.addObserver(new Observer() {
+                @Override
+                public void update(Observable obs, Object arg) {
+                    notes[0] += 1;
+                }
+            });
+            PositionNotation.parse(PositionNotation.format(B), copy);
+            assertEquals(B, copy);
+            assertEquals(B.positionHash(), copy.positionHash());
+            assertEquals(1, notes[0]);
+        }
+    }
+
+    @Test
+    public void testBadNotation() {
+        MutableBoard B = new MutableBoard(3);
+        String[] bad = {
+            "r1/2", "grid:r1/1", "r3/2", "r13/3/3", "b0/2", "3/3/3/",
+            "cube:3/3/3", "4/2", "r/2", "1x/2",
+        };
+        for (String text : bad) {
+            try {
+                PositionNotation.parse(text, B);
+                fail(text);
+            } catch (GameException excp) {
+                assertEquals(text, new MutableBoard(3), B);
+            }
+        }
+        PositionNotation.parse("2/r11", B);
+        assertEquals(GRID, B.topology().kind());
+        assertEquals(RED, B.get(2).getSide());
+    }
+
+}
@@ -0,0 +1,133 @@
+package jump61;
+
+/** A set of lower-case names that may be looked up by any unique prefix,
+ *  ignoring case.  Names may also be marked as additions to an original
+ *  set, in which case they never take over an abbreviation that belongs
+ *  to one original name alone, so that adding a name to a set of
+ *  commands breaks no existing abbreviation.  Lookups walk one node per
+ *  character of the key, so their cost does not depend on the number of
+ *  names in the set.
+ *  @author Thomas Wu
+ */
+class PrefixTrie {
+
+    /** A trie containing exactly the strings in NAMES, which must be
+     *  non-empty and consist of the characters 'a' - 'z'. */
+    PrefixTrie(String... names) {
+        this(names, new String[0]);
+    }
+
+    /** A trie containing exactly the strings in NAMES and in ADDITIONS,
+     *  all of which must be non-empty and consist of the characters 'a'
+     *  - 'z', where a prefix of a single name in NAMES abbreviates that
+     *  name even if it is also a prefix of names in ADDITIONS. */
+    PrefixTrie(String[] names, String[] additions) {
+        _root = new Node();
+        for (String name : names) {
+            add(name);
+        }
+        reserve(_root);
+        for (String name : additions) {
+            add(name);
+        }
+    }
+
+    /** Return the name in me that KEY abbreviates, ignoring case.  KEY
+     *  abbreviates a name if it equals it, or is a prefix of it and of
+     *  no other name, or is a prefix of it and of no other original
+     *  name, if it is an original name.  Returns null if there is no
+     *  such name. */
+    String complete(CharSequence key) {
+        Node node = find(key);
+        if (node == null) {
+            return null;
+        } else if (node._word != null) {
+            return node._word;
+        } else if (node._owner != null) {
+            return node._owner;
+        } else {
+            return node._count == 1 ? node._only : null;
+        }
+    }
+
+    /** Return true iff KEY is (ignoring case) a prefix of more than one
+     *  name in me and abbreviates none of them. */
+    boolean isAmbiguous(CharSequence key) {
+        Node node = find(key);
+        return node != null && node._word == null && node._owner == null
+            && node._count > 1;
+    }
+
+    /** Add NAME to me. */
+    private void add(String name) {
+        Node node = _root;
+        for (int i = 0; i < name.length(); i += 1) {
+            node.note(name);
+            int k = name.charAt(i) - 'a';
+            if (node._kids[k] == null) {
+                node._kids[k] = new Node();
+            }
+            node = node._kids[k];
+        }
+        node.note(name);
+        node._word = name;
+    }
+
+    /** Make each node at or below NODE whose prefix only one name has
+     *  owned by that name. */
+    private void reserve(Node node) {
+        if (node._count == 1) {
+            node._owner = node._only;
+        }
+        for (Node kid : node._kids) {
+            if (kid != null) {
+                reserve(kid);
+            }
+        }
+    }
+
+    /** Return the node reached by following KEY (in lower case) from
+     *  the root, or null if there is none. */
+    private Node find(CharSequence key) {
+        if (key.length() == 0) {
+            return null;
+        }
+        Node node = _root;
+        for (int i = 0; i < key.length() && node != null; i += 1) {
+            int k = Character.toLowerCase(key.charAt(i)) - 'a';
+            if (k < 0 || k >= ALPHABET) {
+                return null;
+            }
+            node = node._kids[k];
+        }
+        return node;
+    }
+
+    /** Number of distinct characters that may appear in names. */
+    private static final int ALPHABET = 26;
+
+    /** One node of the trie, corresponding to one prefix. */
+    private static class Node {
+        /** Record that NAME passes through this node. */
+        void note(String name) {
+            _count += 1;
+            _only = name;
+        }
+
+        /** Children, indexed by character - 'a'. */
+        private final Node[] _kids = new Node[ALPHABET];
+        /** The name ending at this node, or null. */
+        private String _word;
+        /** Number of names having this node's prefix. */
+        private int _count;
+        /** Some name having this node's prefix (the only one if
+         *  _count == 1). */
+        private String _only;
+        /** The name this node's prefix abbreviates whatever names are
+         *  added later, or null. */
+        private String _owner;
+    }
+
+    /** The node for the empty prefix. */
+    private final Node _root;
+}
@@ -0,0 +1,52 @@
+package jump61;
+
+import java.util.SplittableRandom;
+
+/** The scheme by which games, players, and simulations derive their
+ *  random numbers from a single seed, so that any run, however many
+ *  threads it uses, can be reproduced exactly from its seed.
+ *
+ *  A series of games begun with seed S gives game #G (numbered from 0)
+ *  the seed gameSeed(S, G), which for game #0 is S itself.  So a game
+ *  whose seed T is recorded (see GameRecordWriter) is reproduced by
+ *  playing it first after seeding with T.  Within a game with seed T,
+ *  each side P draws its random numbers from its own generator,
+ *  stream(T, P), which no other side or thread shares.  A player that
+ *  divides its work among threads splits its generator, once per thread
+ *  and in order of thread number, before starting them.
+ *
+ *  Seeds are derived by the SplitMix64 finalizer (as in
+ *  SplittableRandom), so that streams for nearby games and for the two
+ *  sides of one game are statistically independent.
+ *  @author Thomas Wu
+ */
+class RandomStreams {
+
+    /** Return the seed of game #GAME in the series begun with seed
+     *  SEED. */
+    static long gameSeed(long seed, long game) {
+        return game == 0 ? seed : mix(seed + GAME_GAMMA * game);
+    }
+
+    /** Return a new generator of the stream used by side SIDE in the game
+     *  with seed GAMESEED.  Generators for WHITE are reserved for the
+     *  game itself. */
+    static SplittableRandom stream(long gameSeed, Side side) {
+        return new SplittableRandom(mix(gameSeed
+                                        ^ SIDE_GAMMA * (side.ordinal() + 1)));
+    }
+
+    /** Return a thorough scrambling of the bits of Z (the SplitMix64
+     *  finalizer). */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Odd increments separating the seeds of successive games and of the
+     *  sides within one game. */
+    private static final long
+        GAME_GAMMA = 0x9e3779b97f4a7c15L,
+        SIDE_GAMMA = 0xd1b54a32d192ed03L;
+}
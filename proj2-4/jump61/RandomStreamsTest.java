@@ -0,0 +1,68 @@
+package jump61;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+
+/** Unit tests of RandomStreams and of reproducible games.
+ *  @author Thomas Wu
+ */
+public class RandomStreamsTest {
+
+    /** Return the output of a game that plays SCRIPT in batch mode. */
+    private String play(String script) {
+        return play(script, Settings.DEFAULT);
+    }
+
+    /** Return the output of a game with SETTINGS that plays SCRIPT in
+     *  batch mode. */
+    private String play(String script, Settings settings) {
+        StringWriter out = new StringWriter();
+        Game game = new Game(new StringReader(script), out, out,
+                             new StringWriter(), true);
+        game.setSettings(settings);
+        game.play();
+        return out.toString();
+    }
+
+    @Test
+    public void testStreams() {
+        assertEquals(61, RandomStreams.gameSeed(61, 0));
+        assertNotEquals(RandomStreams.gameSeed(61, 1),
+                        RandomStreams.gameSeed(61, 2));
+        SplittableRandom red1 = RandomStreams.stream(61, RED),
+            red2 = RandomStreams.stream(61, RED),
+            blue = RandomStreams.stream(61, BLUE);
+        long r = red1.nextLong();
+        assertEquals(r, red2.nextLong());
+        assertNotEquals(r, blue.nextLong());
+    }
+
+    @Test
+    public void testReproducibleGame() {
+        String script = "seed 1961\nsize 13\nauto red\nauto blue\nstart\n";
+        String first = play(script);
+        assertTrue(first.contains("wins"));
+        assertEquals(first, play(script));
+    }
+
+    @Test
+    public void testReproducibleSearch() {
+        Properties props = new Properties();
+        props.setProperty(Settings.DEPTH, "4");
+        props.setProperty(Settings.NODES, "3000");
+        props.setProperty(Settings.TIME, "1");
+        Settings settings = new Settings(props);
+        String script = "seed 61\nsize 5\nauto red\nauto blue\nstart\n";
+        String first = play(script, settings);
+        assertTrue(first.contains("wins"));
+        assertEquals(first, play(script, settings));
+    }
+
+}
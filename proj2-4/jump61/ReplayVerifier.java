@@ -0,0 +1,404 @@
+package jump61;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Replays recorded games through the engine as fast as it will go,
+ *  checking that they are still valid: that every recorded move is legal
+ *  in the position the engine reaches, that the final position has the
+ *  hash recorded with the game (in records of version 2 or later; see
+ *  GameRecordWriter), and, for games in a GameArchive, that every
+ *  position reached has the hash recorded in the archive's position
+ *  index.  Used to revalidate stored games after changes to the
+ *  engine (see --verify in Main).
+ *
+ *  A source is either a game record file (see GameRecordWriter) or the
+ *  directory of a GameArchive.  Record files are mapped into memory, and
+ *  each is a unit of work; each segment of an archive is a separate
+ *  unit.  Units are divided among worker threads, which take the next
+ *  unverified unit as they finish one.  Each worker replays on a single
+ *  board with no observers, snapshots, or undo history to speak of.  A
+ *  game with a discrepancy is reported and skipped; the others are
+ *  unaffected.
+ *  @author Thomas Wu
+ */
+class ReplayVerifier {
+
+    /** Largest number of failures described individually in a
+     *  Report. */
+    static final int MAX_DESCRIBED_FAILURES = 20;
+
+    /** A verifier using THREADS worker threads. */
+    ReplayVerifier(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Verify all games in SOURCES, each the name of a record file or
+     *  archive directory, and return the results.  Throws IOException if
+     *  a source cannot be opened; discrepancies within sources are
+     *  reported in the results. */
+    Report verify(List<File> sources) throws IOException {
+        long start = System.nanoTime();
+        ArrayList<Unit> units = new ArrayList<>();
+        for (File source : sources) {
+            if (source.isDirectory()) {
+                addArchive(source, units);
+            } else {
+                addRecord(source, units);
+            }
+        }
+        AtomicInteger next = new AtomicInteger();
+        int threads = Math.min(_threads, Math.max(1, units.size()));
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        for (int w = 0; w < threads; w += 1) {
+            workers[w] = new Worker(units, next);
+            if (w > 0) {
+                running[w] = new Thread(workers[w], "jump61 verifier " + w);
+                running[w].start();
+            }
+        }
+        workers[0].run();
+        Report result = workers[0].report();
+        for (int w = 1; w < threads; w += 1) {
+            boolean interrupted = false;
+            while (running[w].isAlive()) {
+                try {
+                    running[w].join();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            result.add(workers[w].report());
+        }
+        for (Worker worker : workers) {
+            if (worker._failure != null) {
+                throw worker._failure;
+            }
+        }
+        result._nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /** Add the record file FILE to UNITS as one unit. */
+    private static void addRecord(File file, List<Unit> units)
+        throws IOException {
+        GameRecordReader games;
+        if (file.length() > Integer.MAX_VALUE) {
+            games = new GameRecordReader(new FileInputStream(file));
+        } else {
+            ByteBuffer buffer;
+            FileChannel chan =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                buffer = chan.map(FileChannel.MapMode.READ_ONLY,
+                                  0, chan.size());
+            } finally {
+                chan.close();
+            }
+            byte[] header = new byte[GameRecordWriter.MAGIC.length + 1];
+            if (buffer.remaining() < header.length) {
+                throw new IOException(file + " is not a Jump61 game record");
+            }
+            buffer.get(header);
+            if (!Arrays.equals(Arrays.copyOf(header, header.length - 1),
+                               GameRecordWriter.MAGIC)) {
+                throw new IOException(file + " is not a Jump61 game record");
+            }
+            games = new GameRecordReader(buffer, header[header.length - 1]);
+        }
+        units.add(new Unit(file.getPath(), games, null, 0, -1));
+    }
+
+    /** Add each segment of the archive in directory DIR, opened for
+     *  reading only, to UNITS as a unit. */
+    private static void addArchive(File dir, List<Unit> units)
+        throws IOException {
+        GameArchive archive = GameArchive.readOnly(dir);
+        try {
+            int numGames = archive.numGames();
+            for (int id = 0, end; id < numGames; id = end) {
+                int segment = archive.segmentOf(id);
+                for (end = id + 1;
+                     end < numGames && archive.segmentOf(end) == segment;
+                     end += 1) {
+                    continue;
+                }
+                units.add(new Unit(String.format("%s segment %d", dir,
+                                                 segment),
+                                   archive.read(id),
+                                   archive.positionsFrom(id), id, end - id));
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+    /** The combined outcome of verifying a number of games. */
+    static class Report {
+
+        /** Return the number of games verified. */
+        long games() {
+            return _games;
+        }
+
+        /** Return the number of moves replayed. */
+        long moves() {
+            return _moves;
+        }
+
+        /** Return the number of failures: games with a discrepancy, and
+         *  units that could not be read to the end. */
+        long failures() {
+            return _failures;
+        }
+
+        /** Return descriptions of the first MAX_DESCRIBED_FAILURES
+         *  failures (in no particular order). */
+        List<String> descriptions() {
+            return _descriptions;
+        }
+
+        /** Return the time taken in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Record a failure described by DESCRIPTION. */
+        private void fail(String description) {
+            _failures += 1;
+            if (_descriptions.size() < MAX_DESCRIBED_FAILURES) {
+                _descriptions.add(description);
+            }
+        }
+
+        /** Add the results in OTHER to mine. */
+        private void add(Report other) {
+            _games += other._games;
+            _moves += other._moves;
+            _failures += other._failures;
+            for (String description : other._descriptions) {
+                if (_descriptions.size() < MAX_DESCRIBED_FAILURES) {
+                    _descriptions.add(description);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            double seconds = _nanos / 1e9;
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%d games, %d moves verified;"
+                                        + " %d failures; %.1f s,"
+                                        + " %.0f moves/s",
+                                        _games, _moves, _failures, seconds,
+                                        seconds == 0 ? 0.0
+                                        : _moves / seconds));
+            for (String description : _descriptions) {
+                result.append(String.format("%n  %s", description));
+            }
+            return result.toString();
+        }
+
+        /** Numbers of games verified, moves replayed, and failures. */
+        private long _games, _moves, _failures;
+        /** Descriptions of failures. */
+        private final ArrayList<String> _descriptions = new ArrayList<>();
+        /** Elapsed time (nanoseconds). */
+        private long _nanos;
+    }
+
+    /** A sequence of games verified by one worker. */
+    private static class Unit {
+
+        /** The unit called NAME consisting of the games read from GAMES,
+         *  where the first is game #FIRST of its source, and there are
+         *  COUNT games, or all remaining games if COUNT is negative.  If
+         *  POSITIONS is not null, it holds position index entries (see
+         *  GameArchive) for these games, starting at the first. */
+        Unit(String name, GameRecordReader games, ByteBuffer positions,
+             int first, int count) {
+            _name = name;
+            _games = games;
+            _positions = positions;
+            _first = first;
+            _count = count;
+        }
+
+        /** Name of my source, for reports. */
+        private final String _name;
+        /** My games. */
+        private final GameRecordReader _games;
+        /** Index entries for my games' positions, or null. */
+        private final ByteBuffer _positions;
+        /** Number of my first game in its source. */
+        private final int _first;
+        /** Number of my games, or -1 for all. */
+        private final int _count;
+    }
+
+    /** One thread's share of a verification. */
+    private static class Worker implements Runnable {
+
+        /** A worker that verifies units of UNITS, taking the next from
+         *  NEXT. */
+        Worker(List<Unit> units, AtomicInteger next) {
+            _units = units;
+            _next = next;
+            _board = new MutableBoard(Defaults.BOARD_SIZE);
+            _board.setUndoLimit(0);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int k = _next.getAndIncrement(); k < _units.size();
+                     k = _next.getAndIncrement()) {
+                    Unit unit = _units.get(k);
+                    try {
+                        try {
+                            verify(unit);
+                        } finally {
+                            unit._games.close();
+                        }
+                    } catch (IOException excp) {
+                        _report.fail(String.format("%s: %s", unit._name,
+                                                   excp.getMessage()));
+                    }
+                }
+            } catch (RuntimeException excp) {
+                _failure = excp;
+            }
+        }
+
+        /** Verify the games of UNIT, recording the results in _report. */
+        private void verify(Unit unit) throws IOException {
+            GameRecordReader games = unit._games;
+            ByteBuffer positions = unit._positions;
+            for (int g = 0; unit._count < 0 || g < unit._count; g += 1) {
+                if (!games.nextGame()) {
+                    if (unit._count >= 0) {
+                        throw new IOException("segment ends before the"
+                                              + " games in its index");
+                    }
+                    return;
+                }
+                int id = unit._first + g;
+                String failure = replay(games, positions, id);
+                _report._games += 1;
+                if (failure != null) {
+                    _report.fail(String.format("%s: game #%d: %s",
+                                               unit._name, id, failure));
+                    while (positions != null
+                           && entryGame(positions) == id) {
+                        positions.position(positions.position()
+                                           + POSITION_ENTRY);
+                    }
+                }
+            }
+        }
+
+        /** Replay the current game of GAMES, which is game #ID of its
+         *  source, on my board, checking the legality of each move and
+         *  any recorded hash of the final position, and if POSITIONS is
+         *  not null, checking each position reached against its next
+         *  entry, and advancing past it if it matches.  Returns a
+         *  description of the first discrepancy, or null if there is
+         *  none. */
+        private String replay(GameRecordReader games, ByteBuffer positions,
+                              int id) throws IOException {
+            MutableBoard board = _board;
+            games.setUp(board);
+            int ply;
+            ply = 0;
+            if (!matches(positions, id, ply)) {
+                return "starting position does not match the index";
+            }
+            for (int n = games.nextMove(); n >= 0; n = games.nextMove()) {
+                Side player = board.whoseMove();
+                if (!board.isLegal(player, n)) {
+                    return String.format("move %d (%d %d) is illegal",
+                                         ply + 1, board.row(n),
+                                         board.col(n));
+                }
+                board.addSpot(player, n);
+                ply += 1;
+                _report._moves += 1;
+                if (!matches(positions, id, ply)) {
+                    return String.format("position after move %d does not"
+                                         + " match the index", ply);
+                }
+            }
+            if (games.hasFinalHash()
+                && board.positionHash() != games.finalHash()) {
+                return "final position does not match the record";
+            }
+            if (positions != null && entryGame(positions) == id) {
+                return "index has positions after the last move";
+            }
+            return null;
+        }
+
+        /** Return true iff POSITIONS is null, or its next entry is for ply
+         *  PLY of game #ID with the hash of the position on my board, in
+         *  which case advance past it. */
+        private boolean matches(ByteBuffer positions, int id, int ply) {
+            if (positions == null) {
+                return true;
+            }
+            int at = positions.position();
+            if (positions.remaining() < POSITION_ENTRY
+                || positions.getLong(at) != _board.positionHash()
+                || positions.getInt(at + Long.BYTES) != id
+                || positions.getInt(at + Long.BYTES + Integer.BYTES) != ply) {
+                return false;
+            }
+            positions.position(at + POSITION_ENTRY);
+            return true;
+        }
+
+        /** Return the game number of the next entry of POSITIONS, or -1
+         *  if there is none. */
+        private int entryGame(ByteBuffer positions) {
+            if (positions.remaining() < POSITION_ENTRY) {
+                return -1;
+            }
+            return positions.getInt(positions.position() + Long.BYTES);
+        }
+
+        /** Return my results. */
+        Report report() {
+            return _report;
+        }
+
+        /** All units of the verification. */
+        private final List<Unit> _units;
+        /** Index in _units of the next unit to verify. */
+        private final AtomicInteger _next;
+        /** The board on which I replay games. */
+        private final MutableBoard _board;
+        /** My results so far. */
+        private final Report _report = new Report();
+        /** The exception that ended my work early, or null. */
+        private RuntimeException _failure;
+    }
+
+    /** Size of a position index entry in bytes: hash (long), game number
+     *  and ply (ints). */
+    private static final int POSITION_ENTRY =
+        Long.BYTES + 2 * Integer.BYTES;
+
+    /** Number of worker threads. */
+    private final int _threads;
+}
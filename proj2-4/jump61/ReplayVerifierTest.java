@@ -0,0 +1,143 @@
+package jump61;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of ReplayVerifier.
+ *  @author Thomas Wu
+ */
+public class ReplayVerifierTest {
+
+    /** Number of games in each test record. */
+    private static final int GAMES = 50;
+
+    /** Return a new record file of GAMES random games on 4x4 boards. */
+    private File newRecord() throws IOException {
+        File file = File.createTempFile("jump61", ".j61");
+        file.deleteOnExit();
+        Simulator sim = new Simulator(Topology.of(Topology.Kind.GRID, 4),
+                                      "random", "random", Settings.DEFAULT);
+        GameRecordWriter record =
+            new GameRecordWriter(new FileOutputStream(file));
+        sim.setRecord(record);
+        sim.run(GAMES, 61, 1);
+        record.close();
+        return file;
+    }
+
+    @Test
+    public void testValidSources() throws IOException {
+        File record = newRecord();
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 200);
+        GameRecordReader in =
+            new GameRecordReader(Files.newInputStream(record.toPath()));
+        assertEquals(GAMES, archive.appendAll(in));
+        in.close();
+        archive.close();
+        assertTrue("no segment rollover",
+                   new File(dir, "segment-00002.j61").exists());
+
+        ReplayVerifier.Report report =
+            new ReplayVerifier(3).verify(Arrays.asList(record, dir));
+        assertEquals(report.toString(), 0, report.failures());
+        assertEquals(2 * GAMES, report.games());
+        ReplayVerifier.Report one =
+            new ReplayVerifier(1).verify(Collections.singletonList(record));
+        assertEquals(2 * one.moves(), report.moves());
+    }
+
+    @Test
+    public void testCorruption() throws IOException {
+        File record = newRecord();
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 200);
+        GameRecordReader in =
+            new GameRecordReader(Files.newInputStream(record.toPath()));
+        archive.appendAll(in);
+        in.close();
+        archive.close();
+
+        RandomAccessFile index =
+            new RandomAccessFile(new File(dir, "positions.idx"), "rw");
+        index.seek(16 * 40);
+        long hash = index.readLong();
+        index.seek(16 * 40);
+        index.writeLong(~hash);
+        index.close();
+        ReplayVerifier.Report report =
+            new ReplayVerifier(2).verify(Collections.singletonList(dir));
+        assertEquals(report.toString(), 1, report.failures());
+        assertEquals(GAMES, report.games());
+        assertTrue(report.descriptions().get(0),
+                   report.descriptions().get(0).contains("does not match"));
+
+        RandomAccessFile file = new RandomAccessFile(record, "rw");
+        file.seek(5 + 1 + 8 + 1);
+        int first = file.read();
+        file.write(first);
+        file.close();
+        report =
+            new ReplayVerifier(1).verify(Collections.singletonList(record));
+        assertEquals(report.toString(), 1, report.failures());
+        assertEquals(GAMES, report.games());
+        assertTrue(report.descriptions().get(0),
+                   report.descriptions().get(0).contains("move 2 "));
+
+        record = newRecord();
+        file = new RandomAccessFile(record, "rw");
+        file.seek(file.length() - 1);
+        int last = file.read();
+        file.seek(file.length() - 1);
+        file.write(last ^ 1);
+        file.close();
+        report =
+            new ReplayVerifier(1).verify(Collections.singletonList(record));
+        assertEquals(report.toString(), 1, report.failures());
+        assertTrue(report.descriptions().get(0),
+                   report.descriptions().get(0).contains("final position"));
+    }
+
+    @Test
+    public void testReadOnly() throws IOException {
+        File record = newRecord();
+        File dir = Files.createTempDirectory("jump61").toFile();
+        GameArchive archive = new GameArchive(dir, 200, 16);
+        GameRecordReader in =
+            new GameRecordReader(Files.newInputStream(record.toPath()));
+        archive.appendAll(in);
+        in.close();
+        archive.close();
+        File stray = new File(dir, "hashes.tmp");
+        assertTrue(stray.createNewFile());
+        String[] before = dir.list();
+        Arrays.sort(before);
+
+        ReplayVerifier.Report report =
+            new ReplayVerifier(2).verify(Collections.singletonList(dir));
+        assertEquals(report.toString(), 0, report.failures());
+        String[] after = dir.list();
+        Arrays.sort(after);
+        assertEquals(Arrays.asList(before), Arrays.asList(after));
+        assertTrue(stray.exists());
+
+        archive = GameArchive.readOnly(dir);
+        assertEquals(GAMES, archive.numGames());
+        try {
+            archive.append(new MutableBoard(4), 0, new int[0], 0);
+            fail("appended to a read-only archive");
+        } catch (IOException excp) {
+            assertEquals(GAMES, archive.numGames());
+        }
+        archive.close();
+    }
+
+}
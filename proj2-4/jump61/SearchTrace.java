@@ -0,0 +1,216 @@
+package jump61;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** A trace of the searches made by AIs, written as one JSON object per
+ *  line (JSONL), for diagnosing bad or slow play.  Each line describes
+ *  one search iteration, with the fields
+ *
+ *      side      the side to move ("red" or "blue")
+ *      ply       the number of spots on the board before the move
+ *      depth     the search depth
+ *      nodes     the number of positions visited
+ *      nps       nodes per second
+ *      cutoffs   the number of searches cut off before trying every move
+ *      firstCutoffs  the number of those cut off at the first move tried
+ *      pv        the principal variation, as an array of square numbers
+ *      cache     "hit" if the move came from the position cache, "miss"
+ *                if the cache was consulted but could not supply it, or
+ *                "none" if there was no cache
+ *      nanos     the time taken, in nanoseconds
+ *
+ *  Searching threads only queue entries; a background thread formats and
+ *  writes them.  If the queue fills, further entries are dropped (and
+ *  counted in a final line {"dropped": N}) rather than delaying the
+ *  search.  AIs without a trace do not construct entries at all.
+ *  @author Thomas Wu
+ */
+class SearchTrace implements Closeable, Runnable {
+
+    /** The outcomes of consulting a position cache for a search. */
+    enum CacheUse {
+        /** No cache was consulted. */
+        NONE,
+        /** The cache supplied the move. */
+        HIT,
+        /** The cache was consulted, but did not supply the move. */
+        MISS;
+
+        /** Return my name as it appears in a trace. */
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** A trace written to OUT, which it then owns.  Starts the writing
+     *  thread. */
+    SearchTrace(Writer out) {
+        _out = new BufferedWriter(out);
+        _queue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+        _writer = new Thread(this, "jump61 search trace");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /** Add an entry for an iteration of a search for SIDE from a position
+     *  with PLY spots to depth DEPTH that visited NODES positions, cut
+     *  off CUTOFFS searches, FIRSTCUTOFFS of them at the first move tried,
+     *  found the principal variation PV, consulted the position cache
+     *  with result CACHE, and took NANOS nanoseconds. */
+    void record(Side side, int ply, int depth, long nodes, long cutoffs,
+                long firstCutoffs, int[] pv, CacheUse cache, long nanos) {
+        Entry entry = new Entry(side, ply, depth, nodes, cutoffs,
+                                firstCutoffs, pv, cache, nanos);
+        if (!_closed && _failure == null && !_queue.offer(entry)) {
+            _dropped += 1;
+        }
+    }
+
+    /** Write all queued entries and close the trace.  Entries recorded
+     *  afterwards are ignored. */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        boolean interrupted = false;
+        while (_writer.isAlive()) {
+            try {
+                if (_queue.offer(END, CLOSE_POLL_MILLIS,
+                                 TimeUnit.MILLISECONDS)) {
+                    _writer.join();
+                }
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** The writing thread: write entries as they arrive, flushing
+     *  whenever the queue empties, until END arrives. */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Entry entry = _queue.poll();
+                if (entry == null) {
+                    _out.flush();
+                    entry = take();
+                }
+                if (entry == END) {
+                    break;
+                }
+                entry.write(_out);
+            }
+            if (_dropped > 0) {
+                _out.write(String.format("{\"dropped\": %d}%n", _dropped));
+            }
+            _out.close();
+        } catch (IOException excp) {
+            _failure = excp;
+            _queue.clear();
+        }
+    }
+
+    /** Return the next entry in my queue, waiting as needed. */
+    private Entry take() {
+        while (true) {
+            try {
+                return _queue.take();
+            } catch (InterruptedException excp) {
+                continue;
+            }
+        }
+    }
+
+    /** One trace line. */
+    private static class Entry {
+        /** An entry with the given SIDE, PLY, DEPTH, NODES, CUTOFFS,
+         *  FIRSTCUTOFFS, PV, CACHE, and NANOS (see SearchTrace.record). */
+        Entry(Side side, int ply, int depth, long nodes, long cutoffs,
+              long firstCutoffs, int[] pv, CacheUse cache, long nanos) {
+            _side = side;
+            _ply = ply;
+            _depth = depth;
+            _nodes = nodes;
+            _cutoffs = cutoffs;
+            _firstCutoffs = firstCutoffs;
+            _pv = pv;
+            _cache = cache;
+            _nanos = nanos;
+        }
+
+        /** Write me on OUT as a line of JSON. */
+        void write(Writer out) throws IOException {
+            long nps =
+                _nanos == 0 ? 0 : (long) (_nodes * NANOS_PER_SECOND / _nanos);
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("{\"side\": \"%s\", \"ply\": %d, "
+                                      + "\"depth\": %d, \"nodes\": %d, "
+                                      + "\"nps\": %d, \"cutoffs\": %d, "
+                                      + "\"firstCutoffs\": %d, \"pv\": [",
+                                      _side, _ply, _depth, _nodes, nps,
+                                      _cutoffs, _firstCutoffs));
+            for (int i = 0; i < _pv.length; i += 1) {
+                line.append(i == 0 ? "" : ", ").append(_pv[i]);
+            }
+            line.append(String.format("], \"cache\": \"%s\", "
+                                      + "\"nanos\": %d}%n", _cache, _nanos));
+            out.write(line.toString());
+        }
+
+        /** Side to move. */
+        private final Side _side;
+        /** Spots on the board, search depth. */
+        private final int _ply, _depth;
+        /** Nodes visited, cutoffs, cutoffs at the first move. */
+        private final long _nodes, _cutoffs, _firstCutoffs;
+        /** Principal variation. */
+        private final int[] _pv;
+        /** Result of consulting the position cache. */
+        private final CacheUse _cache;
+        /** Time taken. */
+        private final long _nanos;
+    }
+
+    /** Maximum number of entries awaiting the writing thread. */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /** Milliseconds between attempts to queue END while closing. */
+    private static final long CLOSE_POLL_MILLIS = 100;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Marks the end of the queue. */
+    private static final Entry END =
+        new Entry(Side.WHITE, 0, 0, 0, 0, 0, new int[0], CacheUse.NONE, 0);
+
+    /** Destination of the trace. */
+    private final BufferedWriter _out;
+    /** Entries waiting to be written. */
+    private final BlockingQueue<Entry> _queue;
+    /** The writing thread. */
+    private final Thread _writer;
+    /** Number of entries dropped because the queue was full.  Updated
+     *  only by searching threads (of which there is at present one). */
+    private volatile long _dropped;
+    /** True once I have been closed. */
+    private volatile boolean _closed;
+    /** Error encountered by the writing thread, if any. */
+    private volatile IOException _failure;
+}
@@ -0,0 +1,60 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+
+/** Unit tests of SearchTrace.
+ *  @author Thomas Wu
+ */
+public class SearchTraceTest {
+
+    @Test
+    public void testTrace() throws IOException {
+        StringWriter out = new StringWriter();
+        SearchTrace trace = new SearchTrace(out);
+        trace.record(RED, 5, 3, 2000, 7, 5, new int[] { 4, 0 },
+                     SearchTrace.CacheUse.MISS, 1000000);
+        trace.record(BLUE, 6, 3, 10, 0, 0, new int[] { 8 },
+                     SearchTrace.CacheUse.HIT, 0);
+        trace.close();
+        trace.record(RED, 7, 3, 10, 0, 0, new int[] { 1 },
+                     SearchTrace.CacheUse.NONE, 0);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"side\": \"red\", \"ply\": 5, \"depth\": 3, "
+                     + "\"nodes\": 2000, \"nps\": 2000000, \"cutoffs\": 7, "
+                     + "\"firstCutoffs\": 5, \"pv\": [4, 0], "
+                     + "\"cache\": \"miss\", \"nanos\": 1000000}",
+                     lines[0].trim());
+        assertTrue(lines[1].contains("\"side\": \"blue\""));
+        assertTrue(lines[1].contains("\"pv\": [8]"));
+        assertTrue(lines[1].contains("\"cache\": \"hit\""));
+    }
+
+    @Test
+    public void testGameTrace() {
+        StringWriter out = new StringWriter(), traced = new StringWriter();
+        Game game =
+            new Game(new StringReader("seed 61\nsize 4\nauto red\n"
+                                      + "auto blue\nstart\n"),
+                     out, out, new StringWriter(), true);
+        game.setSearchTrace(new SearchTrace(traced));
+        game.play();
+        assertTrue(out.toString().contains("wins"));
+        int longest = 0;
+        for (String line : traced.toString().split("\n")) {
+            assertTrue(line, line.contains("\"cache\": \"none\""));
+            String pv =
+                line.replaceAll(".*\"pv\": \\[([^\\]]*)\\].*", "$1");
+            longest = Math.max(longest, pv.split(", ").length);
+        }
+        assertTrue("no line beyond the move chosen", longest > 1);
+    }
+
+}
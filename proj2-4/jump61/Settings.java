@@ -0,0 +1,269 @@
+package jump61;
+
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static jump61.GameException.error;
+
+/** The tunable parameters of a session: the initial board size and the
+ *  settings of the automated players.  Settings come from a properties
+ *  file and from command-line options (see Main), using the keys
+ *
+ *      size     initial board size
+ *      topology initial board topology (grid, torus, or hex)
+ *      depth    AI search depth: plies searched after each candidate
+ *               move, before any quiescence search
+ *      time     AI time budget per move (milliseconds)
+ *      nodes    AI search budget per move (positions visited); if
+ *               positive, it replaces the time budget, so that searches
+ *               do not depend on the speed of the machine, and seeded
+ *               games between AIs are reproducible (0 for none)
+ *      quiesce  number of positions an AI's quiescence search may visit
+ *               per move (0 to disable it)
+ *      threads  number of threads AIs may use
+ *      hash     size of AI position tables, including the in-memory
+ *               part of the position cache (megabytes)
+ *      cachesize  size of a newly created position cache file
+ *               (megabytes; see PositionCache)
+ *      eval     name of the AI's static evaluator (one of EVALUATORS)
+ *      weights  file of weights for the learned evaluator (see
+ *               EvalWeights), required if eval is "learned"
+ *
+ *  Any of them may be missing, in which case the value from Defaults is
+ *  used.  Settings are immutable.
+ *  @author Thomas Wu
+ */
+class Settings {
+
+    /** Property keys. */
+    static final String
+        SIZE = "size", TOPOLOGY = "topology", DEPTH = "depth", TIME = "time",
+        NODES = "nodes", QUIESCE = "quiesce", THREADS = "threads",
+        HASH = "hash", EVAL = "eval", WEIGHTS = "weights",
+        CACHE_SIZE = "cachesize";
+
+    /** All property keys. */
+    static final String[] KEYS = {
+        SIZE, TOPOLOGY, DEPTH, TIME, NODES, QUIESCE, THREADS, HASH, EVAL,
+        WEIGHTS, CACHE_SIZE,
+    };
+
+    /** Names of the available static evaluators: the difference in
+     *  numbers of squares owned, and the function of local features whose
+     *  weights are given by the weights setting.  The first is the
+     *  default. */
+    static final String[] EVALUATORS = { "material", "learned" };
+
+    /** The settings used when none are specified. */
+    static final Settings DEFAULT = new Settings();
+
+    /** The default settings. */
+    private Settings() {
+        _boardSize = Defaults.BOARD_SIZE;
+        _topology = Topology.Kind.GRID;
+        _searchDepth = Defaults.SEARCH_DEPTH;
+        _timeLimit = Defaults.TIME_LIMIT;
+        _searchNodes = Defaults.SEARCH_NODES;
+        _quiescenceNodes = Defaults.QUIESCENCE_NODES;
+        _threads = Defaults.THREADS;
+        _hashSize = Defaults.HASH_SIZE;
+        _cacheSize = Defaults.CACHE_SIZE;
+        _evaluator = EVALUATORS[0];
+        _weights = null;
+    }
+
+    /** The settings in PROPS, taking any missing values from DEFAULT.
+     *  Throws a GameException if a value is malformed or out of range,
+     *  or if PROPS contains an unknown key. */
+    Settings(Properties props) {
+        for (String key : props.stringPropertyNames()) {
+            if (!Arrays.asList(KEYS).contains(key)) {
+                throw error("unknown setting: '%s'", key);
+            }
+        }
+        _boardSize = intValue(props, SIZE, DEFAULT._boardSize,
+                              2, Defaults.MAX_BOARD_SIZE);
+        _topology =
+            props.containsKey(TOPOLOGY)
+            ? Topology.parseKind(props.getProperty(TOPOLOGY).trim())
+            : DEFAULT._topology;
+        _searchDepth = intValue(props, DEPTH, DEFAULT._searchDepth,
+                                0, Defaults.MAX_SEARCH_DEPTH);
+        _timeLimit = intValue(props, TIME, (int) DEFAULT._timeLimit,
+                              1, Integer.MAX_VALUE);
+        _searchNodes = intValue(props, NODES, DEFAULT._searchNodes,
+                                0, Integer.MAX_VALUE);
+        _quiescenceNodes = intValue(props, QUIESCE, DEFAULT._quiescenceNodes,
+                                    0, Integer.MAX_VALUE);
+        _threads = intValue(props, THREADS, DEFAULT._threads,
+                            1, Defaults.MAX_THREADS);
+        _hashSize = intValue(props, HASH, DEFAULT._hashSize,
+                             0, Defaults.MAX_HASH_SIZE);
+        _cacheSize = intValue(props, CACHE_SIZE, DEFAULT._cacheSize,
+                              1, Defaults.MAX_CACHE_SIZE);
+        _evaluator = props.getProperty(EVAL, DEFAULT._evaluator).trim();
+        if (!Arrays.asList(EVALUATORS).contains(_evaluator)) {
+            throw error("unknown evaluator: '%s'", _evaluator);
+        }
+        String weights = props.getProperty(WEIGHTS);
+        if (_evaluator.equals("learned") && weights == null) {
+            throw error("the learned evaluator requires a weights file");
+        }
+        _weights =
+            _evaluator.equals("learned") ? readWeights(weights.trim()) : null;
+    }
+
+    /** Return the properties in the file named NAME, as for
+     *  Properties.load. */
+    static Properties readProperties(String name) throws IOException {
+        Properties result = new Properties();
+        Reader in = new FileReader(name);
+        try {
+            result.load(in);
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    /** Return the weights in the file named NAME.  Throws a GameException
+     *  if they cannot be read. */
+    private static EvalWeights readWeights(String name) {
+        try {
+            InputStream in = new FileInputStream(name);
+            try {
+                return EvalWeights.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not read weights from %s: %s", name,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the initial board size. */
+    int boardSize() {
+        return _boardSize;
+    }
+
+    /** Return the kind of topology of the initial board. */
+    Topology.Kind topology() {
+        return _topology;
+    }
+
+    /** Return the depth to which AIs search: the number of plies they
+     *  search after each move they consider (0 to evaluate the moves
+     *  with quiescence search alone). */
+    int searchDepth() {
+        return _searchDepth;
+    }
+
+    /** Return the time in milliseconds an AI may take for one move. */
+    long timeLimit() {
+        return _timeLimit;
+    }
+
+    /** Return the number of positions an AI's search may visit per move,
+     *  or 0 if it is limited by timeLimit() instead. */
+    int searchNodes() {
+        return _searchNodes;
+    }
+
+    /** Return the number of positions an AI's quiescence search may visit
+     *  per move. */
+    int quiescenceNodes() {
+        return _quiescenceNodes;
+    }
+
+    /** Return the number of threads an AI may use. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the number of megabytes an AI may use for tables of
+     *  positions. */
+    int hashSize() {
+        return _hashSize;
+    }
+
+    /** Return the number of megabytes to give a newly created position
+     *  cache file. */
+    int cacheSize() {
+        return _cacheSize;
+    }
+
+    /** Return a 64-bit key standing for the settings that affect the
+     *  value an AI finds for a position searched to a given depth: its
+     *  evaluator and quiescence budget.  It distinguishes the results of
+     *  differently configured searches in a PositionCache. */
+    long searchKey() {
+        long result = _weights == null ? 0 : _weights.fingerprint();
+        result ^= _evaluator.hashCode() * SEARCH_KEY_MULTIPLIER;
+        return result ^ (long) _quiescenceNodes << Integer.SIZE;
+    }
+
+    /** Return the name of the static evaluator AIs use (one of
+     *  EVALUATORS). */
+    String evaluator() {
+        return _evaluator;
+    }
+
+    /** Return the weights of the learned evaluator, or null if the
+     *  evaluator is not "learned". */
+    EvalWeights weights() {
+        return _weights;
+    }
+
+    /** Return the integer value of KEY in PROPS, or DEFLT if it is
+     *  absent.  The value must be in the range [LOW, HIGH]. */
+    private static int intValue(Properties props, String key, int deflt,
+                                int low, int high) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            return deflt;
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw error("%s must be an integer: '%s'", key, value);
+        }
+        if (result < low || result > high) {
+            throw error("%s is out of the range [%d, %d]", key, low, high);
+        }
+        return result;
+    }
+
+    /** Odd multiplier spreading the bits of the evaluator's name in
+     *  searchKey. */
+    private static final long SEARCH_KEY_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Initial board size. */
+    private final int _boardSize;
+    /** Initial board topology. */
+    private final Topology.Kind _topology;
+    /** AI search depth. */
+    private final int _searchDepth;
+    /** AI time budget per move (milliseconds). */
+    private final long _timeLimit;
+    /** AI search budget per move (positions), or 0. */
+    private final int _searchNodes;
+    /** Quiescence search budget per move (positions). */
+    private final int _quiescenceNodes;
+    /** Threads available to an AI. */
+    private final int _threads;
+    /** Megabytes available for AI position tables. */
+    private final int _hashSize;
+    /** Megabytes of a new position cache file. */
+    private final int _cacheSize;
+    /** Name of the AI's static evaluator. */
+    private final String _evaluator;
+    /** Weights of the learned evaluator, or null. */
+    private final EvalWeights _weights;
+}
@@ -0,0 +1,46 @@
+package jump61;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Unit tests of Settings.
+ *  @author Thomas Wu
+ */
+public class SettingsTest {
+
+    @Test
+    public void testSettings() {
+        Properties props = new Properties();
+        Settings settings = new Settings(props);
+        assertEquals(Defaults.BOARD_SIZE, settings.boardSize());
+        assertEquals(Defaults.SEARCH_DEPTH, settings.searchDepth());
+        assertEquals(Settings.EVALUATORS[0], settings.evaluator());
+        assertEquals(Defaults.SEARCH_NODES, settings.searchNodes());
+
+        props.setProperty(Settings.DEPTH, " 5 ");
+        props.setProperty(Settings.TIME, "250");
+        props.setProperty(Settings.NODES, "100000");
+        settings = new Settings(props);
+        assertEquals(100000, settings.searchNodes());
+        assertEquals(5, settings.searchDepth());
+        assertEquals(250, settings.timeLimit());
+        assertEquals(Defaults.THREADS, settings.threads());
+    }
+
+    @Test(expected = GameException.class)
+    public void testBadValue() {
+        Properties props = new Properties();
+        props.setProperty(Settings.SIZE, "1");
+        new Settings(props);
+    }
+
+    @Test(expected = GameException.class)
+    public void testBadKey() {
+        Properties props = new Properties();
+        props.setProperty("dpeth", "4");
+        new Settings(props);
+    }
+
+}
@@ -0,0 +1,405 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static jump61.GameException.error;
+import static jump61.Side.*;
+
+/** Plays many games between automated policies, with no Game, display,
+ *  or observers, and gathers statistics about their outcomes.  Used to
+ *  compare policies and to measure the engine (see --simulate in Main).
+ *
+ *  The games are divided among a number of worker threads.  Each worker
+ *  plays its share of games on a single board, cleared (without
+ *  allocation) between games, and with its own instances of the two
+ *  policies.  Game #G of a simulation with seed S has seed
+ *  RandomStreams.gameSeed(S, G), and each side draws from that game's
+ *  stream for the side, exactly as in a Game.  So the results of a
+ *  simulation depend only on its seed and settings, and not on how many
+ *  threads it uses or how they are scheduled, and any one of its games
+ *  can be replayed on its own, provided that ai policies search to a
+ *  budget of positions (see Settings.searchNodes): with a budget of time
+ *  alone, how far they search depends on the machine and its load.
+ *
+ *  The games may also be recorded (see setRecord), as material for
+ *  Trainer.  Each game is written whole once finished, so that the order
+ *  of games in the record depends on scheduling, but not their contents.
+ *  @author Thomas Wu
+ */
+class Simulator {
+
+    /** Names of the available policies, which are
+     *      random  a uniformly random legal move;
+     *      greedy  a move that maximizes the number of the mover's
+     *              squares less the opponent's after one ply, with ties
+     *              broken at random;
+     *      ai      the move an AI would choose under the simulation's
+     *              settings. */
+    static final String[] POLICIES = { "random", "greedy", "ai" };
+
+    /** Number of moves per square after which a game is abandoned as
+     *  unfinished. */
+    static final int MOVES_PER_SQUARE = 64;
+
+    /** Number of levels of undo history kept on each worker's board:
+     *  enough for any policy. */
+    private static final int UNDO_LIMIT =
+        Defaults.MAX_SEARCH_DEPTH + Defaults.MAX_QUIESCENCE_DEPTH + 1;
+
+    /** Number of random squares the random policy tries before searching
+     *  for a legal move systematically. */
+    private static final int RANDOM_TRIES = 64;
+
+    /** A way of choosing moves. */
+    interface Policy {
+        /** Return a legal move for P on board B, which is not yet won,
+         *  making any random choices with RANDOM.  The contents of B are
+         *  invariant over this call, which uses at most UNDO_LIMIT levels
+         *  of B's undo history. */
+        int move(Side p, MutableBoard b, SplittableRandom random);
+    }
+
+    /** A simulator of games on boards with topology TOPOLOGY (which must
+     *  be square) between policies RED and BLUE (each one of POLICIES),
+     *  with AIs using SETTINGS.  Throws a GameException if a policy is
+     *  unknown. */
+    Simulator(Topology topology, String red, String blue,
+              Settings settings) {
+        for (String name : new String[] { red, blue }) {
+            if (!Arrays.asList(POLICIES).contains(name)) {
+                throw error("unknown policy: '%s'", name);
+            }
+        }
+        _topology = topology;
+        _red = red;
+        _blue = blue;
+        _settings = settings;
+        _blank = new MutableBoard(topology);
+    }
+
+    /** Record all subsequently simulated games on RECORD, or stop
+     *  recording if RECORD is null. */
+    void setRecord(GameRecordWriter record) {
+        _record = record;
+    }
+
+    /** Return a new instance of the policy named NAME (one of POLICIES)
+     *  whose AI, if any, uses SETTINGS. */
+    static Policy policy(String name, Settings settings) {
+        switch (name) {
+        case "random":
+            return new Policy() {
+                @Override
+                public int move(Side p, MutableBoard b,
+                                SplittableRandom random) {
+                    return randomMove(p, b, random);
+                }
+            };
+        case "greedy":
+            return new Policy() {
+                @Override
+                public int move(Side p, MutableBoard b,
+                                SplittableRandom random) {
+                    return greedyMove(p, b, random);
+                }
+            };
+        case "ai":
+            final AI ai = new AI(settings);
+            return new Policy() {
+                @Override
+                public int move(Side p, MutableBoard b,
+                                SplittableRandom random) {
+                    return ai.findMove(p, b, random);
+                }
+            };
+        default:
+            throw error("unknown policy: '%s'", name);
+        }
+    }
+
+    /** Play GAMES games using THREADS worker threads, with random choices
+     *  determined by SEED, and return the combined results.  An exception
+     *  in any worker is rethrown once all workers have finished; a
+     *  failure to write the record is reported as an
+     *  UncheckedIOException. */
+    Results run(int games, long seed, int threads) {
+        threads = Math.max(1, Math.min(threads, games));
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        long start = System.nanoTime();
+        for (int w = 0; w < threads; w += 1) {
+            int first = (int) ((long) games * w / threads),
+                last = (int) ((long) games * (w + 1) / threads);
+            workers[w] = new Worker(first, last, seed);
+            if (w > 0) {
+                running[w] = new Thread(workers[w], "jump61 simulator " + w);
+                running[w].start();
+            }
+        }
+        workers[0].run();
+        Results result = workers[0].results();
+        for (int w = 1; w < threads; w += 1) {
+            boolean interrupted = false;
+            while (running[w].isAlive()) {
+                try {
+                    running[w].join();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            result.add(workers[w].results());
+        }
+        for (Worker worker : workers) {
+            if (worker._failure != null) {
+                throw worker._failure;
+            }
+        }
+        result._nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /** Return a uniformly random legal move for P on B, chosen with
+     *  RANDOM. */
+    static int randomMove(Side p, Board b, SplittableRandom random) {
+        int all = b.size() * b.size();
+        for (int tries = 0; tries < RANDOM_TRIES; tries += 1) {
+            int n = random.nextInt(all);
+            if (b.isLegal(p, n)) {
+                return n;
+            }
+        }
+        int start = random.nextInt(all);
+        for (int k = 0; k < all; k += 1) {
+            if (b.isLegal(p, (start + k) % all)) {
+                return (start + k) % all;
+            }
+        }
+        throw new IllegalStateException("no legal moves");
+    }
+
+    /** Return the legal move for P on B that leaves the largest number of
+     *  P's squares less the opponent's, choosing among equally good moves
+     *  with RANDOM.  The contents of B are invariant over this call. */
+    static int greedyMove(Side p, MutableBoard b, SplittableRandom random) {
+        int all = b.size() * b.size();
+        int best, bestValue, ties;
+        best = -1;
+        bestValue = Integer.MIN_VALUE;
+        ties = 0;
+        for (int n = 0; n < all; n += 1) {
+            if (b.isLegal(p, n)) {
+                b.addSpot(p, n);
+                int value = b.numOfSide(p) - b.numOfSide(p.opposite());
+                b.undo();
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = n;
+                    ties = 1;
+                } else if (value == bestValue) {
+                    ties += 1;
+                    if (random.nextInt(ties) == 0) {
+                        best = n;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** The combined outcome of a number of simulated games. */
+    static class Results {
+
+        /** Return the number of games played. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the number of games won by SIDE (RED or BLUE). */
+        int wins(Side side) {
+            return side == RED ? _redWins : _blueWins;
+        }
+
+        /** Return the number of games abandoned after MOVES_PER_SQUARE
+         *  moves per square. */
+        int unfinished() {
+            return _games - _redWins - _blueWins;
+        }
+
+        /** Return the total number of moves in all games. */
+        long moves() {
+            return _moves;
+        }
+
+        /** Return the smallest number of moves in a game, or 0 if none
+         *  were played. */
+        int minMoves() {
+            return _games == 0 ? 0 : _minMoves;
+        }
+
+        /** Return the largest number of moves in a game. */
+        int maxMoves() {
+            return _maxMoves;
+        }
+
+        /** Return the mean number of moves per game. */
+        double meanMoves() {
+            return _games == 0 ? 0.0 : (double) _moves / _games;
+        }
+
+        /** Return the time taken by the simulation in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Record a game of MOVES moves won by WINNER (null if the game
+         *  was unfinished). */
+        private void add(Side winner, int moves) {
+            _games += 1;
+            if (winner == RED) {
+                _redWins += 1;
+            } else if (winner == BLUE) {
+                _blueWins += 1;
+            }
+            _moves += moves;
+            _minMoves = Math.min(_minMoves, moves);
+            _maxMoves = Math.max(_maxMoves, moves);
+        }
+
+        /** Add the games recorded in OTHER to mine. */
+        private void add(Results other) {
+            _games += other._games;
+            _redWins += other._redWins;
+            _blueWins += other._blueWins;
+            _moves += other._moves;
+            _minMoves = Math.min(_minMoves, other._minMoves);
+            _maxMoves = Math.max(_maxMoves, other._maxMoves);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = _nanos / 1e9;
+            return String.format("%d games: red %d, blue %d, unfinished %d;"
+                                 + " moves %d min, %.1f mean, %d max;"
+                                 + " %.1f s, %.0f games/s",
+                                 _games, _redWins, _blueWins, unfinished(),
+                                 minMoves(), meanMoves(), _maxMoves,
+                                 seconds,
+                                 seconds == 0 ? 0.0 : _games / seconds);
+        }
+
+        /** Numbers of games played and won by each side. */
+        private int _games, _redWins, _blueWins;
+        /** Total number of moves. */
+        private long _moves;
+        /** Fewest and most moves in a game. */
+        private int _minMoves = Integer.MAX_VALUE, _maxMoves;
+        /** Elapsed time of the simulation (nanoseconds). */
+        private long _nanos;
+    }
+
+    /** One thread's share of a simulation. */
+    private class Worker implements Runnable {
+
+        /** A worker that plays games #FIRST to #LAST-1 of a simulation
+         *  with seed SEED. */
+        Worker(int first, int last, long seed) {
+            _first = first;
+            _last = last;
+            _seed = seed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                play();
+            } catch (RuntimeException excp) {
+                _failure = excp;
+            }
+        }
+
+        /** Play my games, accumulating their outcomes in _results. */
+        private void play() {
+            MutableBoard board = new MutableBoard(_topology);
+            board.setUndoLimit(UNDO_LIMIT);
+            Policy red = policy(_red, _settings),
+                blue = policy(_blue, _settings);
+            int limit = MOVES_PER_SQUARE * _topology.numCells();
+            for (int g = _first; g < _last; g += 1) {
+                long gameSeed = RandomStreams.gameSeed(_seed, g);
+                SplittableRandom redRandom =
+                    RandomStreams.stream(gameSeed, RED),
+                    blueRandom = RandomStreams.stream(gameSeed, BLUE);
+                board.clear(_topology);
+                int moves;
+                for (moves = 0; board.getWinner() == null && moves < limit;
+                     moves += 1) {
+                    Side p = board.whoseMove();
+                    int n =
+                        p == RED ? red.move(p, board, redRandom)
+                        : blue.move(p, board, blueRandom);
+                    board.addSpot(p, n);
+                    if (_record != null) {
+                        if (moves == _moves.length) {
+                            _moves = Arrays.copyOf(_moves, 2 * moves);
+                        }
+                        _moves[moves] = n;
+                    }
+                }
+                if (_record != null) {
+                    record(gameSeed, moves, board.positionHash());
+                }
+                _results.add(board.getWinner(), moves);
+            }
+        }
+
+        /** Add my current game, which had seed SEED, whose moves are
+         *  _moves[0 .. NUMMOVES-1], and whose final position has hash
+         *  FINALHASH, to the record. */
+        private void record(long seed, int numMoves, long finalHash) {
+            synchronized (_record) {
+                try {
+                    _record.beginGame(_blank, seed);
+                    for (int k = 0; k < numMoves; k += 1) {
+                        _record.move(_moves[k]);
+                    }
+                    _record.endGame(finalHash);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            }
+        }
+
+        /** Return the results of my games. */
+        Results results() {
+            return _results;
+        }
+
+        /** Numbers of my first game and of the game after my last. */
+        private final int _first, _last;
+        /** Seed of the simulation. */
+        private final long _seed;
+        /** The outcomes of my games so far. */
+        private final Results _results = new Results();
+        /** The moves of my current game, if it is being recorded. */
+        private int[] _moves = new int[64];
+        /** The exception that ended my games early, or null. */
+        private RuntimeException _failure;
+    }
+
+    /** Topology of the boards played on. */
+    private final Topology _topology;
+    /** Names of the policies of the two sides. */
+    private final String _red, _blue;
+    /** Settings for AI policies. */
+    private final Settings _settings;
+    /** Destination for records of games, or null. */
+    private volatile GameRecordWriter _record;
+    /** A cleared board, the starting position of every game. */
+    private final MutableBoard _blank;
+}
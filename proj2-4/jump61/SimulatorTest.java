@@ -0,0 +1,83 @@
+package jump61;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of Simulator.
+ *  @author Thomas Wu
+ */
+public class SimulatorTest {
+
+    /** Settings for quick AI searches. */
+    private Settings quickSettings() {
+        Properties props = new Properties();
+        props.setProperty(Settings.DEPTH, "1");
+        return new Settings(props);
+    }
+
+    @Test
+    public void testResults() {
+        Simulator sim =
+            new Simulator(Topology.of(GRID, 4), "random", "greedy",
+                          Settings.DEFAULT);
+        Simulator.Results r1 = sim.run(200, 61, 3),
+            r2 = sim.run(200, 61, 1);
+        assertEquals(200, r1.games());
+        assertEquals(0, r1.unfinished());
+        assertEquals(200, r1.wins(RED) + r1.wins(BLUE));
+        assertEquals(r1.wins(RED), r2.wins(RED));
+        assertEquals(r1.moves(), r2.moves());
+        assertTrue(r1.minMoves() <= r1.meanMoves());
+        assertTrue(r1.meanMoves() <= r1.maxMoves());
+        assertTrue(r1.wins(BLUE) > r1.wins(RED));
+    }
+
+    @Test
+    public void testPoliciesPreserveBoard() {
+        SplittableRandom random = new SplittableRandom(1);
+        MutableBoard B = new MutableBoard(Topology.of(HEX, 4));
+        for (int k = 0; k < 12; k += 1) {
+            Side p = B.whoseMove();
+            B.addSpot(p, Simulator.randomMove(p, B, random));
+        }
+        MutableBoard copy = new MutableBoard(B);
+        for (String name : Simulator.POLICIES) {
+            Simulator.Policy policy =
+                Simulator.policy(name, quickSettings());
+            int n = policy.move(B.whoseMove(), B, random);
+            assertTrue(name, B.isLegal(B.whoseMove(), n));
+            assertEquals(name, copy, B);
+        }
+        for (int k = 0; k < 12; k += 1) {
+            B.undo();
+        }
+        assertEquals(new MutableBoard(B.topology()), B);
+    }
+
+    @Test
+    public void testQuiescence() {
+        Properties props = new Properties();
+        props.setProperty(Settings.DEPTH, "0");
+        Settings settings = new Settings(props);
+        Simulator first =
+            new Simulator(Topology.of(GRID, 5), "ai", "greedy", settings),
+            second =
+            new Simulator(Topology.of(GRID, 5), "greedy", "ai", settings);
+        int wins = first.run(20, 61, 2).wins(RED)
+            + second.run(20, 61, 2).wins(BLUE);
+        assertTrue(wins > 30);
+    }
+
+    @Test(expected = GameException.class)
+    public void testBadPolicy() {
+        new Simulator(Topology.of(GRID, 4), "random", "clever",
+                      Settings.DEFAULT);
+    }
+
+}
@@ -0,0 +1,300 @@
+package jump61;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Broadcasts the changes to a Board to any number of spectators
+ *  connected to a local TCP port.  The thread making changes only encodes
+ *  each change and queues it; a separate thread copies queued messages
+ *  into a bounded buffer for each spectator and sends them with
+ *  non-blocking writes.  A spectator whose buffer fills is disconnected,
+ *  so that slow spectators never hold up the game or each other.
+ *
+ *  Each message is a varint length followed by that many bytes:
+ *
+ *      message  ::= SNAPSHOT version size shape cell{size*size}
+ *                |  CHANGE version move count change{count} winner
+ *      change   ::= varint (square number) cell
+ *      cell     ::= varint (4 * spots + side code, as for GameRecordWriter)
+ *      move     ::= varint (square moved to + 1, or 0 if the change was
+ *                           not a move)
+ *      winner   ::= byte (side code of the winner, or 0 if none)
+ *      shape    ::= byte (ordinal of the board's Topology.Kind)
+ *
+ *  where version is the snapshot version (a varint) of the position after
+ *  the change.  A spectator first receives a SNAPSHOT of the position
+ *  when it connected, and then the CHANGEs with later versions.
+ *  @author Thomas Wu
+ */
+class SpectatorFeed implements Observer, Closeable, Runnable {
+
+    /** Message type codes. */
+    static final int SNAPSHOT = 1, CHANGE = 2;
+
+    /** A feed of the changes to BOARD (which must publish snapshots),
+     *  accepting spectators on local port PORT (or any free port if PORT
+     *  is 0).  Starts the feed's sending thread. */
+    SpectatorFeed(Board board, int port) throws IOException {
+        _board = board;
+        _queue = new ConcurrentLinkedQueue<Message>();
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                           port));
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+        _nextMove = -1;
+        board.addObserver(this);
+        Thread sender = new Thread(this, "jump61 spectator feed");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /** Return the port on which I accept spectators. */
+    int port() {
+        return _server.socket().getLocalPort();
+    }
+
+    /** Indicate that the next change to my board will be a move to
+     *  square #N. */
+    void nextMove(int n) {
+        _nextMove = n;
+    }
+
+    /** Queue a message describing the change to my board described by
+     *  ARG (a BoardDelta, if it is not total). */
+    @Override
+    public void update(Observable obs, Object arg) {
+        BoardSnapshot snap = _board.snapshot();
+        int move = _nextMove;
+        _nextMove = -1;
+        if (!(arg instanceof BoardDelta) || ((BoardDelta) arg).isTotal()) {
+            send(snapshotMessage(snap));
+            return;
+        }
+        BoardDelta delta = (BoardDelta) arg;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(CHANGE);
+        writeVarint(out, snap.version());
+        writeVarint(out, move + 1);
+        writeVarint(out, delta.numChanged());
+        for (int k = 0; k < delta.numChanged(); k += 1) {
+            int n = delta.changed(k);
+            writeVarint(out, n);
+            writeVarint(out, GameRecordWriter.cellCode(snap.get(n)));
+        }
+        Side winner = snap.getWinner();
+        out.write(winner == null ? 0
+                  : Arrays.asList(GameRecordWriter.SIDE_CODES).indexOf(winner));
+        send(new Message(snap.version(), out));
+    }
+
+    /** Disconnect all spectators and stop the feed. */
+    @Override
+    public void close() throws IOException {
+        _board.deleteObserver(this);
+        _closed = true;
+        _selector.wakeup();
+    }
+
+    /** The sending thread: accept spectators and send them queued
+     *  messages until closed. */
+    @Override
+    public void run() {
+        try {
+            while (!_closed) {
+                _selector.select();
+                for (Message msg = _queue.poll(); msg != null;
+                     msg = _queue.poll()) {
+                    for (SelectionKey key : _selector.keys()) {
+                        if (key.attachment() != null) {
+                            enqueue(key, msg);
+                        }
+                    }
+                }
+                Iterator<SelectionKey> keys =
+                    _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isWritable()) {
+                        flush(key);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: spectator feed failed: %s%n",
+                              excp.getMessage());
+        } finally {
+            shutDown();
+        }
+    }
+
+    /** Queue MSG for sending and wake the sending thread. */
+    private void send(Message msg) {
+        _queue.add(msg);
+        _selector.wakeup();
+    }
+
+    /** Accept a new spectator, if one is waiting, and send it a snapshot
+     *  of the current position. */
+    private void accept() throws IOException {
+        SocketChannel chan = _server.accept();
+        if (chan == null) {
+            return;
+        }
+        chan.configureBlocking(false);
+        Message snap = snapshotMessage(_board.snapshot());
+        Client client = new Client(snap.version,
+                                   Math.max(CLIENT_BUFFER_SIZE,
+                                            snap.bytes.length));
+        SelectionKey key = chan.register(_selector, 0, client);
+        client.buffer.put(snap.bytes);
+        flush(key);
+    }
+
+    /** Add MSG to the buffer of the spectator with KEY, unless the
+     *  spectator has already seen its version, disconnecting the
+     *  spectator if its buffer is full, and try to send it. */
+    private void enqueue(SelectionKey key, Message msg) {
+        Client client = (Client) key.attachment();
+        if (msg.version <= client.since) {
+            return;
+        }
+        if (client.buffer.remaining() < msg.bytes.length) {
+            drop(key);
+            return;
+        }
+        client.buffer.put(msg.bytes);
+        flush(key);
+    }
+
+    /** Write as much as possible of the buffer of the spectator with KEY
+     *  without blocking, arranging to be told when more may be written if
+     *  anything remains.  Disconnects the spectator on error. */
+    private void flush(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        try {
+            client.buffer.flip();
+            ((SocketChannel) key.channel()).write(client.buffer);
+            client.buffer.compact();
+            key.interestOps(client.buffer.position() > 0
+                            ? SelectionKey.OP_WRITE : 0);
+        } catch (IOException excp) {
+            drop(key);
+        }
+    }
+
+    /** Disconnect the spectator with KEY. */
+    private void drop(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Close all channels. */
+    private void shutDown() {
+        for (SelectionKey key : _selector.keys()) {
+            drop(key);
+        }
+        try {
+            _selector.close();
+            _server.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return a SNAPSHOT message for SNAP. */
+    private static Message snapshotMessage(BoardSnapshot snap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SNAPSHOT);
+        writeVarint(out, snap.version());
+        int N = snap.size();
+        writeVarint(out, N);
+        out.write(snap.topology().kind().ordinal());
+        for (int n = 0; n < N * N; n += 1) {
+            writeVarint(out, GameRecordWriter.cellCode(snap.get(n)));
+        }
+        return new Message(snap.version(), out);
+    }
+
+    /** Write non-negative V to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /** An encoded message, with its length prefix. */
+    private static class Message {
+        /** A message for snapshot version VERSION whose body is in
+         *  BODY. */
+        Message(long version, ByteArrayOutputStream body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarint(out, body.size());
+            out.write(body.toByteArray(), 0, body.size());
+            this.version = version;
+            this.bytes = out.toByteArray();
+        }
+
+        /** Snapshot version of the position after the message. */
+        private final long version;
+        /** The encoded message. */
+        private final byte[] bytes;
+    }
+
+    /** The state of one spectator. */
+    private static class Client {
+        /** A spectator that has seen all changes up to version SINCE,
+         *  with CAPACITY bytes of buffer. */
+        Client(long since, int capacity) {
+            this.since = since;
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /** Version of the snapshot sent on connection. */
+        private final long since;
+        /** Bytes waiting to be sent. */
+        private final ByteBuffer buffer;
+    }
+
+    /** Number of bytes that may await sending to one spectator before it
+     *  is disconnected. */
+    private static final int CLIENT_BUFFER_SIZE = 1 << 16;
+
+    /** The board whose changes I broadcast. */
+    private final Board _board;
+    /** Messages waiting for the sending thread. */
+    private final ConcurrentLinkedQueue<Message> _queue;
+    /** Selector for the server and spectator channels. */
+    private final Selector _selector;
+    /** Channel on which spectators connect. */
+    private final ServerSocketChannel _server;
+    /** Square about to be moved to, or -1. */
+    private int _nextMove;
+    /** True once I have been closed. */
+    private volatile boolean _closed;
+}
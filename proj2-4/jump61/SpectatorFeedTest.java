@@ -0,0 +1,73 @@
+package jump61;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+
+/** Unit tests of SpectatorFeed.
+ *  @author Thomas Wu
+ */
+public class SpectatorFeedTest {
+
+    /** Read a varint from IN. */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v, shift;
+        v = shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    @Test
+    public void testBroadcast() throws IOException {
+        MutableBoard board = new MutableBoard(3);
+        board.publishSnapshots();
+        SpectatorFeed feed = new SpectatorFeed(board, 0);
+        board.addSpot(RED, 4);
+        Socket sock = new Socket(InetAddress.getLoopbackAddress(),
+                                 feed.port());
+        DataInputStream in = new DataInputStream(sock.getInputStream());
+
+        readVarint(in);
+        assertEquals(SpectatorFeed.SNAPSHOT, in.readUnsignedByte());
+        long since = readVarint(in);
+        assertEquals(3, readVarint(in));
+        assertEquals(0, in.readUnsignedByte());
+        for (int n = 0; n < 9; n += 1) {
+            int code = readVarint(in);
+            assertEquals(n == 4 ? 4 * 2 + 1 : 4, code);
+        }
+
+        feed.nextMove(0);
+        board.addSpot(BLUE, 0);
+        board.addSpot(BLUE, 0);
+        readVarint(in);
+        assertEquals(SpectatorFeed.CHANGE, in.readUnsignedByte());
+        assertTrue(readVarint(in) > since);
+        assertEquals(1, readVarint(in));
+        assertEquals(1, readVarint(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(4 * 2 + 2, readVarint(in));
+        assertEquals(0, in.readUnsignedByte());
+
+        readVarint(in);
+        assertEquals(SpectatorFeed.CHANGE, in.readUnsignedByte());
+        readVarint(in);
+        assertEquals(0, readVarint(in));
+        assertEquals(3, readVarint(in));
+        sock.close();
+        feed.close();
+    }
+
+}
@@ -0,0 +1,21 @@
+package jump61;
+
+/** An object that is told of every change to the squares of a
+ *  MutableBoard, so that it can keep some function of the board's
+ *  contents up to date incrementally, as the board does its own counts
+ *  and position hash.
+ *  @author Thomas Wu
+ */
+interface SquareListener {
+
+    /** Note that BOARD has been set to new contents, all of which may
+     *  have changed. */
+    void reset(MutableBoard board);
+
+    /** Note that square #N of BOARD has changed from OLD to its current
+     *  contents.  Called on the thread modifying BOARD, once for each
+     *  square changed by a move or undo, so implementations should be
+     *  fast. */
+    void squareChanged(MutableBoard board, int n, Square old);
+
+}
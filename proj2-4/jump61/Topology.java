@@ -0,0 +1,287 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static jump61.GameException.error;
+
+/** The shape of a board: which squares are adjacent to which, and so how
+ *  many spots each square holds before it overflows.  Squares are
+ *  numbered by rows, as for Board.  The neighbors of square #N are
+ *  adjacent()[offsets()[N] .. offsets()[N+1]-1] (compressed sparse row
+ *  form), in the order in which they receive spots when #N overflows, so
+ *  that the overflow engine needs no bounds checks.  The capacity of a
+ *  square, its number of neighbors, is the number of spots at which it
+ *  overflows.
+ *
+ *  There are three kinds of topology on a grid of R rows and C columns:
+ *      GRID   each square is adjacent to the squares above, below, left,
+ *             and right of it, in that order, where these exist.
+ *      TORUS  as for GRID, except that the top and bottom rows are
+ *             adjacent, as are the leftmost and rightmost columns, so that
+ *             every square has four neighbors.
+ *      HEX    a rhombus of hexagons, in which square R:C is adjacent to
+ *             R-1:C, R-1:C+1, R+1:C-1, R+1:C, R:C-1, and R:C+1, in that
+ *             order, where these exist.
+ *  The symmetries of a topology are those of the eight rotations and
+ *  reflections of its grid that map it onto itself: all eight for a
+ *  square GRID or TORUS, and the identity, the half turn, and the two
+ *  diagonal reflections for a square HEX (on a grid that is not square,
+ *  only the identity, the half turn, and the two axis reflections can
+ *  apply).  Symmetry #0 is always the identity.  Symmetry #K maps square
+ *  #N to square #symmetry(K)[N].
+ *  Topologies are immutable, and shared among all boards of the same
+ *  kind and dimensions.
+ *  @author Thomas Wu
+ */
+final class Topology {
+
+    /** The kinds of topology. */
+    enum Kind {
+        GRID, TORUS, HEX;
+
+        /** Return my name as used in commands and settings. */
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** Return the Kind named NAME (ignoring case).  Throws a GameException
+     *  if there is none. */
+    static Kind parseKind(String name) {
+        for (Kind kind : Kind.values()) {
+            if (kind.toString().equalsIgnoreCase(name)) {
+                return kind;
+            }
+        }
+        throw error("unknown topology: '%s'", name);
+    }
+
+    /** Return the topology of kind KIND on a grid of ROWS rows and COLS
+     *  columns, each at least 2. */
+    static Topology of(Kind kind, int rows, int cols) {
+        if (rows < 2 || cols < 2) {
+            throw new IllegalArgumentException("grid too small");
+        }
+        long key = ((long) rows << 32 | cols) << 2 | kind.ordinal();
+        Topology result = CACHE.get(key);
+        if (result == null) {
+            result = new Topology(kind, rows, cols);
+            Topology prev = CACHE.putIfAbsent(key, result);
+            if (prev != null) {
+                result = prev;
+            }
+        }
+        return result;
+    }
+
+    /** Return the topology of kind KIND on an N x N grid. */
+    static Topology of(Kind kind, int N) {
+        return of(kind, N, N);
+    }
+
+    /** The topology of kind KIND on a grid of ROWS rows and COLS
+     *  columns. */
+    private Topology(Kind kind, int rows, int cols) {
+        _kind = kind;
+        _rows = rows;
+        _cols = cols;
+        int cells = rows * cols;
+        _offsets = new int[cells + 1];
+        int[] adj = new int[cells * 6];
+        int count;
+        count = 0;
+        for (int n = 0; n < cells; n += 1) {
+            _offsets[n] = count;
+            int r = n / cols, c = n % cols;
+            switch (kind) {
+            case GRID:
+                count = addIf(adj, count, r > 0, n - cols);
+                count = addIf(adj, count, r < rows - 1, n + cols);
+                count = addIf(adj, count, c > 0, n - 1);
+                count = addIf(adj, count, c < cols - 1, n + 1);
+                break;
+            case TORUS:
+                adj[count++] = (r + rows - 1) % rows * cols + c;
+                adj[count++] = (r + 1) % rows * cols + c;
+                adj[count++] = r * cols + (c + cols - 1) % cols;
+                adj[count++] = r * cols + (c + 1) % cols;
+                break;
+            case HEX:
+                count = addIf(adj, count, r > 0, n - cols);
+                count = addIf(adj, count, r > 0 && c < cols - 1,
+                              n - cols + 1);
+                count = addIf(adj, count, r < rows - 1 && c > 0,
+                              n + cols - 1);
+                count = addIf(adj, count, r < rows - 1, n + cols);
+                count = addIf(adj, count, c > 0, n - 1);
+                count = addIf(adj, count, c < cols - 1, n + 1);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown topology");
+            }
+        }
+        _offsets[cells] = count;
+        _adjacent = Arrays.copyOf(adj, count);
+        int[][] symmetries = new int[TRANSFORMS][];
+        int numSymmetries;
+        numSymmetries = 0;
+        for (int k = 0; k < TRANSFORMS; k += 1) {
+            int[] map = transform(k, rows, cols);
+            if (map != null && preserves(map)) {
+                symmetries[numSymmetries] = map;
+                numSymmetries += 1;
+            }
+        }
+        _symmetries = Arrays.copyOf(symmetries, numSymmetries);
+    }
+
+    /** Return the map of square numbers performed by rotation or
+     *  reflection #K (0 <= K < TRANSFORMS, #0 being the identity) of a
+     *  grid of ROWS rows and COLS columns, or null if it does not map the
+     *  grid onto itself. */
+    private static int[] transform(int k, int rows, int cols) {
+        if (k >= TRANSFORMS / 2 && rows != cols) {
+            return null;
+        }
+        int[] map = new int[rows * cols];
+        for (int n = 0; n < map.length; n += 1) {
+            int r = n / cols, c = n % cols,
+                r1 = rows - 1 - r, c1 = cols - 1 - c;
+            switch (k) {
+            case 0:
+                map[n] = n;
+                break;
+            case 1:
+                map[n] = r1 * cols + c1;
+                break;
+            case 2:
+                map[n] = r * cols + c1;
+                break;
+            case 3:
+                map[n] = r1 * cols + c;
+                break;
+            case 4:
+                map[n] = c * cols + r;
+                break;
+            case 5:
+                map[n] = c1 * cols + r1;
+                break;
+            case 6:
+                map[n] = c * cols + r1;
+                break;
+            default:
+                map[n] = c1 * cols + r;
+                break;
+            }
+        }
+        return map;
+    }
+
+    /** Return true iff MAP, a permutation of my squares, maps the
+     *  neighbors of each square to the neighbors of its image. */
+    private boolean preserves(int[] map) {
+        for (int n = 0; n < map.length; n += 1) {
+            int m = map[n];
+            if (capacity(m) != capacity(n)) {
+                return false;
+            }
+            for (int j = _offsets[n]; j < _offsets[n + 1]; j += 1) {
+                boolean found;
+                found = false;
+                for (int i = _offsets[m]; i < _offsets[m + 1]; i += 1) {
+                    found |= _adjacent[i] == map[_adjacent[j]];
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Set ADJ[COUNT] to N if COND.  Returns the resulting number of
+     *  entries in ADJ. */
+    private static int addIf(int[] adj, int count, boolean cond, int n) {
+        if (cond) {
+            adj[count] = n;
+            return count + 1;
+        }
+        return count;
+    }
+
+    /** Return my kind. */
+    Kind kind() {
+        return _kind;
+    }
+
+    /** Return my number of rows. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return my number of columns. */
+    int cols() {
+        return _cols;
+    }
+
+    /** Return my number of squares. */
+    int numCells() {
+        return _rows * _cols;
+    }
+
+    /** Return the number of neighbors of square #N, which is the number
+     *  of spots at which it overflows. */
+    int capacity(int n) {
+        return _offsets[n + 1] - _offsets[n];
+    }
+
+    /** Return the start of each square's neighbors in adjacent(), as
+     *  described in the class comment.  Must not be modified. */
+    int[] offsets() {
+        return _offsets;
+    }
+
+    /** Return the neighbors of all squares, as described in the class
+     *  comment.  Must not be modified. */
+    int[] adjacent() {
+        return _adjacent;
+    }
+
+    /** Return my number of symmetries (see the class comment), which is
+     *  at least 1. */
+    int numSymmetries() {
+        return _symmetries.length;
+    }
+
+    /** Return the map of square numbers performed by symmetry #K, as
+     *  described in the class comment.  Must not be modified. */
+    int[] symmetry(int k) {
+        return _symmetries[k];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %dx%d", _kind, _rows, _cols);
+    }
+
+    /** Number of rotations and reflections of a square grid. */
+    private static final int TRANSFORMS = 8;
+
+    /** All topologies created so far, keyed by kind and dimensions. */
+    private static final ConcurrentHashMap<Long, Topology> CACHE =
+        new ConcurrentHashMap<Long, Topology>();
+
+    /** My kind. */
+    private final Kind _kind;
+    /** My dimensions. */
+    private final int _rows, _cols;
+    /** Start of each square's neighbors in _adjacent, followed by the
+     *  length of _adjacent. */
+    private final int[] _offsets;
+    /** Neighbors of all squares. */
+    private final int[] _adjacent;
+    /** The maps of square numbers performed by my symmetries. */
+    private final int[][] _symmetries;
+}
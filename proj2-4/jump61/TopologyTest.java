@@ -0,0 +1,133 @@
+package jump61;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static jump61.Side.*;
+import static jump61.Topology.Kind.*;
+
+/** Unit tests of Topology and of boards that use it.
+ *  @author Thomas Wu
+ */
+public class TopologyTest {
+
+    /** Assert that every adjacency in T is symmetric. */
+    private void checkSymmetric(Topology t) {
+        int[] off = t.offsets(), adj = t.adjacent();
+        for (int n = 0; n < t.numCells(); n += 1) {
+            for (int j = off[n]; j < off[n + 1]; j += 1) {
+                int m = adj[j];
+                boolean found = false;
+                for (int i = off[m]; i < off[m + 1]; i += 1) {
+                    found |= adj[i] == n;
+                }
+                assertTrue(t + ": " + n + " -> " + m, found);
+            }
+        }
+    }
+
+    @Test
+    public void testCapacities() {
+        Topology grid = Topology.of(GRID, 3, 4);
+        assertEquals(12, grid.numCells());
+        assertEquals(2, grid.capacity(0));
+        assertEquals(3, grid.capacity(1));
+        assertEquals(4, grid.capacity(5));
+        assertSame(grid, Topology.of(GRID, 3, 4));
+
+        Topology torus = Topology.of(TORUS, 4, 3);
+        for (int n = 0; n < torus.numCells(); n += 1) {
+            assertEquals(4, torus.capacity(n));
+        }
+
+        Topology hex = Topology.of(HEX, 4);
+        assertEquals(2, hex.capacity(0));
+        assertEquals(3, hex.capacity(3));
+        assertEquals(3, hex.capacity(12));
+        assertEquals(2, hex.capacity(15));
+        assertEquals(6, hex.capacity(5));
+
+        checkSymmetric(grid);
+        checkSymmetric(torus);
+        checkSymmetric(hex);
+    }
+
+    @Test
+    public void testTorusBoard() {
+        MutableBoard B = new MutableBoard(Topology.of(TORUS, 3));
+        assertEquals(4, B.neighbors(1, 1));
+        B.addSpot(RED, 0);
+        B.addSpot(BLUE, 8);
+        B.addSpot(RED, 0);
+        B.addSpot(BLUE, 8);
+        B.addSpot(RED, 0);
+        B.addSpot(BLUE, 8);
+        B.addSpot(RED, 0);
+        assertEquals(1, B.get(0).getSpots());
+        assertEquals(RED, B.get(6).getSide());
+        assertEquals(RED, B.get(2).getSide());
+        assertEquals(2, B.get(6).getSpots());
+        assertFalse(B.positionHash()
+                    == new MutableBoard(B.size()).positionHash());
+        MutableBoard copy = new MutableBoard(B);
+        assertEquals(B, copy);
+        assertFalse(B.equals(new MutableBoard(3)));
+    }
+
+    @Test
+    public void testSymmetries() {
+        assertEquals(8, Topology.of(GRID, 5).numSymmetries());
+        assertEquals(8, Topology.of(TORUS, 5).numSymmetries());
+        assertEquals(4, Topology.of(HEX, 5).numSymmetries());
+        assertEquals(4, Topology.of(GRID, 3, 4).numSymmetries());
+        for (Topology.Kind kind : Topology.Kind.values()) {
+            Topology t = Topology.of(kind, 5);
+            for (int n = 0; n < t.numCells(); n += 1) {
+                assertEquals(n, t.symmetry(0)[n]);
+            }
+            MutableBoard B = new MutableBoard(t);
+            B.addSpot(RED, 1);
+            B.addSpot(BLUE, 7);
+            B.addSpot(RED, 1);
+            B.addSpot(BLUE, 24);
+            for (int k = 0; k < t.numSymmetries(); k += 1) {
+                int[] map = t.symmetry(k);
+                MutableBoard image = new MutableBoard(t);
+                for (int n = 0; n < t.numCells(); n += 1) {
+                    image.set(map[n], B.get(n).getSpots(),
+                              B.get(n).getSide());
+                }
+                assertEquals(kind + " " + k, image.positionHash(),
+                             B.symmetricHash(k));
+                assertEquals(B.symmetricHash(B.canonicalSymmetry()),
+                             image.symmetricHash(image.canonicalSymmetry()));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordTopology() throws IOException {
+        MutableBoard B = new MutableBoard(Topology.of(HEX, 4));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter out = new GameRecordWriter(bytes);
+        out.beginGame(B, 1);
+        int[] moves = { 5, 0, 5, 3, 5 };
+        for (int n : moves) {
+            B.addSpot(B.whoseMove(), n);
+            out.move(n);
+        }
+        out.close();
+        GameRecordReader in =
+            new GameRecordReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(in.nextGame());
+        assertSame(B.topology(), in.topology());
+        MutableBoard C = new MutableBoard(2);
+        assertEquals(moves.length, in.replay(C));
+        assertEquals(B, C);
+    }
+
+}
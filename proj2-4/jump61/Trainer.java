@@ -0,0 +1,123 @@
+package jump61;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static jump61.Side.*;
+
+/** Fits the weights of the learned evaluator (see EvalWeights) to the
+ *  outcomes of recorded games, such as those written by Simulator or by
+ *  Game with --record.  The value of a position for RED is treated as
+ *  the log odds that RED wins the game from it (logistic regression),
+ *  and the weights are fitted by stochastic gradient descent over every
+ *  position of every finished game in the record, once per epoch.  Each
+ *  update to a feature's weight is matched by the opposite update to the
+ *  weight of its color-swapped feature, so that the weights keep the
+ *  symmetry required by EvalWeights.
+ *  @author Thomas Wu
+ */
+class Trainer {
+
+    /** Default number of passes over the training record. */
+    static final int EPOCHS = 4;
+
+    /** Step size of gradient descent, divided among the features of each
+     *  position. */
+    static final double LEARNING_RATE = 0.003;
+
+    /** A trainer whose weights are initially all 0. */
+    Trainer() {
+        _weights = new float[EvalWeights.NUM_FEATURES];
+    }
+
+    /** Fit my weights to the games in the record file named NAME, making
+     *  EPOCHS passes over them.  Returns the number of positions used in
+     *  each pass. */
+    long train(String name, int epochs) throws IOException {
+        long positions;
+        positions = 0;
+        for (int e = 0; e < epochs; e += 1) {
+            GameRecordReader in =
+                new GameRecordReader(new FileInputStream(name));
+            try {
+                positions = 0;
+                while (in.nextGame()) {
+                    positions += trainGame(in);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return positions;
+    }
+
+    /** Return my weights. */
+    EvalWeights weights() {
+        return new EvalWeights(_weights);
+    }
+
+    /** Fit my weights to the positions of the current game of IN,
+     *  returning the number of positions used: none if the game is
+     *  unfinished. */
+    private int trainGame(GameRecordReader in) throws IOException {
+        int numMoves;
+        numMoves = 0;
+        for (int n = in.nextMove(); n >= 0; n = in.nextMove()) {
+            if (numMoves == _moves.length) {
+                _moves = Arrays.copyOf(_moves, 2 * numMoves);
+            }
+            _moves[numMoves] = n;
+            numMoves += 1;
+        }
+        if (_board == null || _board.topology() != in.topology()) {
+            _board = new MutableBoard(in.topology());
+            _board.setUndoLimit(0);
+            _features = new int[EvalWeights.numFeatures(in.size())];
+        }
+        in.setUp(_board);
+        for (int k = 0; k < numMoves; k += 1) {
+            _board.addSpot(_board.whoseMove(), _moves[k]);
+        }
+        Side winner = _board.getWinner();
+        if (winner == null) {
+            return 0;
+        }
+        double target = winner == RED ? 1.0 : 0.0;
+        in.setUp(_board);
+        for (int k = 0; k < numMoves; k += 1) {
+            _board.addSpot(_board.whoseMove(), _moves[k]);
+            if (k < numMoves - 1) {
+                step(target);
+            }
+        }
+        return Math.max(0, numMoves - 1);
+    }
+
+    /** Take one step of gradient descent toward a value for the position
+     *  on _board whose probability of a RED win is TARGET. */
+    private void step(double target) {
+        int k = EvalWeights.features(_board, _features);
+        double value;
+        value = 0.0;
+        for (int i = 0; i < k; i += 1) {
+            value += _weights[_features[i]];
+        }
+        double predicted = 1.0 / (1.0 + Math.exp(-value));
+        float delta = (float) (LEARNING_RATE * (target - predicted) / k);
+        for (int i = 0; i < k; i += 1) {
+            int f = _features[i];
+            _weights[f] += delta;
+            _weights[EvalWeights.swap(f)] -= delta;
+        }
+    }
+
+    /** The weights being fitted, indexed by feature. */
+    private final float[] _weights;
+    /** The moves of the current game. */
+    private int[] _moves = new int[64];
+    /** Board on which games are replayed. */
+    private MutableBoard _board;
+    /** Buffer for the features of a position on _board. */
+    private int[] _features;
+}